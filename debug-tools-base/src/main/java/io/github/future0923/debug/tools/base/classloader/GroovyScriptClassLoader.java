@@ -25,15 +25,16 @@ public class GroovyScriptClassLoader extends ClassLoader {
 
     private ClassLoaderWrapper defaultClassLoader;
 
-    private static GroovyScriptClassLoader classLoader;
-
-    public static GroovyScriptClassLoader getInstance() {
-        return classLoader;
-    }
-
-    public static GroovyScriptClassLoader init(ClassLoader classLoader) {
-        GroovyScriptClassLoader.classLoader = new GroovyScriptClassLoader(classLoader);
-        return getInstance();
+    /**
+     * 创建独立的加载器，用于缓存编译后的脚本
+     *
+     * @param classLoader        父加载器(DebugTools的类)
+     * @param defaultClassLoader 应用程序的类加载器
+     */
+    public static GroovyScriptClassLoader create(ClassLoader classLoader, ClassLoader defaultClassLoader) {
+        GroovyScriptClassLoader scriptClassLoader = new GroovyScriptClassLoader(classLoader);
+        scriptClassLoader.setDefaultClassLoader(defaultClassLoader);
+        return scriptClassLoader;
     }
 
     private GroovyScriptClassLoader(ClassLoader classLoader) {
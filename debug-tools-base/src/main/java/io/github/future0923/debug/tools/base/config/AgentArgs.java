@@ -101,6 +101,11 @@ public class AgentArgs {
      */
     private Integer sqlRetentionDays;
 
+    /**
+     * 批量SQL(addBatch/executeBatch)打印时采样的行数
+     */
+    private Integer sqlBatchSampleSize;
+
     /**
      * 将agent上的string参数转为AgentArgs对象
      *
@@ -24,6 +24,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 /**
  * @author future0923
@@ -38,6 +39,11 @@ public class HotDeployResponsePacket extends Packet {
 
     private String printResult;
 
+    /**
+     * 各阶段耗时(ms)，key为阶段名称(compile、check、redefine、write)，write为写入extraClasspath并fsync的耗时，与check、redefine并行执行
+     */
+    private Map<String, Long> stageCost;
+
     @Override
     public Byte getCommand() {
         return Command.REMOTE_COMPILER_HOT_DEPLOY_RESPONSE;
@@ -61,6 +67,7 @@ public class HotDeployResponsePacket extends Packet {
         HotDeployResponsePacket packet = DebugToolsJsonUtils.toBean(jsonString, HotDeployResponsePacket.class);
         this.setApplicationName(packet.getApplicationName());
         this.setPrintResult(packet.getPrintResult());
+        this.setStageCost(packet.getStageCost());
     }
 
     public static HotDeployResponsePacket of(boolean isSuccess, String printResult, String applicationName) {
@@ -71,5 +78,11 @@ public class HotDeployResponsePacket extends Packet {
         return packet;
     }
 
+    public static HotDeployResponsePacket of(boolean isSuccess, String printResult, String applicationName, Map<String, Long> stageCost) {
+        HotDeployResponsePacket packet = of(isSuccess, printResult, applicationName);
+        packet.setStageCost(stageCost);
+        return packet;
+    }
+
 
 }
@@ -20,8 +20,12 @@ import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
 import lombok.Getter;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Function;
 
 /**
  * 插件注解信息
@@ -66,6 +70,16 @@ public class PluginAnnotation<T extends Annotation> {
 
     private final boolean fallback;
 
+    /**
+     * 注解所在方法的MethodHandle，参数为Object[]，返回Object，非静态方法已绑定插件对象
+     */
+    private volatile MethodHandle methodHandle;
+
+    /**
+     * 处理器预先解析的方法参数绑定信息
+     */
+    private volatile Object argumentBinder;
+
     public PluginAnnotation(Class<?> pluginClass, Object plugin, T annotation, Method method) {
         this.pluginClass = pluginClass;
         this.plugin = plugin;
@@ -85,6 +99,36 @@ public class PluginAnnotation<T extends Annotation> {
         this.group = null;
     }
 
+    /**
+     * 获取注解所在方法的MethodHandle，第一次调用时创建，调用方式为{@code (Object) handle.invokeExact(args)}
+     */
+    public MethodHandle getMethodHandle() throws IllegalAccessException {
+        MethodHandle handle = methodHandle;
+        if (handle == null) {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+            if (!Modifier.isStatic(method.getModifiers())) {
+                handle = handle.bindTo(plugin);
+            }
+            handle = handle.asType(handle.type().generic()).asSpreader(Object[].class, method.getParameterCount());
+            methodHandle = handle;
+        }
+        return handle;
+    }
+
+    /**
+     * 获取方法参数绑定信息，第一次调用时通过resolver解析并缓存，一个注解只会被一种处理器使用
+     */
+    @SuppressWarnings("unchecked")
+    public <B> B getArgumentBinder(Function<Method, B> resolver) {
+        Object binder = argumentBinder;
+        if (binder == null) {
+            binder = resolver.apply(method);
+            argumentBinder = binder;
+        }
+        return (B) binder;
+    }
+
     /**
      * @return true, if plugin is fallback
      */
@@ -23,15 +23,13 @@ import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
-import javassist.LoaderClassPath;
 import io.github.future0923.debug.tools.hotswap.core.util.HaClassFileTransformer;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.instrument.IllegalClassFormatException;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.security.ProtectionDomain;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -61,6 +59,13 @@ public class PluginClassFileTransformer implements HaClassFileTransformer {
         this.pluginManager = pluginManager;
         this.pluginAnnotation = pluginAnnotation;
         this.events = Arrays.asList(pluginAnnotation.getAnnotation().events());
+        // 注册时预先解析参数和创建MethodHandle
+        pluginAnnotation.getArgumentBinder(PluginClassFileTransformer::resolveArgTypes);
+        try {
+            pluginAnnotation.getMethodHandle();
+        } catch (IllegalAccessException e) {
+            LOGGER.error("Unable to access method '{}' on plugin '{}'", e, pluginAnnotation.getMethod().getName(), pluginAnnotation.getPluginClass());
+        }
     }
 
     @Override
@@ -89,28 +94,33 @@ public class PluginClassFileTransformer implements HaClassFileTransformer {
 
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
-        if ((classBeingRedefined == null) ? !events.contains(LoadEvent.DEFINE) : !events.contains(LoadEvent.REDEFINE)) {
-            LOGGER.trace("Not a handled event!", events);
-            return classfileBuffer;
-        }
-
-        if (pluginManager.getPluginConfiguration(loader).isDisabledPlugin(pluginAnnotation.getPluginClass())) {
-            LOGGER.trace("Plugin NOT enabled! {}", pluginAnnotation);
+        PluginTransformContext context = new PluginTransformContext(loader, className, classfileBuffer);
+        try {
+            transform(context, classBeingRedefined, protectionDomain);
+            return context.toBytecode();
+        } catch (IOException | CannotCompileException e) {
+            LOGGER.error("Unable to create bytecode for '{}' using: '{}'", e, className, pluginAnnotation);
             return classfileBuffer;
+        } finally {
+            context.detach();
         }
-
-        return transform(pluginManager, pluginAnnotation, loader, className, classBeingRedefined, protectionDomain, classfileBuffer);
     }
 
     /**
-     * 创建javassist CtClass
+     * 在转换上下文中调用插件，同一个类匹配的多个插件共享上下文中的CtClass
      */
-    private static CtClass createCtClass(byte[] bytes, ClassLoader classLoader) throws IOException {
-        ClassPool cp = new ClassPool();
-        cp.appendSystemPath();
-        cp.appendClassPath(new LoaderClassPath(classLoader));
+    public void transform(PluginTransformContext context, Class<?> classBeingRedefined, ProtectionDomain protectionDomain) {
+        if ((classBeingRedefined == null) ? !events.contains(LoadEvent.DEFINE) : !events.contains(LoadEvent.REDEFINE)) {
+            LOGGER.trace("Not a handled event!", events);
+            return;
+        }
+
+        if (pluginManager.getPluginConfiguration(context.getClassLoader()).isDisabledPlugin(pluginAnnotation.getPluginClass())) {
+            LOGGER.trace("Plugin NOT enabled! {}", pluginAnnotation);
+            return;
+        }
 
-        return cp.makeClass(new ByteArrayInputStream(bytes));
+        transform(pluginManager, pluginAnnotation, context, classBeingRedefined, protectionDomain);
     }
 
     /**
@@ -128,17 +138,35 @@ public class PluginClassFileTransformer implements HaClassFileTransformer {
      * 反射调用{@link OnClassLoadEvent}
      */
     public static byte[] transform(PluginManager pluginManager, PluginAnnotation<OnClassLoadEvent> pluginAnnotation, ClassLoader classLoader, String className, Class<?> redefiningClass, ProtectionDomain protectionDomain, byte[] bytes) {
+        PluginTransformContext context = new PluginTransformContext(classLoader, className, bytes);
+        try {
+            transform(pluginManager, pluginAnnotation, context, redefiningClass, protectionDomain);
+            return context.toBytecode();
+        } catch (IOException | CannotCompileException e) {
+            LOGGER.error("Unable to create bytecode for '{}' using: '{}'", e, className, pluginAnnotation);
+            return bytes;
+        } finally {
+            context.detach();
+        }
+    }
+
+    /**
+     * 反射调用{@link OnClassLoadEvent}，结果写回转换上下文
+     */
+    public static void transform(PluginManager pluginManager, PluginAnnotation<OnClassLoadEvent> pluginAnnotation, PluginTransformContext context, Class<?> redefiningClass, ProtectionDomain protectionDomain) {
+        String className = context.getClassName();
+        ClassLoader classLoader = context.getClassLoader();
         LOGGER.trace("Transforming.... '{}' using: '{}'", className, pluginAnnotation);
 
         if (pluginAnnotation.getAnnotation().skipSynthetic()) {
             if (isSyntheticClass(className) || (redefiningClass != null && redefiningClass.isSynthetic())) {
-                return bytes;
+                return;
             }
         }
 
         if (pluginAnnotation.getAnnotation().skipAnonymous()) {
             if (className.matches("\\$\\d+$")) {
-                return bytes;
+                return;
             }
         }
 
@@ -146,83 +174,132 @@ public class PluginClassFileTransformer implements HaClassFileTransformer {
             pluginManager.initClassLoader(classLoader, protectionDomain);
         }
 
-        // default result
-        byte[] result = bytes;
+        long start = HotswapProfiler.start();
+        try {
+            invoke(pluginAnnotation, context, redefiningClass, protectionDomain);
+        } finally {
+            if (start != 0L) {
+                HotswapProfiler.record(HotswapProfiler.PLUGIN, pluginAnnotation.getPluginClass().getName() + "#" + pluginAnnotation.getMethod().getName(), start);
+            }
+        }
+    }
 
-        CtClass ctClass = null;
+    /**
+     * 插件方法参数类型，注册时按{@link OnClassLoadEvent}支持的参数解析一次
+     */
+    private enum ArgType {
+        CLASS_LOADER, CLASS_NAME, REDEFINING_CLASS, PROTECTION_DOMAIN, BYTES, CLASS_POOL, CT_CLASS, LOAD_EVENT, UNKNOWN
+    }
 
-        List<Object> args = new ArrayList<>();
-        for (Class<?> type : pluginAnnotation.getMethod().getParameterTypes()) {
+    /**
+     * 解析插件方法每个参数需要注入的值
+     */
+    private static ArgType[] resolveArgTypes(Method method) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        ArgType[] argTypes = new ArgType[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
             if (type.isAssignableFrom(ClassLoader.class)) {
-                args.add(classLoader);
+                argTypes[i] = ArgType.CLASS_LOADER;
             } else if (type.isAssignableFrom(String.class)) {
-                args.add(className);
+                argTypes[i] = ArgType.CLASS_NAME;
             } else if (type.isAssignableFrom(Class.class)) {
-                args.add(redefiningClass);
+                argTypes[i] = ArgType.REDEFINING_CLASS;
             } else if (type.isAssignableFrom(ProtectionDomain.class)) {
-                args.add(protectionDomain);
+                argTypes[i] = ArgType.PROTECTION_DOMAIN;
             } else if (type.isAssignableFrom(byte[].class)) {
-                args.add(bytes);
+                argTypes[i] = ArgType.BYTES;
             } else if (type.isAssignableFrom(ClassPool.class)) {
-                ClassPool classPool = new ClassPool();
-                classPool.appendSystemPath();
-                LOGGER.trace("Adding loader classpath " + classLoader);
-                classPool.appendClassPath(new LoaderClassPath(classLoader));
-                args.add(classPool);
+                argTypes[i] = ArgType.CLASS_POOL;
             } else if (type.isAssignableFrom(CtClass.class)) {
-                try {
-                    ctClass = createCtClass(bytes, classLoader);
-                    args.add(ctClass);
-                } catch (IOException e) {
-                    LOGGER.error("Unable create CtClass for '" + className + "'.", e);
-                    return result;
-                }
+                argTypes[i] = ArgType.CT_CLASS;
             } else if (type.isAssignableFrom(LoadEvent.class)) {
-                args.add(redefiningClass == null ? LoadEvent.DEFINE : LoadEvent.REDEFINE);
+                argTypes[i] = ArgType.LOAD_EVENT;
             } else {
-                LOGGER.error("Unable to call init method on plugin '" + pluginAnnotation.getPluginClass() + "'." + " Method parameter type '" + type + "' is not recognized for @Init annotation.");
-                return result;
+                argTypes[i] = ArgType.UNKNOWN;
             }
         }
+        return argTypes;
+    }
+
+    /**
+     * 解析参数并调用插件方法
+     */
+    private static void invoke(PluginAnnotation<OnClassLoadEvent> pluginAnnotation, PluginTransformContext context, Class<?> redefiningClass, ProtectionDomain protectionDomain) {
+        String className = context.getClassName();
+        ClassLoader classLoader = context.getClassLoader();
+
+        ArgType[] argTypes = pluginAnnotation.getArgumentBinder(PluginClassFileTransformer::resolveArgTypes);
+        Object[] args = new Object[argTypes.length];
         try {
-            Object resultObject = pluginAnnotation.getMethod().invoke(pluginAnnotation.getPlugin(), args.toArray());
+            for (int i = 0; i < argTypes.length; i++) {
+                switch (argTypes[i]) {
+                    case CLASS_LOADER:
+                        args[i] = classLoader;
+                        break;
+                    case CLASS_NAME:
+                        args[i] = className;
+                        break;
+                    case REDEFINING_CLASS:
+                        args[i] = redefiningClass;
+                        break;
+                    case PROTECTION_DOMAIN:
+                        args[i] = protectionDomain;
+                        break;
+                    case BYTES:
+                        args[i] = context.getBytes();
+                        break;
+                    case CLASS_POOL:
+                        args[i] = context.getClassPool();
+                        break;
+                    case CT_CLASS:
+                        args[i] = context.getCtClass();
+                        break;
+                    case LOAD_EVENT:
+                        args[i] = redefiningClass == null ? LoadEvent.DEFINE : LoadEvent.REDEFINE;
+                        break;
+                    default:
+                        LOGGER.error("Unable to call init method on plugin '" + pluginAnnotation.getPluginClass() + "'." + " Method parameter type '" + pluginAnnotation.getMethod().getParameterTypes()[i] + "' is not recognized for @Init annotation.");
+                        return;
+                }
+            }
+        } catch (IOException | CannotCompileException e) {
+            LOGGER.error("Unable create CtClass for '" + className + "'.", e);
+            context.discard();
+            return;
+        }
+        try {
+            Object resultObject = (Object) pluginAnnotation.getMethodHandle().invokeExact(args);
             if (resultObject == null) {
-
+                // 直接修改了上下文中的CtClass或者不需要修改
             } else if (resultObject instanceof byte[]) {
-                result = (byte[]) resultObject;
+                context.setBytes((byte[]) resultObject);
             } else if (resultObject instanceof CtClass) {
-                result = ((CtClass) resultObject).toBytecode();
-                if (resultObject != ctClass) {
-                    ((CtClass) resultObject).detach();
-                }
+                context.setCtClass((CtClass) resultObject);
             } else {
-                LOGGER.error("Unknown result of @OnClassLoadEvent method '" + result.getClass().getName() + "'.");
-            }
-            if (ctClass != null) {
-                if (resultObject == null) {
-                    result = ctClass.toBytecode();
-                }
-                ctClass.detach();
+                LOGGER.error("Unknown result of @OnClassLoadEvent method '" + resultObject.getClass().getName() + "'.");
             }
         } catch (IllegalAccessException e) {
             LOGGER.error("IllegalAccessException in transform method on plugin '{}' class '{}' of classLoader '{}'",
                 e, pluginAnnotation.getPluginClass(), className,
                 classLoader != null ? classLoader.getClass().getName() : "");
-        } catch (InvocationTargetException e) {
-            LOGGER.error("InvocationTargetException in transform method on plugin '{}' class '{}' of classLoader '{}'",
-                e, pluginAnnotation.getPluginClass(), className,
-                classLoader != null ? classLoader.getClass().getName() : "");
+            context.discard();
         } catch (CannotCompileException e) {
             LOGGER.error("Cannot compile class after manipulation on plugin '{}' class '{}' of classLoader '{}'",
                 e, pluginAnnotation.getPluginClass(), className,
                 classLoader != null ? classLoader.getClass().getName() : "");
+            context.discard();
         } catch (IOException e) {
             LOGGER.error("IOException in transform method on plugin '{}' class '{}' of classLoader '{}'",
                 e, pluginAnnotation.getPluginClass(), className,
                 classLoader != null ? classLoader.getClass().getName() : "");
+            context.discard();
+        } catch (Throwable e) {
+            LOGGER.error("Exception in transform method on plugin '{}' class '{}' of classLoader '{}'",
+                e, pluginAnnotation.getPluginClass(), className,
+                classLoader != null ? classLoader.getClass().getName() : "");
+            context.discard();
         }
-
-        return result;
     }
 
     @Override
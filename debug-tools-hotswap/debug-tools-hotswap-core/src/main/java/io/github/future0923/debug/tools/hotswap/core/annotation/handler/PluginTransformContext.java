@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.annotation.handler;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.hotswap.core.util.classloader.TransformClassPoolFactory;
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * 一次类转换的上下文，同一个类匹配多个插件时共享
+ * <p>CtClass只在第一次需要时解析一次，依次交给所有插件修改，最后只生成一次字节码。
+ * 只有插件需要byte[]参数或返回了其它CtClass时才会在中间生成字节码
+ */
+public class PluginTransformContext {
+
+    private static final Logger LOGGER = Logger.getLogger(PluginTransformContext.class);
+
+    private final ClassLoader classLoader;
+
+    private final String className;
+
+    /**
+     * 最近一次生成的字节码
+     */
+    private byte[] bytes;
+
+    private ClassPool classPool;
+
+    private CtClass ctClass;
+
+    public PluginTransformContext(ClassLoader classLoader, String className, byte[] bytes) {
+        this.classLoader = classLoader;
+        this.className = className;
+        this.bytes = bytes;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * 本次转换使用的ClassPool
+     */
+    public ClassPool getClassPool() {
+        if (classPool == null) {
+            classPool = TransformClassPoolFactory.create(classLoader);
+        }
+        return classPool;
+    }
+
+    /**
+     * 获取CtClass，整个上下文中只解析一次，前面插件的修改直接保留在CtClass中
+     */
+    public CtClass getCtClass() throws IOException, CannotCompileException {
+        if (ctClass == null) {
+            ctClass = getClassPool().makeClass(new ByteArrayInputStream(bytes), false);
+        } else if (ctClass.isFrozen()) {
+            // 前面的插件自己生成过字节码
+            ctClass.defrost();
+        }
+        return ctClass;
+    }
+
+    /**
+     * 获取当前的字节码，CtClass被修改过时重新生成
+     */
+    public byte[] getBytes() throws IOException, CannotCompileException {
+        if (ctClass != null && ctClass.isModified()) {
+            bytes = ctClass.toBytecode();
+            // 后续插件可能继续修改
+            ctClass.defrost();
+        }
+        return bytes;
+    }
+
+    /**
+     * 插件返回了新的字节码，之前的CtClass失效
+     */
+    public void setBytes(byte[] bytes) {
+        detach();
+        this.bytes = bytes;
+    }
+
+    /**
+     * 插件返回了CtClass，不是上下文中的CtClass时直接生成字节码
+     */
+    public void setCtClass(CtClass ctClass) throws IOException, CannotCompileException {
+        if (ctClass != this.ctClass) {
+            detach();
+            this.bytes = ctClass.toBytecode();
+            ctClass.detach();
+        }
+    }
+
+    /**
+     * 所有插件执行完后生成最终字节码并释放CtClass
+     */
+    public byte[] toBytecode() throws IOException, CannotCompileException {
+        try {
+            return getBytes();
+        } finally {
+            detach();
+        }
+    }
+
+    /**
+     * 插件执行失败。为了只生成一次字节码，不再为每个插件保存快照，前面插件的修改保留在CtClass中；
+     * 失败插件已经完成的修改无法单独撤销，最终字节码生成失败时由调用方回退到转换前的字节码
+     */
+    public void discard() {
+        if (ctClass == null) {
+            return;
+        }
+        LOGGER.debug("Plugin failed on '{}', keep CtClass modifications made so far", className);
+    }
+
+    /**
+     * 从ClassPool中移除CtClass
+     */
+    public void detach() {
+        if (ctClass != null) {
+            ctClass.detach();
+            ctClass = null;
+        }
+    }
+}
@@ -32,13 +32,11 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 /**
  * 通过WatchEventCommand来调用{@link OnClassFileEvent}和{@link OnResourceFileEvent}的所在类
@@ -89,10 +87,54 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
     }
 
     /**
-     * 反射调用注解所在的方法
+     * 插件方法参数类型，注册时按{@link OnClassFileEvent}或{@link OnResourceFileEvent}支持的参数解析一次
+     */
+    private enum ArgType {
+        CLASS_LOADER, URI, URL, CLASS_POOL, FILE_EVENT, CT_CLASS, CLASS_NAME, UNKNOWN
+    }
+
+    /**
+     * 解析插件方法每个参数需要注入的值
+     */
+    static ArgType[] resolveArgTypes(Method method, boolean classFileEvent) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        ArgType[] argTypes = new ArgType[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> type = parameterTypes[i];
+            if (type.isAssignableFrom(ClassLoader.class)) {
+                argTypes[i] = ArgType.CLASS_LOADER;
+            } else if (type.isAssignableFrom(URI.class)) {
+                argTypes[i] = ArgType.URI;
+            } else if (type.isAssignableFrom(URL.class)) {
+                argTypes[i] = ArgType.URL;
+            } else if (type.isAssignableFrom(ClassPool.class)) {
+                argTypes[i] = ArgType.CLASS_POOL;
+            } else if (type.isAssignableFrom(FileEvent.class)) {
+                argTypes[i] = ArgType.FILE_EVENT;
+            } else if (classFileEvent && type.isAssignableFrom(CtClass.class)) {
+                argTypes[i] = ArgType.CT_CLASS;
+            } else if (classFileEvent && type.isAssignableFrom(String.class)) {
+                argTypes[i] = ArgType.CLASS_NAME;
+            } else {
+                argTypes[i] = ArgType.UNKNOWN;
+            }
+        }
+        return argTypes;
+    }
+
+    /**
+     * 注册时预先解析参数和创建MethodHandle
+     */
+    public static void prepare(PluginAnnotation<?> pluginAnnotation) throws IllegalAccessException {
+        boolean classFileEvent = WatchEventDTO.parse(pluginAnnotation.getAnnotation()).isClassFileEvent();
+        pluginAnnotation.getArgumentBinder(method -> resolveArgTypes(method, classFileEvent));
+        pluginAnnotation.getMethodHandle();
+    }
+
+    /**
+     * 调用注解所在的方法
      */
     public void onWatchEvent(PluginAnnotation<T> pluginAnnotation, WatchFileEvent event, ClassLoader classLoader) {
-        Object plugin = pluginAnnotation.getPlugin();
         CtClass ctClass = null;
         if (watchEventDTO.isClassFileEvent()) {
             try {
@@ -105,36 +147,46 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
                 return;
             }
         }
-        LOGGER.debug("Executing resource changed method {} on class {} for event {}", pluginAnnotation.getMethod().getName(), plugin.getClass().getName(), event);
-        List<Object> args = new ArrayList<>();
-        for (Class<?> type : pluginAnnotation.getMethod().getParameterTypes()) {
-            if (type.isAssignableFrom(ClassLoader.class)) {
-                args.add(classLoader);
-            } else if (type.isAssignableFrom(URI.class)) {
-                args.add(event.getURI());
-            } else if (type.isAssignableFrom(URL.class)) {
-                try {
-                    args.add(event.getURI().toURL());
-                } catch (MalformedURLException e) {
-                    LOGGER.error("Unable to convert URI '{}' to URL.", e, event.getURI());
+        LOGGER.debug("Executing resource changed method {} on class {} for event {}", pluginAnnotation.getMethod().getName(), pluginAnnotation.getPluginClass().getName(), event);
+        boolean classFileEvent = watchEventDTO.isClassFileEvent();
+        ArgType[] argTypes = pluginAnnotation.getArgumentBinder(method -> resolveArgTypes(method, classFileEvent));
+        Object[] args = new Object[argTypes.length];
+        for (int i = 0; i < argTypes.length; i++) {
+            switch (argTypes[i]) {
+                case CLASS_LOADER:
+                    args[i] = classLoader;
+                    break;
+                case URI:
+                    args[i] = event.getURI();
+                    break;
+                case URL:
+                    try {
+                        args[i] = event.getURI().toURL();
+                    } catch (MalformedURLException e) {
+                        LOGGER.error("Unable to convert URI '{}' to URL.", e, event.getURI());
+                        return;
+                    }
+                    break;
+                case CLASS_POOL:
+                    args[i] = ClassPool.getDefault();
+                    break;
+                case FILE_EVENT:
+                    args[i] = event.getEventType();
+                    break;
+                case CT_CLASS:
+                    args[i] = ctClass;
+                    break;
+                case CLASS_NAME:
+                    args[i] = ctClass != null ? ctClass.getName() : null;
+                    break;
+                default:
+                    LOGGER.error("Unable to call method {} on plugin {}. Method parameter type {} is not recognized.",
+                            pluginAnnotation.getMethod().getName(), pluginAnnotation.getPluginClass().getName(), pluginAnnotation.getMethod().getParameterTypes()[i]);
                     return;
-                }
-            } else if (type.isAssignableFrom(ClassPool.class)) {
-                args.add(ClassPool.getDefault());
-            } else if (type.isAssignableFrom(FileEvent.class)) {
-                args.add(event.getEventType());
-            } else if (watchEventDTO.isClassFileEvent() && type.isAssignableFrom(CtClass.class)) {
-                args.add(ctClass);
-            } else if (watchEventDTO.isClassFileEvent() && type.isAssignableFrom(String.class)) {
-                args.add(ctClass != null ? ctClass.getName() : null);
-            } else {
-                LOGGER.error("Unable to call method {} on plugin {}. Method parameter type {} is not recognized.",
-                        pluginAnnotation.getMethod().getName(), plugin.getClass().getName(), type);
-                return;
             }
         }
         try {
-            pluginAnnotation.getMethod().invoke(plugin, args.toArray());
+            Object ignore = (Object) pluginAnnotation.getMethodHandle().invokeExact(args);
 
             // close CtClass if created from here
             if (ctClass != null) {
@@ -143,11 +195,11 @@ public class WatchEventCommand<T extends Annotation> extends MergeableCommand {
         } catch (IllegalAccessException e) {
             LOGGER.error("IllegalAccessException in method '{}' class '{}' classLoader '{}' on plugin '{}'",
                 e, pluginAnnotation.getMethod().getName(), ctClass != null ? ctClass.getName() : "",
-                classLoader != null ? classLoader.getClass().getName() : "", plugin.getClass().getName());
-        } catch (InvocationTargetException e) {
-            LOGGER.error("InvocationTargetException in method '{}' class '{}' classLoader '{}' on plugin '{}'",
+                classLoader != null ? classLoader.getClass().getName() : "", pluginAnnotation.getPluginClass().getName());
+        } catch (Throwable e) {
+            LOGGER.error("Exception in method '{}' class '{}' classLoader '{}' on plugin '{}'",
                 e, pluginAnnotation.getMethod().getName(), ctClass != null ? ctClass.getName() : "",
-                classLoader != null ? classLoader.getClass().getName() : "", plugin.getClass().getName());
+                classLoader != null ? classLoader.getClass().getName() : "", pluginAnnotation.getPluginClass().getName());
         }
     }
 
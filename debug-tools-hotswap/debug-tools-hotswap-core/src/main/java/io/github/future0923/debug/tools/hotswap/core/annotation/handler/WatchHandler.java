@@ -55,6 +55,15 @@ public class WatchHandler<T extends Annotation> implements PluginHandler<T> {
 
         ClassLoader classLoader = pluginManager.getPluginRegistry().getAppClassLoader(pluginAnnotation.getPlugin());
 
+        try {
+            WatchEventCommand.prepare(pluginAnnotation);
+        } catch (IllegalAccessException e) {
+            LOGGER.error("Unable to access method {} class {}", e,
+                    pluginAnnotation.getMethod().getName(),
+                    pluginAnnotation.getMethod().getDeclaringClass().getName());
+            return false;
+        }
+
         try {
             registerResources(pluginAnnotation, classLoader);
         } catch (IOException e) {
@@ -18,26 +18,47 @@ package io.github.future0923.debug.tools.hotswap.core.command.impl;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.command.Command;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
+
+import java.util.concurrent.TimeUnit;
 
 /**
- * 命令的执行器，创建线程执行
+ * 命令的执行器，由{@link SchedulerImpl}的线程池执行，记录命令的等待和执行耗时
  */
-public class CommandExecutor extends Thread {
+public class CommandExecutor implements Runnable {
     private static final Logger LOGGER = Logger.getLogger(CommandExecutor.class);
 
     final Command command;
 
+    /**
+     * 命令投递的时间（{@link System#nanoTime()}）
+     */
+    final long scheduledAt;
+
     public CommandExecutor(Command command) {
+        this(command, System.nanoTime());
+    }
+
+    public CommandExecutor(Command command, long scheduledAt) {
         this.command = command;
-        setDaemon(true);
+        this.scheduledAt = scheduledAt;
     }
 
     @Override
     public void run() {
+        long started = System.nanoTime();
+        String name = command.getClass().getName();
         try {
             LOGGER.trace("Executing command {}", command);
             command.executeCommand();
+        } catch (Throwable e) {
+            LOGGER.error("Command {} execution failed", e, command);
         } finally {
+            long finished = System.nanoTime();
+            HotswapProfiler.recordNanos(HotswapProfiler.COMMAND_DELAY, name, started - scheduledAt);
+            HotswapProfiler.recordNanos(HotswapProfiler.COMMAND_EXECUTION, name, finished - started);
+            LOGGER.debug("Command {} waited {}ms, executed {}ms", command,
+                    TimeUnit.NANOSECONDS.toMillis(started - scheduledAt), TimeUnit.NANOSECONDS.toMillis(finished - started));
             finished();
         }
     }
@@ -16,22 +16,28 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.command.impl;
 
+import io.github.future0923.debug.tools.base.hutool.core.thread.NamedThreadFactory;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.handler.WatchEventCommand;
 import io.github.future0923.debug.tools.hotswap.core.command.Command;
 import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
 import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
-import lombok.Getter;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapThreadPool;
 
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * 调度器默认实现，只调度，命令通过创建{@link CommandExecutor}执行
+ * 调度器默认实现，通过延迟线程在命令到期时投递，命令由有界的{@link CommandExecutor}线程池执行
+ * <p>
+ * 相同（equals）的命令在调度表中只保留一个，再次投递时合并或重置到期时间；正在运行的相同命令结束后会立即触发等待中的命令，不再轮询
  */
 public class SchedulerImpl implements Scheduler {
 
@@ -43,24 +49,29 @@ public class SchedulerImpl implements Scheduler {
     int DEFAULT_SCHEDULING_TIMEOUT = 500;
 
     /**
-     * 投递进来的命令（无序）
+     * 投递进来的命令，key与value中的command为同一个对象
      */
-    final Map<Command, DuplicateScheduleConfig> scheduledCommands = new ConcurrentHashMap<>();
+    final Map<Command, ScheduledCommand> scheduledCommands = new HashMap<>();
 
     /**
-     * 正在运行的命令
+     * 正在运行的命令及运行个数（RUN_DUPLICATE时同一命令可能同时运行多个）
      */
-    final Set<Command> runningCommands = Collections.synchronizedSet(new HashSet<Command>());
+    final Map<Command, Integer> runningCommands = new HashMap<>();
 
     /**
-     * 运行命令的调度线程，创建{@link CommandExecutor}最终执行命令
+     * 到期触发线程
      */
-    Thread runner;
+    private ScheduledExecutorService timer;
+
+    /**
+     * 执行命令的线程池
+     */
+    ExecutorService executor;
 
     /**
      * 是否停止运行
      */
-    boolean stopped;
+    volatile boolean stopped;
 
     @Override
     public void scheduleCommand(Command command) {
@@ -74,117 +85,178 @@ public class SchedulerImpl implements Scheduler {
 
     @Override
     public void scheduleCommand(Command command, int timeout, DuplicateSheduleBehaviour behaviour) {
-        synchronized (scheduledCommands) {
-            Command targetCommand = command;
-            if (scheduledCommands.containsKey(command) && (command instanceof MergeableCommand)) {
-                // 任务中有这个命令并且是可以合并的
-                for (Command scheduledCommand : scheduledCommands.keySet()) {
-                    // 如果他们的equals相等就合并
-                    if (command.equals(scheduledCommand)) {
-                        targetCommand = ((MergeableCommand) scheduledCommand).merge(command);
-                        break;
-                    }
-                }
+        synchronized (this) {
+            // 停止后迟到的监听、插件事件直接忽略
+            if (stopped) {
+                LOGGER.debug("Scheduler stopped, skip command {}", command);
+                return;
+            }
+            ScheduledCommand scheduled = scheduledCommands.get(command);
+            long scheduledAt;
+            Command targetCommand;
+            if (scheduled != null) {
+                // 已有相同命令，可合并的合并进去，否则沿用已有命令，重新计时
+                targetCommand = command instanceof MergeableCommand ? ((MergeableCommand) scheduled.command).merge(command) : scheduled.command;
+                scheduledAt = scheduled.scheduledAt;
+                scheduled.cancel();
+            } else {
+                targetCommand = command;
+                scheduledAt = System.nanoTime();
+            }
+            ScheduledCommand newScheduled = new ScheduledCommand(targetCommand, behaviour, scheduledAt, Math.max(timeout, 0));
+            scheduledCommands.put(targetCommand, newScheduled);
+            if (timer != null) {
+                newScheduled.future = timer.schedule(() -> fire(newScheduled), Math.max(timeout, 0), TimeUnit.MILLISECONDS);
             }
-
-            // map可能已经包含equals命令，put将替换它并重置计时器
-            scheduledCommands.put(targetCommand, new DuplicateScheduleConfig(System.currentTimeMillis() + timeout, behaviour));
             LOGGER.trace("{} scheduled for execution in {}ms", targetCommand, timeout);
         }
     }
 
     /**
-     * 运行当前未运行且运行时间{@link DuplicateScheduleConfig#time}
+     * 命令到期，当前没有相同命令运行时执行，否则按{@link DuplicateSheduleBehaviour}处理
      */
-    private boolean processCommands() {
-        long currentTime = System.currentTimeMillis();
-        synchronized (scheduledCommands) {
-            for (Iterator<Map.Entry<Command, DuplicateScheduleConfig>> it = scheduledCommands.entrySet().iterator(); it.hasNext(); ) {
-                Map.Entry<Command, DuplicateScheduleConfig> entry = it.next();
-                DuplicateScheduleConfig config = entry.getValue();
-                Command command = entry.getKey();
-                // 如果时间到了
-                if (config.getTime() < currentTime) {
-                    // 如果当前正在运行
-                    if (runningCommands.contains(command)) {
-                        if (config.getBehaviour().equals(DuplicateSheduleBehaviour.SKIP)) {
-                            LOGGER.debug("Skipping duplicate running command {}", command);
-                            it.remove();
-                        } else if (config.getBehaviour().equals(DuplicateSheduleBehaviour.RUN_DUPLICATE)) {
-                            executeCommand(command);
-                            it.remove();
-                        }
-                        // 不投递则为等待下次调度
-                    } else {
-                        executeCommand(command);
-                        it.remove();
-                    }
+    private void fire(ScheduledCommand scheduled) {
+        synchronized (this) {
+            // 已被重新投递或取消
+            if (stopped || scheduledCommands.get(scheduled.command) != scheduled) {
+                return;
+            }
+            Command command = scheduled.command;
+            if (runningCommands.containsKey(command)) {
+                if (scheduled.behaviour == DuplicateSheduleBehaviour.SKIP) {
+                    LOGGER.debug("Skipping duplicate running command {}", command);
+                    scheduledCommands.remove(command);
+                } else if (scheduled.behaviour == DuplicateSheduleBehaviour.RUN_DUPLICATE) {
+                    scheduledCommands.remove(command);
+                    executeCommand(scheduled);
+                } else {
+                    // 等待正在运行的命令结束后在finished中触发
+                    scheduled.waiting = true;
                 }
+            } else {
+                scheduledCommands.remove(command);
+                executeCommand(scheduled);
             }
         }
-
-        return true;
     }
 
     /**
-     * 创建{@link CommandExecutor}执行命令
+     * 提交{@link CommandExecutor}到线程池执行命令，需要持有锁
      */
-    private void executeCommand(Command command) {
+    private void executeCommand(ScheduledCommand scheduled) {
+        Command command = scheduled.command;
         if (command instanceof WatchEventCommand) {
             LOGGER.trace("Executing {}", command);
         } else {
             LOGGER.debug("Executing {}", command);
         }
         //添加到正在运行的集合
-        runningCommands.add(command);
-        new CommandExecutor(command) {
-            @Override
-            public void finished() {
-                runningCommands.remove(command);
+        runningCommands.merge(command, 1, Integer::sum);
+        try {
+            executor.execute(new CommandExecutor(command, scheduled.scheduledAt) {
+                @Override
+                public void finished() {
+                    commandFinished(command);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 只撤销本次计数，RUN_DUPLICATE时可能还有相同命令在运行
+            decrementRunning(command);
+            LOGGER.warning("Scheduler stopped, skip command {}", command);
+        }
+    }
+
+    /**
+     * 命令执行结束，有等待中的相同命令时立即执行
+     */
+    private void commandFinished(Command command) {
+        synchronized (this) {
+            decrementRunning(command);
+            ScheduledCommand waiting = scheduledCommands.get(command);
+            if (waiting != null && waiting.waiting) {
+                fire(waiting);
             }
-        }.start();
+        }
+    }
+
+    /**
+     * 正在运行的命令个数减一，需要持有锁
+     */
+    private void decrementRunning(Command command) {
+        Integer count = runningCommands.get(command);
+        if (count == null || count <= 1) {
+            runningCommands.remove(command);
+        } else {
+            runningCommands.put(command, count - 1);
+        }
     }
 
     @Override
     public void run() {
-        runner = new Thread(() -> {
-            for (; ; ) {
-                if (stopped || !processCommands()) {
-                    break;
-                }
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    break;
-                }
+        synchronized (this) {
+            stopped = false;
+            ScheduledThreadPoolExecutor scheduledExecutor = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("DebugTools-Scheduler-", true));
+            scheduledExecutor.setRemoveOnCancelPolicy(true);
+            timer = scheduledExecutor;
+            executor = HotswapThreadPool.create("DebugTools-CommandExecutor-");
+            // run之前投递的命令
+            for (ScheduledCommand scheduled : scheduledCommands.values()) {
+                long delay = Math.max(0, scheduled.dueAt - System.nanoTime());
+                scheduled.future = timer.schedule(() -> fire(scheduled), delay, TimeUnit.NANOSECONDS);
             }
-
-        });
-        runner.setDaemon(true);
-        runner.start();
+        }
     }
 
     @Override
     public void stop() {
-        stopped = true;
+        synchronized (this) {
+            stopped = true;
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
     }
 
-    @Getter
-    private static class DuplicateScheduleConfig {
+    private static class ScheduledCommand {
+
+        private final Command command;
 
         /**
-         * 什么时间运行
+         * 有重复命令时如何处理
          */
-        private final long time;
+        private final DuplicateSheduleBehaviour behaviour;
 
         /**
-         * 有重复命令时如何处理
+         * 首次投递的时间（合并后保持不变），用于统计等待耗时
          */
-        DuplicateSheduleBehaviour behaviour;
+        private final long scheduledAt;
 
-        private DuplicateScheduleConfig(long time, DuplicateSheduleBehaviour behaviour) {
-            this.time = time;
+        /**
+         * 本次投递的到期时间
+         */
+        private final long dueAt;
+
+        private ScheduledFuture<?> future;
+
+        /**
+         * 已到期但在等待相同命令执行结束
+         */
+        private boolean waiting;
+
+        private ScheduledCommand(Command command, DuplicateSheduleBehaviour behaviour, long scheduledAt, long timeout) {
+            this.command = command;
             this.behaviour = behaviour;
+            this.scheduledAt = scheduledAt;
+            this.dueAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        }
+
+        private void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
         }
     }
 }
@@ -29,9 +29,9 @@ import io.github.future0923.debug.tools.hotswap.core.plugin.watchResources.Watch
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.HotswapAgentClassLoaderExt;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.URLClassLoaderPathHelper;
 import io.github.future0923.debug.tools.hotswap.core.util.spring.util.StringUtils;
-import lombok.Getter;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -79,10 +79,9 @@ public class PluginConfiguration {
     PluginConfiguration parent;
 
     /**
-     * 配置所在的类加载器
+     * 配置所在的类加载器，配置是PluginManager中以类加载器为弱引用key的value，强引用会导致类加载器无法回收
      */
-    @Getter
-    final ClassLoader classLoader;
+    private final WeakReference<ClassLoader> classLoaderReference;
 
     /**
      * 配置文件URL
@@ -105,7 +104,7 @@ public class PluginConfiguration {
 
     public PluginConfiguration(PluginConfiguration parent, ClassLoader classLoader, boolean init) {
         this.parent = parent;
-        this.classLoader = classLoader;
+        this.classLoaderReference = new WeakReference<>(classLoader);
         // 载入配置文件
         loadConfigurationFile();
         if (init) {
@@ -113,11 +112,19 @@ public class PluginConfiguration {
         }
     }
 
+    /**
+     * 配置所在的类加载器，bootstrap类加载器或已经回收时返回null
+     */
+    public ClassLoader getClassLoader() {
+        return classLoaderReference.get();
+    }
+
     /**
      * 载入配置文件
      * 有外部使用外部配置文件
      */
     private void loadConfigurationFile() {
+        ClassLoader classLoader = getClassLoader();
         try {
             String externalPropertiesFile = HotswapAgent.getExternalPropertiesFile();
             if (DebugToolsStringUtils.isNotBlank(externalPropertiesFile)) {
@@ -232,6 +239,7 @@ public class PluginConfiguration {
     }
 
     private void initExtraClassPath() {
+        ClassLoader classLoader = getClassLoader();
         URL[] extraClassPath = getExtraClasspath();
         if (extraClassPath.length > 0 && !checkExcluded()) {
             if (classLoader instanceof HotswapAgentClassLoaderExt) {
@@ -269,6 +277,7 @@ public class PluginConfiguration {
     }
 
     private boolean checkExcluded() {
+        ClassLoader classLoader = getClassLoader();
         if (PluginManager.getInstance().getHotswapTransformer().getIncludedClassLoaderPatterns() != null) {
             for (Pattern pattern : PluginManager.getInstance().getHotswapTransformer().getIncludedClassLoaderPatterns()) {
                 if (pattern.matcher(classLoader.getClass().getName()).matches()) {
@@ -16,15 +16,19 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.config;
 
+import io.github.future0923.debug.tools.base.hutool.core.map.WeakConcurrentMap;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
 import io.github.future0923.debug.tools.hotswap.core.annotation.handler.InitHandler;
 import io.github.future0923.debug.tools.hotswap.core.command.Command;
 import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
 import io.github.future0923.debug.tools.hotswap.core.command.impl.SchedulerImpl;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
 import io.github.future0923.debug.tools.hotswap.core.util.HotswapTransformer;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.ClassLoaderDefineClassPatcher;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.URLClassLoaderPathHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureComparerHelper;
 import io.github.future0923.debug.tools.hotswap.core.watch.Watcher;
 import io.github.future0923.debug.tools.hotswap.core.watch.WatcherFactory;
 import lombok.Getter;
@@ -33,12 +37,16 @@ import lombok.Setter;
 import java.io.IOException;
 import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
 import java.security.ProtectionDomain;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 插件管理器
@@ -52,12 +60,38 @@ public class PluginManager {
      */
     public static final String PLUGIN_PACKAGE = "io.github.future0923.debug.tools.hotswap.core.plugin";
 
+    /**
+     * 批量热重载的合并窗口（毫秒），窗口内所有类加载器变动的类合并后按类加载器各调用一次redefineClasses
+     * <p>可以通过 {@code -Ddebug.tools.hotswap.batchWindow} 修改
+     */
+    public static final int HOTSWAP_BATCH_WINDOW = Integer.getInteger("debug.tools.hotswap.batchWindow", 200);
+
     ClassLoaderDefineClassPatcher classLoaderPatcher = new ClassLoaderDefineClassPatcher();
 
     /**
-     * ClassLoader中的插件配置信息
+     * ClassLoader中的插件配置信息，弱引用ClassLoader，支持并发读写
+     */
+    private final Map<ClassLoader, PluginConfiguration> classLoaderConfigurations = new WeakConcurrentMap<>();
+
+    /**
+     * bootstrap ClassLoader(null)的插件配置信息，{@link #classLoaderConfigurations}不支持null键
+     */
+    private volatile PluginConfiguration bootstrapConfiguration;
+
+    /**
+     * 向上查找父ClassLoader后解析出的插件配置缓存，{@link #configurationVersion}变化后失效
+     */
+    private final Map<ClassLoader, ResolvedConfiguration> resolvedConfigurations = new WeakConcurrentMap<>();
+
+    /**
+     * 最近一次解析的配置，同一个ClassLoader连续查找时直接返回。{@link WeakConcurrentMap}每次get都会创建弱引用key
      */
-    private final Map<ClassLoader, PluginConfiguration> classLoaderConfigurations = new HashMap<>();
+    private volatile ResolvedConfiguration lastResolved;
+
+    /**
+     * ClassLoader插件配置的版本，初始化或关闭ClassLoader时递增
+     */
+    private final AtomicInteger configurationVersion = new AtomicInteger();
 
     /**
      * ClassLoader初始化监听者
@@ -160,7 +194,7 @@ public class PluginManager {
 
         PluginConfiguration configuration = new PluginConfiguration(classLoader);
 
-        classLoaderConfigurations.put(classLoader, configuration);
+        putConfiguration(classLoader, configuration);
 
         // 扫描插件
         pluginRegistry.scanPlugins(getClass().getClassLoader(), PLUGIN_PACKAGE);
@@ -197,7 +231,7 @@ public class PluginManager {
      */
     public void initClassLoader(ClassLoader classLoader, ProtectionDomain protectionDomain) {
         // 存在说明ClassLoader中已经初始化过了，直接退出
-        if (classLoaderConfigurations.containsKey(classLoader)) {
+        if (isInitialized(classLoader)) {
             return;
         }
         // system/bootstrap 类加载器不初始化
@@ -206,9 +240,10 @@ public class PluginManager {
                 classLoader.equals(getClass().getClassLoader().getParent())) {
             return;
         }
+        long start = HotswapProfiler.start();
         synchronized (this) {
             // 如果已经初始化过了
-            if (classLoaderConfigurations.containsKey(classLoader)) {
+            if (isInitialized(classLoader)) {
                 return;
             }
             // 从AgentClassLoader复制插件到初始化ClassLoader中
@@ -219,8 +254,11 @@ public class PluginManager {
 
             // 创建这个ClassLoader中的插件配置
             PluginConfiguration pluginConfiguration = new PluginConfiguration(getPluginConfiguration(getClass().getClassLoader()), classLoader, false);
-            classLoaderConfigurations.put(classLoader, pluginConfiguration);
+            putConfiguration(classLoader, pluginConfiguration);
             pluginConfiguration.init();
+            if (start != 0L) {
+                HotswapProfiler.record(HotswapProfiler.CLASS_LOADER_INIT, HotswapProfiler.classLoaderName(classLoader), start);
+            }
         }
 
         // 调用类初始化监听者
@@ -234,23 +272,83 @@ public class PluginManager {
      */
     public void closeClassLoader(ClassLoader classLoader) {
         pluginRegistry.closeClassLoader(classLoader);
-        classLoaderConfigurations.remove(classLoader);
+        if (classLoader == null) {
+            bootstrapConfiguration = null;
+        } else {
+            classLoaderConfigurations.remove(classLoader);
+        }
+        configurationVersion.incrementAndGet();
         hotswapTransformer.closeClassLoader(classLoader);
     }
 
-
+    /**
+     * 获取ClassLoader的插件配置，没有则向上查找父ClassLoader的配置，查找结果按ClassLoader缓存
+     */
     public PluginConfiguration getPluginConfiguration(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return bootstrapConfiguration;
+        }
+        int version = configurationVersion.get();
+        ResolvedConfiguration last = lastResolved;
+        if (last != null && last.version == version && last.classLoader.get() == classLoader) {
+            return last.configuration;
+        }
+        ResolvedConfiguration resolved = resolvedConfigurations.get(classLoader);
+        if (resolved != null && resolved.version == version) {
+            lastResolved = resolved;
+            return resolved.configuration;
+        }
         ClassLoader loader = classLoader;
         while (loader != null && !classLoaderConfigurations.containsKey(loader)) {
             loader = loader.getParent();
         }
-        return classLoaderConfigurations.get(loader);
+        PluginConfiguration configuration = loader == null ? bootstrapConfiguration : classLoaderConfigurations.get(loader);
+        if (configuration != null) {
+            resolved = new ResolvedConfiguration(classLoader, configuration, version);
+            resolvedConfigurations.put(classLoader, resolved);
+            lastResolved = resolved;
+        }
+        return configuration;
+    }
+
+    private boolean isInitialized(ClassLoader classLoader) {
+        return classLoader == null ? bootstrapConfiguration != null : classLoaderConfigurations.containsKey(classLoader);
+    }
+
+    /**
+     * 保存ClassLoader的插件配置，之前解析出的配置缓存全部失效
+     */
+    private void putConfiguration(ClassLoader classLoader, PluginConfiguration configuration) {
+        if (classLoader == null) {
+            bootstrapConfiguration = configuration;
+        } else {
+            classLoaderConfigurations.put(classLoader, configuration);
+        }
+        configurationVersion.incrementAndGet();
+    }
+
+    private static class ResolvedConfiguration {
+
+        /**
+         * 查找的ClassLoader，弱引用，value不能强引用弱引用Map的key
+         */
+        private final WeakReference<ClassLoader> classLoader;
+
+        private final PluginConfiguration configuration;
+
+        private final int version;
+
+        private ResolvedConfiguration(ClassLoader classLoader, PluginConfiguration configuration, int version) {
+            this.classLoader = new WeakReference<>(classLoader);
+            this.configuration = configuration;
+            this.version = version;
+        }
     }
 
     /**
      * 通过传入的字节码进行热重载，
      *
-     * <p>此方法对集合进行操作，以允许同时对多个类进行相互依赖的更改
+     * <p>此方法对集合进行操作，以允许同时对多个类进行相互依赖的更改，同一类加载器的类在一次redefineClasses中重载
      *
      * @param reloadMap 要重载的字节码
      * @see Instrumentation#redefineClasses(ClassDefinition...)
@@ -261,24 +359,40 @@ public class PluginManager {
         }
 
         synchronized (reloadMap) {
-            ClassDefinition[] definitions = new ClassDefinition[reloadMap.size()];
-            String[] classNames = new String[reloadMap.size()];
-            int i = 0;
+            Map<ClassLoader, List<ClassDefinition>> loaderDefinitions = new LinkedHashMap<>();
             for (Map.Entry<Class<?>, byte[]> entry : reloadMap.entrySet()) {
-                classNames[i] = entry.getKey().getName();
-                definitions[i++] = new ClassDefinition(entry.getKey(), entry.getValue());
+                loaderDefinitions.computeIfAbsent(entry.getKey().getClassLoader(), k -> new ArrayList<>()).add(new ClassDefinition(entry.getKey(), entry.getValue()));
             }
-            try {
-                logger.debug("Reloading classes {} (autoHotswap)", Arrays.toString(classNames));
-                synchronized (hotswapLock) {
-                    instrumentation.redefineClasses(definitions);
+            IllegalStateException failure = null;
+            for (List<ClassDefinition> definitions : loaderDefinitions.values()) {
+                String[] classNames = new String[definitions.size()];
+                for (int i = 0; i < classNames.length; i++) {
+                    classNames[i] = definitions.get(i).getDefinitionClass().getName();
+                }
+                try {
+                    logger.debug("Reloading classes {} (autoHotswap)", Arrays.toString(classNames));
+                    synchronized (hotswapLock) {
+                        instrumentation.redefineClasses(definitions.toArray(new ClassDefinition[0]));
+                    }
+                    for (ClassDefinition definition : definitions) {
+                        ClassSignatureComparerHelper.invalidate(definition.getDefinitionClass());
+                        ClassRedefinitionTracker.redefinitionCompleted(definition.getDefinitionClass());
+                    }
+                    logger.reload("reloaded classes {} (autoHotswap)", Arrays.toString(classNames));
+                } catch (Exception e) {
+                    logger.debug("... Fail to reload classes {} (autoHotswap), msg is {}", Arrays.toString(classNames), e);
+                    // 一个类加载器失败不影响其他类加载器重载
+                    if (failure == null) {
+                        failure = new IllegalStateException("Unable to redefine classes", e);
+                    } else {
+                        failure.addSuppressed(e);
+                    }
                 }
-                logger.reload("reloaded classes {} (autoHotswap)", Arrays.toString(classNames));
-            } catch (Exception e) {
-                logger.debug("... Fail to reload classes {} (autoHotswap), msg is {}", Arrays.toString(classNames), e);
-                throw new IllegalStateException("Unable to redefine classes", e);
             }
             reloadMap.clear();
+            if (failure != null) {
+                throw failure;
+            }
         }
     }
 
@@ -295,7 +409,17 @@ public class PluginManager {
         if (instrumentation == null) {
             throw new IllegalStateException("Plugin manager is not correctly initialized - no instrumentation available.");
         }
-        getScheduler().scheduleCommand(new ScheduledHotswapCommand(reloadMap), timeout);
+        // 窗口内的命令会合并并重新计时，正在重载时等待结束后再执行，不会丢失
+        getScheduler().scheduleCommand(new ScheduledHotswapCommand(reloadMap), timeout, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+    }
+
+    /**
+     * 在{@link #HOTSWAP_BATCH_WINDOW}窗口内合并后批量热重载
+     *
+     * @param reloadMap 要重载的字节码
+     */
+    public void scheduleHotswap(Map<Class<?>, byte[]> reloadMap) {
+        scheduleHotswap(reloadMap, HOTSWAP_BATCH_WINDOW);
     }
 
 }
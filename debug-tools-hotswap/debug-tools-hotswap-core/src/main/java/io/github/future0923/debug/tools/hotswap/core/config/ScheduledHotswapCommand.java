@@ -23,7 +23,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * 通过调度器延迟执行热重载
+ * 通过调度器延迟执行热重载，窗口内的命令合并为一个，按类加载器批量重载
  */
 public class ScheduledHotswapCommand extends MergeableCommand {
 
@@ -53,6 +53,12 @@ public class ScheduledHotswapCommand extends MergeableCommand {
     public void executeCommand() {
         PluginManager.getInstance().hotswap(reloadMap);
     }
+
+    @Override
+    public String toString() {
+        return "ScheduledHotswapCommand{classes=" + reloadMap.size() + "}";
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o || getClass() == o.getClass()) return true;
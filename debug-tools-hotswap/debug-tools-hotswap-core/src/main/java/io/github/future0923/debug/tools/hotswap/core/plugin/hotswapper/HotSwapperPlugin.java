@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.lang.instrument.Instrumentation;
 import java.net.URL;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -58,12 +59,12 @@ public class HotSwapperPlugin {
     PluginManager pluginManager;
 
     /**
-     * 要重载的Class
+     * 要重载的Class（JPDA方式）
      */
     private final Map<Class<?>, byte[]> reloadMap = new HashMap<>();
 
     /**
-     * 创建热重载命令
+     * JPDA热重载命令，没有port时为null，通过{@link PluginManager#scheduleHotswap(Map)}批量重载
      */
     private Command hotswapCommand;
 
@@ -112,10 +113,15 @@ public class HotSwapperPlugin {
             LOGGER.warning("HotSwapper tries to reload class {}, which is not known to application classLoader {}.", ctClass.getName(), appClassLoader);
             return;
         }
+        if (hotswapCommand == null) {
+            // 所有类加载器的变动在窗口内合并，按类加载器批量重载
+            pluginManager.scheduleHotswap(Collections.singletonMap(clazz, ctClass.toBytecode()));
+            return;
+        }
         synchronized (reloadMap) {
             reloadMap.put(clazz, ctClass.toBytecode());
         }
-        scheduler.scheduleCommand(hotswapCommand, 100, Scheduler.DuplicateSheduleBehaviour.SKIP);
+        scheduler.scheduleCommand(hotswapCommand, PluginManager.HOTSWAP_BATCH_WINDOW, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
     }
 
     /**
@@ -127,18 +133,6 @@ public class HotSwapperPlugin {
     public void initHotswapCommand(ClassLoader appClassLoader, String port) {
         if (port != null && !port.isEmpty()) {
             hotswapCommand = new ReflectionCommand(appClassLoader, this, HotSwapperCommand.class.getName(), "hotswap", Arrays.asList(String.class, HashMap.class), port, reloadMap);
-        } else {
-            hotswapCommand = new Command() {
-                @Override
-                public void executeCommand() {
-                    pluginManager.hotswap(reloadMap);
-                }
-
-                @Override
-                public String toString() {
-                    return "pluginManager.hotswap(" + Arrays.toString(reloadMap.keySet().toArray()) + ")";
-                }
-            };
         }
     }
 }
@@ -20,10 +20,20 @@ import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.LoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
-import javassist.CtClass;
-import io.github.future0923.debug.tools.hotswap.core.util.ReflectionHelper;
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
+import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
+import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * JdkPlugin处理java rt.jar
@@ -31,6 +41,9 @@ import java.util.Map;
  *  <li>{@link #flushBeanIntrospectorCaches}刷新java.beans.Introspector缓存
  *  <li>{@link #flushObjectStreamCaches}刷新ObjectStream缓存
  * </ul>
+ * 重定义完成（{@code redefineClasses}返回）后通过{@link ClassRedefinitionTracker}的监听者刷新，
+ * 在{@link PluginManager#HOTSWAP_BATCH_WINDOW}窗口内到达的类（同一批次的转换和重定义完成通知）合并为一次刷新，
+ * 只清除重定义的类（及能遍历时的子类），反射句柄只解析一次
  */
 @Plugin(name = "JdkPlugin",
         description = "",
@@ -43,74 +56,192 @@ public class JdkPlugin {
 
     public static boolean reloadFlag;
 
+    /**
+     * 等待刷新的类，guarded by pendingClasses
+     */
+    private static final Set<Class<?>> pendingClasses = new LinkedHashSet<>();
+
+    /**
+     * 刷新命令，每次投递同一个实例
+     */
+    private static final Command FLUSH_COMMAND = JdkPlugin::flushPendingClasses;
+
+    /**
+     * 是否已注册重定义完成的监听者
+     */
+    private static final AtomicBoolean listenerRegistered = new AtomicBoolean();
+
+    /**
+     * 转换时先刷新一次，覆盖不通知重定义完成的路径（如调试器重定义）。转换时类还没有真正重定义，这期间缓存可能又被旧的类结构填充，重定义完成后再刷新一次
+     */
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE, skipSynthetic = false)
-    public static void flushBeanIntrospectorCaches(ClassLoader classLoader, CtClass ctClass) {
-        try {
-            LOGGER.debug("Flushing {} from introspector", ctClass.getName());
+    public static void redefineClass(Class<?> clazz) {
+        if (listenerRegistered.compareAndSet(false, true)) {
+            ClassRedefinitionTracker.addListener(JdkPlugin::scheduleFlush);
+        }
+        scheduleFlush(clazz);
+    }
 
-            Class<?> clazz = classLoader.loadClass(ctClass.getName());
-            Class<?> threadGroupCtxClass = classLoader.loadClass("java.beans.ThreadGroupContext");
-            Class<?> introspectorClass = classLoader.loadClass("java.beans.Introspector");
+    private static void scheduleFlush(Class<?> clazz) {
+        boolean schedule;
+        synchronized (pendingClasses) {
+            schedule = pendingClasses.isEmpty();
+            pendingClasses.add(clazz);
+        }
+        // 窗口内的后续类只加入pendingClasses，正在刷新时等待结束后再执行，否则本批次的类不会被刷新
+        if (schedule) {
+            PluginManager.getInstance().getScheduler().scheduleCommand(FLUSH_COMMAND, PluginManager.HOTSWAP_BATCH_WINDOW, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+        }
+    }
 
-            synchronized (classLoader) {
-                Object contexts = ReflectionHelper.get(null, threadGroupCtxClass, "contexts");
-                Object table[] = (Object[]) ReflectionHelper.get(contexts, "table");
+    private static void flushPendingClasses() {
+        List<Class<?>> classes;
+        synchronized (pendingClasses) {
+            classes = new ArrayList<>(pendingClasses);
+            pendingClasses.clear();
+        }
+        LOGGER.debug("Flushing {} from introspector and ObjectStreamClass caches", classes);
+        try {
+            flushBeanIntrospectorCaches(classes);
+            flushObjectStreamCaches(classes);
+        } finally {
+            reloadFlag = false;
+        }
+    }
 
+    /**
+     * 从所有线程组的BeanInfo缓存和Introspector缓存中清除。子类的BeanInfo包含父类的属性，所以子类也要清除
+     */
+    public static void flushBeanIntrospectorCaches(List<Class<?>> classes) {
+        Handles handles = Handles.INSTANCE;
+        try {
+            if (handles.contexts != null) {
+                Object[] table = (Object[]) handles.weakIdentityMapTable.get(handles.contexts.get(null));
                 if (table != null) {
-                    for (Object o : table) {
-                        if (o != null) {
-                            Object threadGroupContext = ReflectionHelper.get(o, "value");
+                    for (Object entry : table) {
+                        for (; entry != null; entry = handles.entryNext.get(entry)) {
+                            Object threadGroupContext = handles.entryValue.get(entry);
                             if (threadGroupContext != null) {
-                                LOGGER.trace("Removing from threadGroupContext");
-                                ReflectionHelper.invoke(threadGroupContext, threadGroupCtxClass, "removeBeanInfo",
-                                        new Class[]{Class.class}, clazz);
+                                flushThreadGroupContext(handles, threadGroupContext, classes);
                             }
                         }
                     }
                 }
-
-                ReflectionHelper.invoke(null, introspectorClass, "flushFromCaches",
-                        new Class[]{Class.class}, clazz);
+            }
+            if (handles.flushFromCaches != null) {
+                for (Class<?> clazz : classes) {
+                    handles.flushFromCaches.invoke(null, clazz);
+                }
             }
         } catch (Exception e) {
             LOGGER.error("flushBeanIntrospectorCaches() exception {}.", e.getMessage());
-        } finally {
-            reloadFlag = false;
         }
     }
 
-    @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE, skipSynthetic = false)
-    public static void flushObjectStreamCaches(ClassLoader classLoader, CtClass ctClass) {
-        Class<?> clazz;
-        Object localDescs;
-        Object reflectors;
-        try {
-            LOGGER.debug("Flushing {} from ObjectStreamClass caches", ctClass.getName());
-            clazz = classLoader.loadClass(ctClass.getName());
-            Class<?> objectStreamClassCache = classLoader.loadClass("java.io.ObjectStreamClass$Caches");
-            localDescs = ReflectionHelper.get(null, objectStreamClassCache, "localDescs");
-            reflectors = ReflectionHelper.get(null, objectStreamClassCache, "reflectors");
-        } catch (Exception e) {
-            LOGGER.error("flushObjectStreamCaches() java.io.ObjectStreamClass$Caches not found.", e.getMessage());
+    private static void flushThreadGroupContext(Handles handles, Object threadGroupContext, List<Class<?>> classes) throws Exception {
+        // removeBeanInfo同步在ThreadGroupContext上
+        synchronized (threadGroupContext) {
+            Object beanInfoCache = handles.beanInfoCache.get(threadGroupContext);
+            if (beanInfoCache instanceof Map) {
+                ((Map<?, ?>) beanInfoCache).keySet().removeIf(key -> key instanceof Class && ClassRedefinitionTracker.isSubclass((Class<?>) key, classes));
+                return;
+            }
+        }
+        for (Class<?> clazz : classes) {
+            handles.removeBeanInfo.invoke(threadGroupContext, clazz);
+        }
+    }
+
+    /**
+     * jdk8及以下缓存是key为类弱引用的Map，清除重定义的类及其子类；更高版本是ClassValue，只能按类清除
+     */
+    public static void flushObjectStreamCaches(List<Class<?>> classes) {
+        Handles handles = Handles.INSTANCE;
+        if (handles.localDescs == null) {
             return;
         }
-        boolean java17;
         try {
-            ((Map) localDescs).clear();
-            ((Map) reflectors).clear();
-            java17 = false;
+            for (Object cache : new Object[]{handles.localDescs.get(null), handles.reflectors.get(null)}) {
+                if (cache instanceof Map) {
+                    ((Map<?, ?>) cache).keySet().removeIf(key -> {
+                        Object clazz = key instanceof Reference ? ((Reference<?>) key).get() : null;
+                        return clazz instanceof Class && ClassRedefinitionTracker.isSubclass((Class<?>) clazz, classes);
+                    });
+                } else if (handles.classCacheMap != null) {
+                    ClassValue<?> classValue = (ClassValue<?>) handles.classCacheMap.get(cache);
+                    for (Class<?> clazz : classes) {
+                        classValue.remove(clazz);
+                    }
+                }
+            }
         } catch (Exception e) {
-            java17 = true;
+            LOGGER.error("flushObjectStreamCaches() exception {}.", e.getMessage());
         }
-        if (java17) {
+    }
+
+    /**
+     * jdk内部缓存的反射句柄，首次使用时解析，不可用的为null
+     */
+    private static class Handles {
+
+        private static final Handles INSTANCE = new Handles();
+
+        private Field contexts;
+
+        private Field weakIdentityMapTable;
+
+        private Field entryValue;
+
+        private Field entryNext;
+
+        private Field beanInfoCache;
+
+        private Method removeBeanInfo;
+
+        private Method flushFromCaches;
+
+        private Field localDescs;
+
+        private Field reflectors;
+
+        private Field classCacheMap;
+
+        private Handles() {
             try {
-                Object localDescsMap = ReflectionHelper.get(localDescs, "map");
-                ReflectionHelper.invoke(localDescsMap, localDescsMap.getClass(), "remove", new Class[]{Class.class}, clazz);
-                Object reflectorsMap = ReflectionHelper.get(reflectors, "map");
-                ReflectionHelper.invoke(reflectorsMap, reflectorsMap.getClass(), "remove", new Class[]{Class.class}, clazz);
-            } catch (Exception e) {
-                LOGGER.error("flushObjectStreamCaches() exception {}.", e.getMessage());
+                Class<?> threadGroupContextClass = Class.forName("java.beans.ThreadGroupContext");
+                Class<?> weakIdentityMapClass = Class.forName("java.beans.WeakIdentityMap");
+                Class<?> entryClass = Class.forName("java.beans.WeakIdentityMap$Entry");
+                Field contextsField = accessible(threadGroupContextClass.getDeclaredField("contexts"));
+                weakIdentityMapTable = accessible(weakIdentityMapClass.getDeclaredField("table"));
+                entryValue = accessible(entryClass.getDeclaredField("value"));
+                entryNext = accessible(entryClass.getDeclaredField("next"));
+                beanInfoCache = accessible(threadGroupContextClass.getDeclaredField("beanInfoCache"));
+                removeBeanInfo = accessible(threadGroupContextClass.getDeclaredMethod("removeBeanInfo", Class.class));
+                contexts = contextsField;
+            } catch (Throwable e) {
+                LOGGER.debug("java.beans.ThreadGroupContext not accessible, {}", e.getMessage());
             }
+            try {
+                flushFromCaches = Class.forName("java.beans.Introspector").getMethod("flushFromCaches", Class.class);
+            } catch (Throwable e) {
+                LOGGER.debug("java.beans.Introspector not found, {}", e.getMessage());
+            }
+            try {
+                Class<?> cachesClass = Class.forName("java.io.ObjectStreamClass$Caches");
+                Field localDescsField = accessible(cachesClass.getDeclaredField("localDescs"));
+                reflectors = accessible(cachesClass.getDeclaredField("reflectors"));
+                if (!Map.class.isAssignableFrom(localDescsField.getType())) {
+                    classCacheMap = accessible(localDescsField.getType().getDeclaredField("map"));
+                }
+                localDescs = localDescsField;
+            } catch (Throwable e) {
+                LOGGER.error("flushObjectStreamCaches() java.io.ObjectStreamClass$Caches not accessible, {}", e.getMessage());
+            }
+        }
+
+        private static <T extends java.lang.reflect.AccessibleObject> T accessible(T accessibleObject) {
+            accessibleObject.setAccessible(true);
+            return accessibleObject;
         }
     }
 
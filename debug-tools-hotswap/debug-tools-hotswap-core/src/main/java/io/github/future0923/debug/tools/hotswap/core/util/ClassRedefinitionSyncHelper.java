@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtNewMethod;
+
+/**
+ * 向框架的缓存持有类中注入按{@link ClassRedefinitionTracker}代数同步缓存的字段和方法
+ * <p>
+ * 注入后在访问缓存的方法前调用{@code $$ha$syncRedefinition();}，代数变化时才清除缓存
+ */
+public class ClassRedefinitionSyncHelper {
+
+    /**
+     * 注入的记录已同步重定义代数的字段
+     */
+    public static final String GENERATION_FIELD = "$$ha$redefinitionGeneration";
+
+    /**
+     * 注入的同步重定义代数的方法
+     */
+    public static final String SYNC_METHOD = "$$ha$syncRedefinition";
+
+    /**
+     * {@link ClassRedefinitionTracker#evict(int, java.util.Map[])}
+     */
+    public static final String EVICT = ClassRedefinitionTracker.class.getName() + ".evict";
+
+    /**
+     * {@link ClassRedefinitionTracker#evictSubclasses(int, java.util.Map[])}
+     */
+    public static final String EVICT_SUBCLASSES = ClassRedefinitionTracker.class.getName() + ".evictSubclasses";
+
+    /**
+     * {@link ClassRedefinitionTracker#evictReferences(int, java.util.Map[])}
+     */
+    public static final String EVICT_REFERENCES = ClassRedefinitionTracker.class.getName() + ".evictReferences";
+
+    /**
+     * 注入记录代数的字段，初始值为当前代数
+     */
+    public static void addGenerationField(CtClass ctClass, boolean isStatic) throws CannotCompileException {
+        ctClass.addField(CtField.make((isStatic ? "private static " : "private ") + "volatile int " + GENERATION_FIELD + ";", ctClass),
+                CtField.Initializer.byExpr(ClassRedefinitionTracker.class.getName() + ".getGeneration()"));
+    }
+
+    /**
+     * 注入记录代数的字段和同步方法，代数变化时调用{@code evictMethod(int since, Map[] caches)}清除缓存并记录返回的代数
+     *
+     * @param isStatic    缓存是否为静态字段
+     * @param evictMethod 清除缓存的静态方法全名，如{@link #EVICT_SUBCLASSES}
+     * @param caches      缓存字段，为空时只同步代数
+     * @param statements  代数变化时额外执行的语句（如清空不是Map的缓存）
+     */
+    public static void addSyncMethod(CtClass ctClass, boolean isStatic, String evictMethod, String[] caches, String... statements) throws CannotCompileException {
+        String tracker = ClassRedefinitionTracker.class.getName();
+        StringBuilder body = new StringBuilder();
+        body.append(isStatic ? "private static " : "private ").append("void ").append(SYNC_METHOD).append("() {");
+        body.append("   if (").append(GENERATION_FIELD).append(" != ").append(tracker).append(".getGeneration()) {");
+        if (caches.length == 0) {
+            body.append(GENERATION_FIELD).append(" = ").append(tracker).append(".getGeneration();");
+        } else {
+            body.append(GENERATION_FIELD).append(" = ").append(evictMethod).append("(").append(GENERATION_FIELD)
+                    .append(", new java.util.Map[]{").append(String.join(", ", caches)).append("});");
+        }
+        for (String statement : statements) {
+            body.append(statement);
+        }
+        body.append("   }");
+        body.append("}");
+        addGenerationField(ctClass, isStatic);
+        ctClass.addMethod(CtNewMethod.make(body.toString(), ctClass));
+    }
+}
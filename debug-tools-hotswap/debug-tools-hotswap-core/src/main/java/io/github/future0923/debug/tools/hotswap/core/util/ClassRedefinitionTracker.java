@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * 类重定义代数，供插件按需清除框架中已重定义类的缓存
+ * <p>
+ * 每次类重定义代数加1并记录重定义的类。缓存持有者记录已同步的代数，热路径上只比较一次代数，
+ * 不一致时通过{@link #evict(int, Map[])}只清除期间重定义过的类的缓存。
+ * <p>
+ * 转换时类还没有真正重定义，这期间缓存可能又被旧的类结构填充，所以{@code redefineClasses}返回后要调用{@link #redefinitionCompleted(Class)}再标记一次。
+ * 不能通过代数同步的缓存可以用{@link #addListener(RedefinitionListener)}在此时再次清除。
+ */
+public class ClassRedefinitionTracker {
+
+    private static final Logger LOGGER = Logger.getLogger(ClassRedefinitionTracker.class);
+
+    /**
+     * 最多保留的重定义记录数，超过后丢弃较早的一半，落后太多的缓存持有者直接全部清除
+     */
+    private static final int MAX_RECORDS = 4096;
+
+    private static volatile int generation;
+
+    /**
+     * 重定义记录，按代数递增，guarded by records
+     */
+    private static final List<Record> records = new ArrayList<>();
+
+    /**
+     * 已丢弃记录的最大代数
+     */
+    private static int discardedGeneration;
+
+    /**
+     * 重定义完成的监听者
+     */
+    private static final List<RedefinitionListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 当前重定义代数
+     */
+    public static int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 转换时标记类被重定义
+     */
+    public static void redefined(Class<?> clazz) {
+        synchronized (records) {
+            mark(clazz);
+        }
+    }
+
+    /**
+     * {@code redefineClasses}返回后再次标记，清除转换期间用旧的类结构填充的缓存
+     */
+    public static void redefinitionCompleted(Class<?> clazz) {
+        synchronized (records) {
+            mark(clazz);
+        }
+        for (RedefinitionListener listener : listeners) {
+            try {
+                listener.redefinitionCompleted(clazz);
+            } catch (Throwable e) {
+                LOGGER.error("Error notifying {} of redefined class {}", e, listener, clazz.getName());
+            }
+        }
+    }
+
+    /**
+     * 添加重定义完成的监听者
+     */
+    public static void addListener(RedefinitionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 获取代数{@code since}之后重定义的类
+     *
+     * @return 重定义的类，记录已丢弃无法判断时返回null
+     */
+    public static List<Class<?>> redefinedSince(int since) {
+        List<Class<?>> result = new ArrayList<>();
+        synchronized (records) {
+            if (since < discardedGeneration) {
+                return null;
+            }
+            for (int i = records.size() - 1; i >= 0; i--) {
+                Record record = records.get(i);
+                if (record.generation <= since) {
+                    break;
+                }
+                Class<?> clazz = record.clazz.get();
+                if (clazz != null) {
+                    result.add(clazz);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从缓存中清除代数{@code since}之后重定义的类，缓存的key为Class
+     *
+     * @param since  缓存已同步的代数
+     * @param caches 要清除的缓存
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evict(int since, Map<?, ?>[] caches) {
+        return evict(since, caches, null);
+    }
+
+    /**
+     * 从缓存中清除代数{@code since}之后重定义的类及其子类，用于缓存的内容包含父类结构的情况（如包含父类字段、方法）
+     *
+     * @param since  缓存已同步的代数
+     * @param caches 要清除的缓存
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evictSubclasses(int since, Map<?, ?>[] caches) {
+        return evict(since, caches, (key, classes) -> key instanceof Class && isSubclass((Class<?>) key, classes));
+    }
+
+    /**
+     * 从缓存中清除引用了代数{@code since}之后重定义的类的类型，缓存的key为Type，用于缓存的内容持有字段类型结构的情况（如序列化器）
+     *
+     * @param since  缓存已同步的代数
+     * @param caches 要清除的缓存
+     * @return 清除后缓存同步到的代数
+     * @see #references(Type, List)
+     */
+    public static int evictReferences(int since, Map<?, ?>[] caches) {
+        return evict(since, caches, (key, classes) -> key instanceof Type && references((Type) key, classes));
+    }
+
+    /**
+     * 从缓存中清除key关联的类是代数{@code since}之后重定义的类及其子类的项，用于key不是Class的缓存
+     *
+     * @param since      缓存已同步的代数
+     * @param caches     要清除的缓存
+     * @param keyClasses 获取key关联的类，返回null时直接清除
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evictSubclasses(int since, Map<?, ?>[] caches, Function<Object, Collection<Class<?>>> keyClasses) {
+        return evict(since, caches, (key, classes) -> {
+            Collection<Class<?>> keyClassList = keyClasses.apply(key);
+            if (keyClassList == null) {
+                return true;
+            }
+            for (Class<?> keyClass : keyClassList) {
+                if (keyClass != null && isSubclass(keyClass, classes)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 从缓存中清除key对应的类型引用了代数{@code since}之后重定义的类的项，用于key不是Type的缓存
+     *
+     * @param since   缓存已同步的代数
+     * @param caches  要清除的缓存
+     * @param keyType 获取key对应的类型，返回null时直接清除
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evictReferences(int since, Map<?, ?>[] caches, Function<Object, Type> keyType) {
+        return evict(since, caches, (key, classes) -> {
+            Type type = keyType.apply(key);
+            return type == null || references(type, classes);
+        });
+    }
+
+    /**
+     * @param stale key是否需要清除，为null时只清除key为重定义的类本身
+     */
+    private static int evict(int since, Map<?, ?>[] caches, BiPredicate<Object, List<Class<?>>> stale) {
+        // 先读取代数，期间新的重定义会在下次比较时处理
+        int current = generation;
+        if (since == current) {
+            return current;
+        }
+        List<Class<?>> classes = redefinedSince(since);
+        for (Map<?, ?> cache : caches) {
+            if (cache == null) {
+                continue;
+            }
+            if (classes == null) {
+                cache.clear();
+            } else if (stale != null) {
+                // 部分Map的keySet不支持通过迭代器删除，先复制
+                for (Object key : new ArrayList<>(cache.keySet())) {
+                    if (stale.test(key, classes)) {
+                        cache.remove(key);
+                    }
+                }
+            } else {
+                for (Class<?> clazz : classes) {
+                    cache.remove(clazz);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 类是否为重定义的类或其子类
+     */
+    public static boolean isSubclass(Class<?> clazz, List<Class<?>> classes) {
+        for (Class<?> redefined : classes) {
+            if (redefined.isAssignableFrom(clazz)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 类型是否引用了重定义的类：类型本身、泛型参数或（递归的）非静态字段类型是重定义的类或其子类。
+     * 用于序列化框架中按类型缓存、且持有字段类型序列化器的缓存
+     */
+    public static boolean references(Type type, List<Class<?>> redefined) {
+        try {
+            return references(type, redefined, new HashSet<>());
+        } catch (Throwable e) {
+            // 类结构无法解析（如字段类型被删除）时直接清除
+            return true;
+        }
+    }
+
+    private static boolean references(Type type, List<Class<?>> redefined, Set<Class<?>> visited) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            if (references(parameterizedType.getRawType(), redefined, visited)) {
+                return true;
+            }
+            for (Type argument : parameterizedType.getActualTypeArguments()) {
+                if (references(argument, redefined, visited)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (type instanceof GenericArrayType) {
+            return references(((GenericArrayType) type).getGenericComponentType(), redefined, visited);
+        }
+        if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                if (references(bound, redefined, visited)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (!(type instanceof Class)) {
+            return false;
+        }
+        Class<?> clazz = (Class<?>) type;
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        if (clazz.isPrimitive() || !visited.add(clazz)) {
+            return false;
+        }
+        if (isSubclass(clazz, redefined)) {
+            return true;
+        }
+        if (clazz.getName().startsWith("java.")) {
+            return false;
+        }
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+                if (references(field.getGenericType(), redefined, visited)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void mark(Class<?> clazz) {
+        if (records.size() >= MAX_RECORDS) {
+            List<Record> discarded = records.subList(0, MAX_RECORDS / 2);
+            discardedGeneration = discarded.get(discarded.size() - 1).generation;
+            discarded.clear();
+        }
+        int next = generation + 1;
+        records.add(new Record(next, new WeakReference<>(clazz)));
+        // 记录写入后再发布代数
+        generation = next;
+    }
+
+    /**
+     * 重定义完成（{@code redefineClasses}返回后）的监听者
+     */
+    public interface RedefinitionListener {
+
+        void redefinitionCompleted(Class<?> clazz);
+    }
+
+    private static class Record {
+
+        private final int generation;
+
+        private final WeakReference<Class<?>> clazz;
+
+        private Record(int generation, WeakReference<Class<?>> clazz) {
+            this.generation = generation;
+            this.clazz = clazz;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热重载启动耗时统计，记录类加载过程中Transformer、插件、类加载器初始化累计的耗时和次数
+ * <p>
+ * 默认关闭，可以通过 {@code -Ddebug.tools.hotswap.profile=true} 开启，关闭时{@link #start()}直接返回0不再计时
+ */
+public class HotswapProfiler {
+
+    private static final Logger LOGGER = Logger.getLogger(HotswapProfiler.class);
+
+    /**
+     * 非插件Transformer的耗时，key为Transformer类名
+     */
+    public static final String TRANSFORMER = "transformer";
+
+    /**
+     * 插件{@link io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent}方法的耗时，key为插件类名#方法名
+     */
+    public static final String PLUGIN = "plugin";
+
+    /**
+     * {@link HotswapTransformer#transform}在类加载器上的总耗时（包含插件和Transformer）
+     */
+    public static final String CLASS_LOADER = "classLoader";
+
+    /**
+     * PluginManager初始化类加载器的耗时（包含插件类复制）
+     */
+    public static final String CLASS_LOADER_INIT = "classLoaderInit";
+
+    /**
+     * 复制插件类到类加载器的耗时
+     */
+    public static final String CLASS_LOADER_PATCH = "classLoaderPatch";
+
+    /**
+     * 调度器中命令从投递到开始执行的等待耗时（包含调度延迟），key为命令类名
+     */
+    public static final String COMMAND_DELAY = "commandDelay";
+
+    /**
+     * 调度器中命令的执行耗时，key为命令类名
+     */
+    public static final String COMMAND_EXECUTION = "commandExecution";
+
+    /**
+     * 插件自行调用redefineClasses的耗时，key为调用方类名
+     */
+    public static final String REDEFINE = "redefine";
+
+    private static final boolean enabled = Boolean.getBoolean("debug.tools.hotswap.profile");
+
+    private static final ConcurrentMap<String, ConcurrentMap<String, Stat>> stats = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean startupDumped = new AtomicBoolean(false);
+
+    private static final long createTime = System.nanoTime();
+
+    /**
+     * 类加载器的统计名称缓存
+     */
+    private static final Map<ClassLoader, String> classLoaderNames = new WeakHashMap<>();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 开始计时，未开启时返回0
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * 记录从start开始的耗时
+     */
+    public static void record(String category, String name, long start) {
+        if (start == 0L) {
+            return;
+        }
+        recordNanos(category, name, System.nanoTime() - start);
+    }
+
+    /**
+     * 直接记录一次耗时（纳秒），未开启时忽略
+     */
+    public static void recordNanos(String category, String name, long cost) {
+        if (!enabled) {
+            return;
+        }
+        ConcurrentMap<String, Stat> categoryStats = stats.get(category);
+        if (categoryStats == null) {
+            categoryStats = stats.computeIfAbsent(category, k -> new ConcurrentHashMap<>());
+        }
+        Stat stat = categoryStats.get(name);
+        if (stat == null) {
+            stat = categoryStats.computeIfAbsent(name, k -> new Stat());
+        }
+        stat.count.increment();
+        stat.nanos.add(cost);
+    }
+
+    /**
+     * 类加载器的统计名称，与类加载器列表中的identity保持一致
+     */
+    public static String classLoaderName(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return "bootstrap";
+        }
+        synchronized (classLoaderNames) {
+            String name = classLoaderNames.get(classLoader);
+            if (name == null) {
+                name = classLoader.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(classLoader));
+                classLoaderNames.put(classLoader, name);
+            }
+            return name;
+        }
+    }
+
+    /**
+     * 获取当前统计快照，每个分类按耗时倒序
+     */
+    public static Map<String, List<Item>> snapshot() {
+        Map<String, List<Item>> result = new LinkedHashMap<>();
+        for (String category : new String[]{CLASS_LOADER, CLASS_LOADER_INIT, CLASS_LOADER_PATCH, PLUGIN, TRANSFORMER, COMMAND_DELAY, COMMAND_EXECUTION, REDEFINE}) {
+            ConcurrentMap<String, Stat> categoryStats = stats.get(category);
+            List<Item> items = new ArrayList<>();
+            if (categoryStats != null) {
+                for (Map.Entry<String, Stat> entry : categoryStats.entrySet()) {
+                    items.add(new Item(entry.getKey(), entry.getValue().count.sum(), entry.getValue().nanos.sum()));
+                }
+            }
+            items.sort((o1, o2) -> Long.compare(o2.getCostNanos(), o1.getCostNanos()));
+            result.put(category, items);
+        }
+        return result;
+    }
+
+    /**
+     * 清空统计
+     */
+    public static void reset() {
+        stats.clear();
+        synchronized (classLoaderNames) {
+            classLoaderNames.clear();
+        }
+    }
+
+    /**
+     * 应用启动完成时调用，只在第一次调用时打印统计信息
+     */
+    public static void startupComplete() {
+        if (!enabled || !startupDumped.compareAndSet(false, true)) {
+            return;
+        }
+        LOGGER.info("Hotswap startup profile after {}ms:\n{}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createTime), dump(10));
+    }
+
+    /**
+     * 格式化统计信息，每个分类最多输出limit条
+     */
+    public static String dump(int limit) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<Item>> entry : snapshot().entrySet()) {
+            long total = 0;
+            for (Item item : entry.getValue()) {
+                total += item.getCostNanos();
+            }
+            sb.append(entry.getKey()).append(" (total ").append(TimeUnit.NANOSECONDS.toMillis(total)).append("ms)\n");
+            List<Item> items = entry.getValue();
+            for (int i = 0; i < items.size() && i < limit; i++) {
+                Item item = items.get(i);
+                sb.append("    ").append(item.getCostMillis()).append("ms\t").append(item.getCount()).append("\t").append(item.getName()).append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static class Stat {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+    }
+
+    @Getter
+    public static class Item {
+
+        private final String name;
+
+        private final long count;
+
+        private final long costNanos;
+
+        private final long costMillis;
+
+        public Item(String name, long count, long costNanos) {
+            this.name = name;
+            this.count = count;
+            this.costNanos = costNanos;
+            this.costMillis = TimeUnit.NANOSECONDS.toMillis(costNanos);
+        }
+    }
+}
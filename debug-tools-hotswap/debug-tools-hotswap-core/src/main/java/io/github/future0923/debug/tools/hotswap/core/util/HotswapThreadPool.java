@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import io.github.future0923.debug.tools.base.hutool.core.thread.NamedThreadFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热重载内部使用的有界线程池（命令执行、目录注册、代理生成等）
+ */
+public class HotswapThreadPool {
+
+    /**
+     * 线程数，最少2个，最多4个，不超过CPU核数
+     */
+    public static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * 空闲线程回收时间（秒）
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    /**
+     * 创建{@link #THREADS}个守护线程的线程池，任务排队执行，空闲时线程会回收
+     *
+     * @param namePrefix 线程名前缀
+     */
+    public static ThreadPoolExecutor create(String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NamedThreadFactory(namePrefix, true));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
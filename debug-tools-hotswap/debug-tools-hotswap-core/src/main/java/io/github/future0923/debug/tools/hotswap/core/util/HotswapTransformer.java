@@ -16,13 +16,16 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.util;
 
+import io.github.future0923.debug.tools.base.hutool.core.map.WeakConcurrentMap;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.base.trace.MethodTrace;
 import io.github.future0923.debug.tools.hotswap.core.annotation.LoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
 import io.github.future0923.debug.tools.hotswap.core.annotation.handler.PluginClassFileTransformer;
+import io.github.future0923.debug.tools.hotswap.core.annotation.handler.PluginTransformContext;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
+import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureComparerHelper;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -31,6 +34,7 @@ import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -39,7 +43,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -93,15 +96,30 @@ public class HotswapTransformer implements ClassFileTransformer {
      */
     protected Map<String, RegisteredTransformersRecord> otherTransformers = new LinkedHashMap<>();
 
+    /**
+     * {@link #redefinitionTransformers}的索引快照，注册变化时置为null，变化后首次transform时重新创建
+     */
+    private volatile TransformerIndex redefinitionIndex;
+
+    /**
+     * {@link #otherTransformers}的索引快照，注册变化时置为null，变化后首次transform时重新创建
+     */
+    private volatile TransformerIndex otherIndex;
+
     /**
      * Transformer与ClassLoader之间的映射
      */
     protected Map<ClassFileTransformer, ClassLoader> classLoaderTransformers = new LinkedHashMap<>();
 
     /**
-     * 类加载是否已经初始化完成
+     * 类加载是否已经初始化完成，弱引用ClassLoader，支持并发读写
+     */
+    protected Map<ClassLoader, Boolean> seenClassLoaders = new WeakConcurrentMap<>();
+
+    /**
+     * bootstrap ClassLoader(null)是否已经初始化完成，{@link #seenClassLoaders}不支持null键
      */
-    protected Map<ClassLoader, Boolean> seenClassLoaders = new WeakHashMap<>();
+    private volatile boolean bootstrapClassLoaderSeen;
 
     /**
      * 应该初始化的类加载器正则集合
@@ -130,40 +148,57 @@ public class HotswapTransformer implements ClassFileTransformer {
         if (skippedClassLoaders.contains(classLoaderClassName)) {
             return null;
         }
-        // 非插件类文件Transformer的集合
-        List<ClassFileTransformer> toApply = new ArrayList<>();
-        // 插件类文件Transformer的集合
-        List<PluginClassFileTransformer> pluginTransformers = new ArrayList<>();
+        long start = HotswapProfiler.start();
+        try {
+            return doTransform(classLoader, className, redefiningClass, protectionDomain, bytes);
+        } finally {
+            if (redefiningClass != null) {
+                // 插件在转换时已经用旧的结构指纹比较过，重定义后需要重新计算。
+                // 此时类还没有真正重定义，并发调用可能又缓存旧的结构；通过本工具重定义的路径在redefineClasses返回后会再次invalidate，
+                // 调试器（JDWP）等外部重定义没有提交后的回调，只能在这里移除，存在这个时间窗口
+                ClassSignatureComparerHelper.invalidate(redefiningClass);
+                ClassRedefinitionTracker.redefined(redefiningClass);
+            }
+            if (start != 0L) {
+                HotswapProfiler.record(HotswapProfiler.CLASS_LOADER, HotswapProfiler.classLoaderName(classLoader), start);
+            }
+        }
+    }
+
+    private byte[] doTransform(final ClassLoader classLoader, String className, Class<?> redefiningClass,
+                               final ProtectionDomain protectionDomain, byte[] bytes) {
+        // 非插件类文件Transformer的集合(不匹配时不创建)
+        List<ClassFileTransformer> toApply = null;
+        // 插件类文件Transformer的集合(不匹配时不创建)
+        List<PluginClassFileTransformer> pluginTransformers = null;
         try {
             // 调用关注非define类型的transformer
-            for (RegisteredTransformersRecord transformerRecord : new ArrayList<>(otherTransformers.values())) {
-                if ((className != null && transformerRecord.pattern.matcher(className).matches()) ||
-                        (redefiningClass != null && transformerRecord.pattern.matcher(redefiningClass.getName()).matches())) {
-                    for (ClassFileTransformer transformer : new ArrayList<ClassFileTransformer>(transformerRecord.transformerList)) {
+            List<TransformerIndex.Entry> matched = getOtherIndex().match(className, redefiningClass != null ? redefiningClass.getName() : null);
+            // 调用关注redefine类型的transformer
+            if (redefiningClass != null && className != null) {
+                List<TransformerIndex.Entry> redefinitionMatched = getRedefinitionIndex().match(className, null);
+                if (matched == null) {
+                    matched = redefinitionMatched;
+                } else if (redefinitionMatched != null) {
+                    matched.addAll(redefinitionMatched);
+                }
+            }
+            if (matched != null) {
+                for (TransformerIndex.Entry entry : matched) {
+                    for (ClassFileTransformer transformer : entry.transformers) {
                         if (transformer instanceof PluginClassFileTransformer) {
                             PluginClassFileTransformer pluginClassFileTransformer = (PluginClassFileTransformer) transformer;
                             if (!pluginClassFileTransformer.isPluginDisabled(classLoader)) {
+                                if (pluginTransformers == null) {
+                                    pluginTransformers = new ArrayList<>();
+                                }
                                 pluginTransformers.add(pluginClassFileTransformer);
                             }
                         } else {
-                            toApply.add(transformer);
-                        }
-                    }
-                }
-            }
-            // 调用关注redefine类型的transformer
-            if (redefiningClass != null && className != null) {
-                for (RegisteredTransformersRecord transformerRecord : new ArrayList<RegisteredTransformersRecord>(redefinitionTransformers.values())) {
-                    if (transformerRecord.pattern.matcher(className).matches()) {
-                        for (ClassFileTransformer transformer : new ArrayList<ClassFileTransformer>(transformerRecord.transformerList)) {
-                            if (transformer instanceof PluginClassFileTransformer) {
-                                PluginClassFileTransformer pluginClassFileTransformer = (PluginClassFileTransformer) transformer;
-                                if (!pluginClassFileTransformer.isPluginDisabled(classLoader)) {
-                                    pluginTransformers.add(pluginClassFileTransformer);
-                                }
-                            } else {
-                                toApply.add(transformer);
+                            if (toApply == null) {
+                                toApply = new ArrayList<>();
                             }
+                            toApply.add(transformer);
                         }
                     }
                 }
@@ -172,7 +207,7 @@ public class HotswapTransformer implements ClassFileTransformer {
             LOGGER.error("Error transforming class '" + className + "'.", t);
         }
 
-        if (!pluginTransformers.isEmpty()) {
+        if (pluginTransformers != null) {
             pluginTransformers = reduce(classLoader, pluginTransformers, className);
         }
 
@@ -182,23 +217,33 @@ public class HotswapTransformer implements ClassFileTransformer {
             return null;
         }
 
-        if (toApply.isEmpty() && pluginTransformers.isEmpty()) {
+        if (toApply == null && (pluginTransformers == null || pluginTransformers.isEmpty())) {
             return null;
         }
 
         try {
             byte[] result = bytes;
 
-            // 调用插件的Transformer
-            for (ClassFileTransformer transformer : pluginTransformers) {
-                LOGGER.trace("Transforming class '" + className + "' with transformer '" + transformer + "' " + "@ClassLoader" + classLoader + ".");
-                result = transformer.transform(classLoader, className, redefiningClass, protectionDomain, result);
+            // 调用插件的Transformer，共享同一个上下文，CtClass只解析和生成一次
+            if (pluginTransformers != null && !pluginTransformers.isEmpty()) {
+                PluginTransformContext context = new PluginTransformContext(classLoader, className, result);
+                try {
+                    for (PluginClassFileTransformer transformer : pluginTransformers) {
+                        LOGGER.trace("Transforming class '" + className + "' with transformer '" + transformer + "' " + "@ClassLoader" + classLoader + ".");
+                        transformer.transform(context, redefiningClass, protectionDomain);
+                    }
+                    result = context.toBytecode();
+                } finally {
+                    context.detach();
+                }
             }
 
             // 调用非插件的Transformer
-            for (ClassFileTransformer transformer : toApply) {
+            for (ClassFileTransformer transformer : toApply == null ? Collections.<ClassFileTransformer>emptyList() : toApply) {
                 LOGGER.trace("Transforming class '" + className + "' with transformer '" + transformer + "' " + "@ClassLoader" + classLoader + ".");
+                long start = HotswapProfiler.start();
                 result = transformer.transform(classLoader, className, redefiningClass, protectionDomain, result);
+                HotswapProfiler.record(HotswapProfiler.TRANSFORMER, transformer.getClass().getName(), start);
             }
             return result;
         } catch (Throwable t) {
@@ -210,7 +255,7 @@ public class HotswapTransformer implements ClassFileTransformer {
     /**
      * 注册 transformer
      */
-    public void registerTransformer(ClassLoader classLoader, String classNameRegexp, HaClassFileTransformer transformer) {
+    public synchronized void registerTransformer(ClassLoader classLoader, String classNameRegexp, HaClassFileTransformer transformer) {
         LOGGER.debug("Registering transformer for class regexp '{}'.", classNameRegexp);
 
         String normalizeRegexp = normalizeTypeRegexp(classNameRegexp);
@@ -231,6 +276,50 @@ public class HotswapTransformer implements ClassFileTransformer {
         if (classLoader != null) {
             classLoaderTransformers.put(transformer, classLoader);
         }
+        invalidateIndex();
+    }
+
+    /**
+     * 注册信息变化后丢弃索引快照。启动时会连续注册大量transformer，每次注册都重建索引是O(n²)的，
+     * 这里只做标记，多次注册后在首次transform时重建一次
+     */
+    private void invalidateIndex() {
+        redefinitionIndex = null;
+        otherIndex = null;
+    }
+
+    /**
+     * 获取{@link #redefinitionTransformers}的索引快照，快照有效时不需要加锁
+     */
+    private TransformerIndex getRedefinitionIndex() {
+        TransformerIndex index = redefinitionIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = redefinitionIndex;
+                if (index == null) {
+                    index = new TransformerIndex(redefinitionTransformers.values());
+                    redefinitionIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 获取{@link #otherTransformers}的索引快照，快照有效时不需要加锁
+     */
+    private TransformerIndex getOtherIndex() {
+        TransformerIndex index = otherIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = otherIndex;
+                if (index == null) {
+                    index = new TransformerIndex(otherTransformers.values());
+                    otherIndex = index;
+                }
+            }
+        }
+        return index;
     }
 
     private Map<String, RegisteredTransformersRecord> getTransformerMap(HaClassFileTransformer transformer) {
@@ -246,19 +335,20 @@ public class HotswapTransformer implements ClassFileTransformer {
      * @param classNameRegexp regexp to match fully qualified class name.
      * @param transformer     currently registered transformer
      */
-    public void removeTransformer(String classNameRegexp, HaClassFileTransformer transformer) {
+    public synchronized void removeTransformer(String classNameRegexp, HaClassFileTransformer transformer) {
         String normalizeRegexp = normalizeTypeRegexp(classNameRegexp);
         Map<String, RegisteredTransformersRecord> transformersMap = getTransformerMap(transformer);
         RegisteredTransformersRecord transformerRecord = transformersMap.get(normalizeRegexp);
         if (transformerRecord != null) {
             transformerRecord.transformerList.remove(transformer);
         }
+        invalidateIndex();
     }
 
     /**
      * 移除类加载器中所有的transformer
      */
-    public void closeClassLoader(ClassLoader classLoader) {
+    public synchronized void closeClassLoader(ClassLoader classLoader) {
         for (Iterator<Map.Entry<ClassFileTransformer, ClassLoader>> entryIterator = classLoaderTransformers.entrySet().iterator();
              entryIterator.hasNext(); ) {
             Map.Entry<ClassFileTransformer, ClassLoader> entry = entryIterator.next();
@@ -272,6 +362,7 @@ public class HotswapTransformer implements ClassFileTransformer {
                 }
             }
         }
+        invalidateIndex();
 
         LOGGER.debug("All transformers removed for classLoader {}", classLoader);
     }
@@ -315,21 +406,23 @@ public class HotswapTransformer implements ClassFileTransformer {
      * 每个类加载器都应该确定被初始化，热重载需要将插件加载到每一个类加载器中才能重载。
      */
     protected boolean ensureClassLoaderInitialized(final ClassLoader classLoader, final ProtectionDomain protectionDomain) {
-        if (!seenClassLoaders.containsKey(classLoader)) {
-
-            if (classLoader == null) {
+        if (classLoader == null) {
+            if (!bootstrapClassLoaderSeen) {
                 PluginManager.getInstance().initClassLoader(null, protectionDomain);
-            } else {
-                if (shouldScheduleClassLoader(classLoader)) {
-                    PluginManager.getInstance().initClassLoader(classLoader, protectionDomain);
-                } else {
-                    seenClassLoaders.put(classLoader, false);
-                    return false;
-                }
+                bootstrapClassLoaderSeen = true;
+            }
+            return true;
+        }
+        Boolean initialized = seenClassLoaders.get(classLoader);
+        if (initialized == null) {
+            // 并发时可能重复调用initClassLoader，PluginManager内部会保证只初始化一次
+            initialized = shouldScheduleClassLoader(classLoader);
+            if (initialized) {
+                PluginManager.getInstance().initClassLoader(classLoader, protectionDomain);
             }
-            seenClassLoaders.put(classLoader, true);
+            seenClassLoaders.put(classLoader, initialized);
         }
-        return seenClassLoaders.get(classLoader) != null && seenClassLoaders.get(classLoader);
+        return initialized;
     }
 
     /**
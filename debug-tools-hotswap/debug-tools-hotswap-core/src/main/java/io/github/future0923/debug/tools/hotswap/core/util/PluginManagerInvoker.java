@@ -19,13 +19,28 @@ package io.github.future0923.debug.tools.hotswap.core.util;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.ClassLoaderDefineClassPatcher;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 提供在其他ClassLoader中调用{@link PluginManager}的能力，避免类加载器冲突。真正的插件在AgentClassLoader中，其他插件通过{@link ClassLoaderDefineClassPatcher#patch}过去的
  */
 public class PluginManagerInvoker {
 
+    /**
+     * 插件类中方法签名与MethodHandle的缓存
+     */
+    private static final ClassValue<Map<String, MethodHandle>> pluginMethodHandles = new ClassValue<Map<String, MethodHandle>>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
     /**
      * 构建初始化插件javassist字符串
      *
@@ -72,22 +87,31 @@ public class PluginManagerInvoker {
     }
 
     /**
-     * 反射调用指定ClassLoader中的Plugin方法
+     * 调用指定ClassLoader中的Plugin方法，方法的MethodHandle第一次调用后缓存
      *
      * @return 方法的返回值
      */
     public static Object callPluginMethod(Class<?> pluginClass, ClassLoader appClassLoader, String method, Class<?>[] paramTypes, Object[] params) {
         Object pluginInstance = PluginManager.getInstance().getPlugin(pluginClass.getName(), appClassLoader);
         try {
-            Method m = pluginInstance.getClass().getDeclaredMethod(method, paramTypes);
-            return m.invoke(pluginInstance, params);
-        } catch (Exception e) {
+            MethodHandle handle = getPluginMethodHandle(pluginInstance.getClass(), methodSignature(method, paramTypes), paramTypes);
+            return (Object) handle.invokeExact(pluginInstance, params);
+        } catch (Throwable e) {
             throw new Error(String.format("Exception calling method %s on plugin class %s", method, pluginClass), e);
         }
     }
 
     /**
-     * 构建反射调用的指定ClassLoader中的Plugin方法的javassist字符串
+     * 给{@link #buildCallPluginMethod}生成的代码调用，通过缓存的MethodHandle调用插件方法
+     *
+     * @param methodSignature 方法签名(e.g: {@code init(java.lang.String)})
+     */
+    public static Object invokePluginMethod(Object pluginInstance, String methodSignature, Object[] params) throws Throwable {
+        return (Object) getPluginMethodHandle(pluginInstance.getClass(), methodSignature, null).invokeExact(pluginInstance, params);
+    }
+
+    /**
+     * 构建调用指定ClassLoader中的Plugin方法的javassist字符串
      *
      * @param paramValueAndType 值 类型 值 类型...
      */
@@ -96,7 +120,7 @@ public class PluginManagerInvoker {
     }
 
     /**
-     * 构建反射调用的指定ClassLoader中的Plugin方法的javassist字符串
+     * 构建调用指定ClassLoader中的Plugin方法的javassist字符串，方法查找只在第一次执行时进行
      */
     public static String buildCallPluginMethod(String appClassLoaderVar, Class<?> pluginClass,
                                                String method, String... paramValueAndType) {
@@ -108,47 +132,81 @@ public class PluginManagerInvoker {
 
         b.append("try {");
 
-        b.append("ClassLoader __pluginClassLoader = ");
-        b.append(managerClass);
-        b.append(".class.getClassLoader();");
-
-        // Object __pluginInstance = io.github.future0923.debug.tools.hotswap.core.config.PluginManager.getInstance().getPlugin(io.github.future0923.debug.tools.hotswap.core.plugin.TestPlugin.class.getName(), __pluginClassLoader);
+        // Object __pluginInstance = io.github.future0923.debug.tools.hotswap.core.config.PluginManager.getInstance().getPlugin(io.github.future0923.debug.tools.hotswap.core.plugin.TestPlugin.class.getName(), getClass().getClassLoader());
         b.append("Object __pluginInstance = ");
         b.append(managerClass);
         b.append(".getInstance().getPlugin(");
         b.append(pluginClass.getName());
         b.append(".class.getName(), ").append(appClassLoaderVar).append(");");
 
-        // Class __pluginClass = __pluginClassLoader.loadClass("io.github.future0923.debug.tools.hotswap.core.plugin.TestPlugin");
-        b.append("Class __pluginClass = ");
-        b.append("__pluginClassLoader.loadClass(\"");
-        b.append(pluginClass.getName());
-        b.append("\");");
-
-        // param types
-        b.append("Class[] paramTypes = new Class[").append(paramCount).append("];");
-        for (int i = 0; i < paramCount; i++) {
-            // paramTypes[i] = = __pluginClassLoader.loadClass("my.test.TestClass").getClass();
-            b.append("paramTypes[").append(i).append("] = __pluginClassLoader.loadClass(\"").append(paramValueAndType[(i * 2) + 1]).append("\");");
-        }
-
-        //   java.lang.reflect.Method __pluginMethod = __pluginClass.getDeclaredMethod("method", paramType1, paramType2);
-        b.append("java.lang.reflect.Method __callPlugin = __pluginClass.getDeclaredMethod(\"");
-        b.append(method);
-        b.append("\", paramTypes");
-        b.append(");");
-
         b.append("Object[] params = new Object[").append(paramCount).append("];");
         for (int i = 0; i < paramCount; i = i + 1) {
             b.append("params[").append(i).append("] = ").append(paramValueAndType[i * 2]).append(";");
         }
 
-        // __pluginMethod.invoke(__pluginInstance, param1, param2);
-        b.append("__callPlugin.invoke(__pluginInstance, params);");
+        // io.github.future0923.debug.tools.hotswap.core.util.PluginManagerInvoker.invokePluginMethod(__pluginInstance, "method(my.test.TestClass)", params);
+        String[] paramTypes = new String[paramCount];
+        for (int i = 0; i < paramCount; i++) {
+            paramTypes[i] = paramValueAndType[(i * 2) + 1];
+        }
+        b.append(PluginManagerInvoker.class.getName());
+        b.append(".invokePluginMethod(__pluginInstance, \"");
+        b.append(method).append("(").append(String.join(",", paramTypes)).append(")");
+        b.append("\", params);");
 
         // catch (Exception e) {throw new Error(e);}
         b.append("} catch (Exception e) {throw new Error(e);}");
 
         return b.toString();
     }
+
+    private static String methodSignature(String method, Class<?>[] paramTypes) {
+        StringBuilder b = new StringBuilder(method).append('(');
+        for (int i = 0; i < paramTypes.length; i++) {
+            if (i > 0) {
+                b.append(',');
+            }
+            b.append(paramTypes[i].getName());
+        }
+        return b.append(')').toString();
+    }
+
+    /**
+     * 获取插件方法的MethodHandle，类型为(Object, Object[])Object
+     *
+     * @param paramTypes 参数类型，为null时通过PluginManager的类加载器按签名加载
+     */
+    private static MethodHandle getPluginMethodHandle(Class<?> pluginType, String methodSignature, Class<?>[] paramTypes) throws ReflectiveOperationException {
+        Map<String, MethodHandle> handles = pluginMethodHandles.get(pluginType);
+        MethodHandle handle = handles.get(methodSignature);
+        if (handle == null) {
+            if (paramTypes == null) {
+                paramTypes = parseParamTypes(methodSignature);
+            }
+            String method = methodSignature.substring(0, methodSignature.indexOf('('));
+            Method m = pluginType.getDeclaredMethod(method, paramTypes);
+            m.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(m);
+            if (Modifier.isStatic(m.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            handle = handle.asType(handle.type().generic()).asSpreader(Object[].class, paramTypes.length);
+            handles.put(methodSignature, handle);
+        }
+        return handle;
+    }
+
+    private static Class<?>[] parseParamTypes(String methodSignature) throws ClassNotFoundException {
+        String params = methodSignature.substring(methodSignature.indexOf('(') + 1, methodSignature.length() - 1);
+        if (params.isEmpty()) {
+            return new Class<?>[0];
+        }
+        String[] names = params.split(",");
+        Class<?>[] paramTypes = new Class<?>[names.length];
+        ClassLoader pluginClassLoader = PluginManager.class.getClassLoader();
+        for (int i = 0; i < names.length; i++) {
+            paramTypes[i] = pluginClassLoader.loadClass(names[i]);
+        }
+        return paramTypes;
+    }
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link HotswapTransformer}注册的transformer索引快照，注册变化后在首次transform时重新创建，创建后不可变。
+ * <ul>
+ *     <li>确切类名(如 org.springframework.context.support.AbstractApplicationContext)放入前缀树的叶子节点</li>
+ *     <li>包前缀(如 com.foo.*)放入前缀树的中间节点</li>
+ *     <li>.* 直接匹配所有类</li>
+ *     <li>其它正则才逐个匹配</li>
+ * </ul>
+ * 类名可能是 com/foo/Bar 或 com.foo.Bar$Inner 格式，正则中的 . 可以匹配任意字符，
+ * 所以在前缀树中 / $ . 统一视为 .，不匹配时不会分配任何对象。
+ */
+class TransformerIndex {
+
+    private static final String MATCH_ALL = ".*";
+
+    private static final Comparator<Entry> ORDER_COMPARATOR = Comparator.comparingInt(entry -> entry.order);
+
+    private final Node root = new Node();
+
+    private final Entry[] matchAllEntries;
+
+    private final Entry[] regexEntries;
+
+    TransformerIndex(Collection<HotswapTransformer.RegisteredTransformersRecord> records) {
+        List<Entry> matchAll = new ArrayList<>();
+        List<Entry> regex = new ArrayList<>();
+        int order = 0;
+        for (HotswapTransformer.RegisteredTransformersRecord record : records) {
+            if (record.transformerList.isEmpty()) {
+                continue;
+            }
+            Entry entry = new Entry(order++, record.pattern, record.transformerList.toArray(new HaClassFileTransformer[0]));
+            String regexp = stripAnchors(record.pattern.pattern());
+            if (MATCH_ALL.equals(regexp)) {
+                matchAll.add(entry);
+            } else if (regexp.endsWith(MATCH_ALL) && isLiteral(regexp.substring(0, regexp.length() - MATCH_ALL.length()))) {
+                root.getOrCreate(regexp.substring(0, regexp.length() - MATCH_ALL.length())).prefixList.add(entry);
+            } else if (isLiteral(regexp)) {
+                root.getOrCreate(regexp).exactList.add(entry);
+            } else {
+                regex.add(entry);
+            }
+        }
+        root.freeze();
+        this.matchAllEntries = matchAll.toArray(new Entry[0]);
+        this.regexEntries = regex.toArray(new Entry[0]);
+    }
+
+    /**
+     * 查找匹配的transformer记录，按注册顺序返回
+     *
+     * @param className       类名
+     * @param secondClassName 第二个需要匹配的类名(重定义的类名)，可以为null
+     * @return 匹配的记录，没有时返回null
+     */
+    List<Entry> match(String className, String secondClassName) {
+        List<Entry> result = null;
+        if (className != null) {
+            result = match(className, result);
+        }
+        if (secondClassName != null && !secondClassName.equals(className)) {
+            result = match(secondClassName, result);
+        }
+        if (result != null && result.size() > 1) {
+            result.sort(ORDER_COMPARATOR);
+        }
+        return result;
+    }
+
+    private List<Entry> match(String className, List<Entry> result) {
+        for (Entry entry : matchAllEntries) {
+            result = add(result, entry);
+        }
+        Node node = root;
+        int length = className.length();
+        for (int i = 0; i < length && node != null; i++) {
+            for (Entry entry : node.prefixEntries) {
+                result = add(result, entry);
+            }
+            node = node.children.get(normalize(className.charAt(i)));
+        }
+        if (node != null) {
+            for (Entry entry : node.prefixEntries) {
+                result = add(result, entry);
+            }
+            for (Entry entry : node.exactEntries) {
+                result = add(result, entry);
+            }
+        }
+        for (Entry entry : regexEntries) {
+            if (entry.pattern.matcher(className).matches()) {
+                result = add(result, entry);
+            }
+        }
+        return result;
+    }
+
+    private static List<Entry> add(List<Entry> result, Entry entry) {
+        if (result == null) {
+            result = new ArrayList<>(4);
+        } else if (result.contains(entry)) {
+            return result;
+        }
+        result.add(entry);
+        return result;
+    }
+
+    private static char normalize(char c) {
+        return c == '/' || c == '$' ? '.' : c;
+    }
+
+    private static String stripAnchors(String regexp) {
+        if (regexp.startsWith("^")) {
+            regexp = regexp.substring(1);
+        }
+        if (regexp.endsWith("$") && !regexp.endsWith("\\$")) {
+            regexp = regexp.substring(0, regexp.length() - 1);
+        }
+        return regexp;
+    }
+
+    /**
+     * 是否只包含类名字符，. 视为包名或内部类分隔符
+     */
+    private static boolean isLiteral(String regexp) {
+        if (regexp.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < regexp.length(); i++) {
+            char c = regexp.charAt(i);
+            if (c != '.' && c != '_' && !Character.isLetterOrDigit(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 索引中的transformer记录
+     */
+    static class Entry {
+
+        /**
+         * 注册顺序
+         */
+        final int order;
+
+        final Pattern pattern;
+
+        final HaClassFileTransformer[] transformers;
+
+        Entry(int order, Pattern pattern, HaClassFileTransformer[] transformers) {
+            this.order = order;
+            this.pattern = pattern;
+            this.transformers = transformers;
+        }
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static class Node {
+
+        private static final Entry[] NO_ENTRIES = new Entry[0];
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private List<Entry> prefixList = new ArrayList<>(0);
+
+        private List<Entry> exactList = new ArrayList<>(0);
+
+        /**
+         * 以当前节点为前缀的记录，匹配时遍历数组不分配迭代器
+         */
+        private Entry[] prefixEntries = NO_ENTRIES;
+
+        /**
+         * 类名正好到当前节点的记录
+         */
+        private Entry[] exactEntries = NO_ENTRIES;
+
+        private Node getOrCreate(String literal) {
+            Node node = this;
+            for (int i = 0; i < literal.length(); i++) {
+                node = node.children.computeIfAbsent(literal.charAt(i), k -> new Node());
+            }
+            return node;
+        }
+
+        /**
+         * 建立完成后转为数组
+         */
+        private void freeze() {
+            prefixEntries = prefixList.isEmpty() ? NO_ENTRIES : prefixList.toArray(NO_ENTRIES);
+            exactEntries = exactList.isEmpty() ? NO_ENTRIES : exactList.toArray(NO_ENTRIES);
+            prefixList = null;
+            exactList = null;
+            for (Node child : children.values()) {
+                child.freeze();
+            }
+        }
+    }
+}
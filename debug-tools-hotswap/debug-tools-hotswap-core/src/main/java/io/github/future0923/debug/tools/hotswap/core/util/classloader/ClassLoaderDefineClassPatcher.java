@@ -22,6 +22,7 @@ import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.LoaderClassPath;
 import javassist.NotFoundException;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
 import io.github.future0923.debug.tools.hotswap.core.util.scanner.ClassPathScanner;
 import io.github.future0923.debug.tools.hotswap.core.util.scanner.Scanner;
 import io.github.future0923.debug.tools.hotswap.core.util.scanner.ScannerVisitor;
@@ -60,6 +61,7 @@ public class ClassLoaderDefineClassPatcher {
     public void patch(final ClassLoader classLoaderFrom, final String pluginPath,
                       final ClassLoader classLoaderTo, final ProtectionDomain protectionDomain) {
 
+        long start = HotswapProfiler.start();
         List<byte[]> cache = getPluginCache(classLoaderFrom, pluginPath);
 
         if (cache != null) {
@@ -97,6 +99,9 @@ public class ClassLoaderDefineClassPatcher {
                 }
             }
         }
+        if (start != 0L) {
+            HotswapProfiler.record(HotswapProfiler.CLASS_LOADER_PATCH, HotswapProfiler.classLoaderName(classLoaderTo), start);
+        }
 
         LOGGER.debug("Classloader {} patched with plugin classes from agent classloader {}.", classLoaderTo, classLoaderFrom);
 
@@ -52,11 +52,23 @@ public class ClassLoaderHelper {
      * @return true if the class was loaded
      */
     public static boolean isClassLoaded(ClassLoader classLoader, String className) {
+        return findLoadedClass(classLoader, className) != null;
+    }
+
+    /**
+     * Get the class if it was already loaded by the classloader. It does not try to load the class
+     * (opposite to Class.forName()).
+     *
+     * @param classLoader classLoader to check
+     * @param className fully qualified class name
+     * @return the loaded class or null
+     */
+    public static Class<?> findLoadedClass(ClassLoader classLoader, String className) {
         try {
-            return findLoadedClass.invoke(classLoader, className) != null;
+            return (Class<?>) findLoadedClass.invoke(classLoader, className);
         } catch (Exception e) {
             LOGGER.error("Unable to invoke findLoadedClass on classLoader {}, className {}", e, classLoader, className);
-            return false;
+            return null;
         }
     }
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util.classloader;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.LoaderClassPath;
+
+/**
+ * 创建transform使用的javassist ClassPool，不按类加载器缓存
+ * <p>每次transform创建新的子ClassPool，应用的类每次从类加载器重新读取，不会缓存重定义之前的结构，插件修改失败时随ClassPool一起丢弃。
+ * <p>父ClassPool只能看到JDK的类，全局共享，JDK的类只解析一次
+ */
+public class TransformClassPoolFactory {
+
+    private static final ClassPool jdkClassPool = createJdkClassPool();
+
+    /**
+     * 创建类加载器一次transform使用的ClassPool
+     */
+    public static ClassPool create(ClassLoader classLoader) {
+        ClassPool classPool = new ClassPool(jdkClassPool);
+        classPool.appendSystemPath();
+        if (classLoader != null) {
+            classPool.appendClassPath(new LoaderClassPath(classLoader));
+        }
+        return classPool;
+    }
+
+    private static ClassPool createJdkClassPool() {
+        ClassPool classPool = new ClassPool();
+        classPool.appendClassPath(new ClassClassPath(Object.class));
+        return classPool;
+    }
+}
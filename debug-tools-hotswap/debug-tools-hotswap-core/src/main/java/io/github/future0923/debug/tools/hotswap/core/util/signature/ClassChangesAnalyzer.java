@@ -17,11 +17,6 @@
 package io.github.future0923.debug.tools.hotswap.core.util.signature;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
-import javassist.ClassPool;
-import javassist.CtClass;
-import javassist.LoaderClassPath;
-
-import java.io.ByteArrayInputStream;
 
 /**
  * 解析Class是否需要进行Bean重新加载{@link #isReloadNeeded}
@@ -34,19 +29,6 @@ public class ClassChangesAnalyzer {
 
     private static final Logger LOGGER = Logger.getLogger(ClassChangesAnalyzer.class);
 
-    private final ClassPool classPool;
-
-    public ClassChangesAnalyzer(final ClassLoader classLoader) {
-        this.classPool = new ClassPool() {
-            @Override
-            public ClassLoader getClassLoader() {
-                return classLoader;
-            }
-        };
-        classPool.appendSystemPath();
-        classPool.appendClassPath(new LoaderClassPath(classLoader));
-    }
-
     public boolean isReloadNeeded(Class<?> classBeingRedefined, byte[] classfileBuffer) {
         // jvm合成的类不需要
         if (classBeingRedefined.isSynthetic() || isSyntheticClass(classBeingRedefined)) {
@@ -56,16 +38,10 @@ public class ClassChangesAnalyzer {
     }
 
     private boolean classChangeNeedsReload(Class<?> classBeingRedefined, byte[] classfileBuffer) {
-        CtClass makeClass = null;
         try {
-            makeClass = classPool.makeClass(new ByteArrayInputStream(classfileBuffer));
-            return ClassSignatureComparer.isPoolClassDifferent(classBeingRedefined, classPool);
-        } catch (Exception e) {
+            return ClassSignatureComparer.isDifferent(classBeingRedefined, classfileBuffer);
+        } catch (Exception | LinkageError e) {
             LOGGER.error("Error analyzing class {} for reload necessity. Defaulting to yes.", e, classBeingRedefined.getName());
-        } finally {
-            if (makeClass != null) {
-                makeClass.detach();
-            }
         }
         return true;
     }
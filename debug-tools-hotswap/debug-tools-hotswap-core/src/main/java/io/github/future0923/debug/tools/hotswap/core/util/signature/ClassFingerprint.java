@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util.signature;
+
+import io.github.future0923.debug.tools.base.hutool.core.lang.hash.MurmurHash;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 类结构的128位指纹，由签名元素的规范化描述排序后计算MurmurHash得到
+ *
+ * @see ClassFingerprintCalculator
+ */
+@Getter
+@EqualsAndHashCode
+public final class ClassFingerprint {
+
+    private final long high;
+
+    private final long low;
+
+    private ClassFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * 计算签名元素描述的指纹（与顺序无关）
+     */
+    static ClassFingerprint of(List<String> elements) {
+        Collections.sort(elements);
+        StringBuilder builder = new StringBuilder();
+        for (String element : elements) {
+            builder.append(element).append('\n');
+        }
+        long[] hash = MurmurHash.hash128(builder);
+        return new ClassFingerprint(hash[1], hash[0]);
+    }
+
+    /**
+     * 签名元素集合转为位掩码，作为缓存的key
+     */
+    static int mask(ClassSignatureElement[] signatureElements) {
+        int mask = 0;
+        for (ClassSignatureElement element : signatureElements) {
+            mask |= 1 << element.ordinal();
+        }
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
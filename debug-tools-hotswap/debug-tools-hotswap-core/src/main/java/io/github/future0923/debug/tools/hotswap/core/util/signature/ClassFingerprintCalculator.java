@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util.signature;
+
+import javassist.bytecode.AnnotationsAttribute;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.ExceptionsAttribute;
+import javassist.bytecode.FieldInfo;
+import javassist.bytecode.MethodInfo;
+import javassist.bytecode.ParameterAnnotationsAttribute;
+import javassist.bytecode.annotation.Annotation;
+import javassist.bytecode.annotation.AnnotationMemberValue;
+import javassist.bytecode.annotation.ArrayMemberValue;
+import javassist.bytecode.annotation.BooleanMemberValue;
+import javassist.bytecode.annotation.ByteMemberValue;
+import javassist.bytecode.annotation.CharMemberValue;
+import javassist.bytecode.annotation.ClassMemberValue;
+import javassist.bytecode.annotation.DoubleMemberValue;
+import javassist.bytecode.annotation.EnumMemberValue;
+import javassist.bytecode.annotation.FloatMemberValue;
+import javassist.bytecode.annotation.IntegerMemberValue;
+import javassist.bytecode.annotation.LongMemberValue;
+import javassist.bytecode.annotation.MemberValue;
+import javassist.bytecode.annotation.ShortMemberValue;
+import javassist.bytecode.annotation.StringMemberValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 计算{@link ClassFingerprint}
+ * <p>
+ * 已加载的Class通过反射计算，新的字节码直接解析class文件计算，不通过ClassPool解析方法参数、注解等类型。
+ * 两边使用相同的规范化描述：方法用名称+描述符，注解按成员名排序并补齐默认值（默认值通过类加载器中的注解类获取），
+ * 所以可以直接比较
+ */
+class ClassFingerprintCalculator {
+
+    /**
+     * 参与比较的修饰符，忽略bridge、varargs、synthetic等编译器标记
+     */
+    private static final int MODIFIERS_MASK = Modifier.PUBLIC | Modifier.PRIVATE | Modifier.PROTECTED | Modifier.STATIC
+            | Modifier.FINAL | Modifier.SYNCHRONIZED | Modifier.NATIVE | Modifier.ABSTRACT | Modifier.STRICT;
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+
+    /**
+     * 通过反射计算已加载Class的指纹
+     */
+    static ClassFingerprint ofClass(Class<?> clazz, int mask) {
+        List<String> elements = new ArrayList<>();
+        if (has(mask, ClassSignatureElement.METHOD)) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (skipMethod(mask, method.getModifiers(), method.getName())) {
+                    continue;
+                }
+                elements.add(member(mask, method.getModifiers(), method.getName(), methodDescriptor(method.getParameterTypes(), method.getReturnType()),
+                        has(mask, ClassSignatureElement.METHOD_ANNOTATION) ? annotations(method.getDeclaredAnnotations()) : null,
+                        has(mask, ClassSignatureElement.METHOD_PARAM_ANNOTATION) ? parameterAnnotations(method.getParameterAnnotations()) : null,
+                        names(method.getExceptionTypes())));
+            }
+        }
+        if (has(mask, ClassSignatureElement.CONSTRUCTOR)) {
+            for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+                if (skipConstructor(mask, constructor.getModifiers())) {
+                    continue;
+                }
+                elements.add(member(mask, constructor.getModifiers(), CONSTRUCTOR_NAME, methodDescriptor(constructor.getParameterTypes(), void.class),
+                        has(mask, ClassSignatureElement.METHOD_ANNOTATION) ? annotations(constructor.getDeclaredAnnotations()) : null,
+                        has(mask, ClassSignatureElement.METHOD_PARAM_ANNOTATION) ? parameterAnnotations(constructor.getParameterAnnotations()) : null,
+                        names(constructor.getExceptionTypes())));
+            }
+        }
+        if (has(mask, ClassSignatureElement.CLASS_ANNOTATION)) {
+            elements.add("@class" + annotations(clazz.getDeclaredAnnotations()));
+        }
+        if (has(mask, ClassSignatureElement.INTERFACES)) {
+            for (Class<?> iClass : clazz.getInterfaces()) {
+                elements.add("implements " + iClass.getName());
+            }
+        }
+        if (has(mask, ClassSignatureElement.SUPER_CLASS)) {
+            Class<?> superclass = clazz.getSuperclass();
+            if (superclass != null && superclass != Object.class) {
+                elements.add("extends " + superclass.getName());
+            }
+        }
+        if (has(mask, ClassSignatureElement.FIELD)) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (skipField(mask, field.getModifiers(), field.getName())) {
+                    continue;
+                }
+                String element = "field " + descriptor(field.getType()) + " " + field.getName();
+                if (has(mask, ClassSignatureElement.FIELD_ANNOTATION)) {
+                    element += annotations(field.getDeclaredAnnotations());
+                }
+                elements.add(element);
+            }
+        }
+        return ClassFingerprint.of(elements);
+    }
+
+    /**
+     * 解析class文件字节码计算指纹
+     *
+     * @param bytes       class文件字节码
+     * @param classLoader 用于获取注解默认值的类加载器
+     */
+    static ClassFingerprint ofBytecode(byte[] bytes, ClassLoader classLoader, int mask) throws IOException {
+        return ofClassFile(new ClassFile(new DataInputStream(new ByteArrayInputStream(bytes))), classLoader, mask);
+    }
+
+    /**
+     * 通过class文件计算指纹
+     *
+     * @param classFile   class文件
+     * @param classLoader 用于获取注解默认值的类加载器
+     */
+    static ClassFingerprint ofClassFile(ClassFile classFile, ClassLoader classLoader, int mask) {
+        List<String> elements = new ArrayList<>();
+        boolean useMethod = has(mask, ClassSignatureElement.METHOD);
+        boolean useConstructor = has(mask, ClassSignatureElement.CONSTRUCTOR);
+        if (useMethod || useConstructor) {
+            for (MethodInfo method : classFile.getMethods()) {
+                String name = method.getName();
+                int modifiers = method.getAccessFlags();
+                if (CONSTRUCTOR_NAME.equals(name)) {
+                    if (!useConstructor || skipConstructor(mask, modifiers)) {
+                        continue;
+                    }
+                } else if (!useMethod || name.startsWith("<") || skipMethod(mask, modifiers, name)) {
+                    continue;
+                }
+                ExceptionsAttribute exceptions = method.getExceptionsAttribute();
+                elements.add(member(mask, modifiers, name, method.getDescriptor(),
+                        has(mask, ClassSignatureElement.METHOD_ANNOTATION) ? annotations((AnnotationsAttribute) method.getAttribute(AnnotationsAttribute.visibleTag), classLoader) : null,
+                        has(mask, ClassSignatureElement.METHOD_PARAM_ANNOTATION) ? parameterAnnotations((ParameterAnnotationsAttribute) method.getAttribute(ParameterAnnotationsAttribute.visibleTag), classLoader) : null,
+                        exceptions == null || exceptions.getExceptions() == null ? new String[0] : exceptions.getExceptions()));
+            }
+        }
+        if (has(mask, ClassSignatureElement.CLASS_ANNOTATION)) {
+            elements.add("@class" + annotations((AnnotationsAttribute) classFile.getAttribute(AnnotationsAttribute.visibleTag), classLoader));
+        }
+        if (has(mask, ClassSignatureElement.INTERFACES)) {
+            for (String iClass : classFile.getInterfaces()) {
+                elements.add("implements " + iClass);
+            }
+        }
+        if (has(mask, ClassSignatureElement.SUPER_CLASS)) {
+            String superclass = classFile.getSuperclass();
+            if (superclass != null && !superclass.equals(Object.class.getName()) && !classFile.getName().equals(Object.class.getName())) {
+                elements.add("extends " + superclass);
+            }
+        }
+        if (has(mask, ClassSignatureElement.FIELD)) {
+            for (FieldInfo field : classFile.getFields()) {
+                if (skipField(mask, field.getAccessFlags(), field.getName())) {
+                    continue;
+                }
+                String element = "field " + field.getDescriptor() + " " + field.getName();
+                if (has(mask, ClassSignatureElement.FIELD_ANNOTATION)) {
+                    element += annotations((AnnotationsAttribute) field.getAttribute(AnnotationsAttribute.visibleTag), classLoader);
+                }
+                elements.add(element);
+            }
+        }
+        return ClassFingerprint.of(elements);
+    }
+
+    private static boolean has(int mask, ClassSignatureElement element) {
+        return (mask & (1 << element.ordinal())) != 0;
+    }
+
+    private static boolean skipMethod(int mask, int modifiers, String name) {
+        if (!has(mask, ClassSignatureElement.METHOD_PRIVATE) && Modifier.isPrivate(modifiers)) {
+            return true;
+        }
+        if (!has(mask, ClassSignatureElement.METHOD_STATIC) && Modifier.isStatic(modifiers)) {
+            return true;
+        }
+        return name.startsWith(ClassSignatureBase.SWITCH_TABLE_METHOD_PREFIX) || name.startsWith(ClassSignatureBase.CLASS_CLINIT_METHOD_NAME);
+    }
+
+    private static boolean skipConstructor(int mask, int modifiers) {
+        return !has(mask, ClassSignatureElement.CONSTRUCTOR_PRIVATE) && Modifier.isPrivate(modifiers);
+    }
+
+    private static boolean skipField(int mask, int modifiers, String name) {
+        if (!has(mask, ClassSignatureElement.FIELD_STATIC) && Modifier.isStatic(modifiers)) {
+            return true;
+        }
+        return name.startsWith(ClassSignatureBase.SWITCH_TABLE_METHOD_PREFIX);
+    }
+
+    /**
+     * 方法或构造器的规范化描述，未开启的元素传null
+     */
+    private static String member(int mask, int modifiers, String name, String descriptor, String annotations, String parameterAnnotations, String[] exceptions) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(modifiers & MODIFIERS_MASK).append(' ').append(name).append(descriptor);
+        if (annotations != null) {
+            builder.append(annotations);
+        }
+        if (parameterAnnotations != null) {
+            builder.append(parameterAnnotations);
+        }
+        if (has(mask, ClassSignatureElement.METHOD_EXCEPTION)) {
+            String[] names = exceptions.clone();
+            Arrays.sort(names);
+            builder.append(" throws ").append(Arrays.toString(names));
+        }
+        return builder.toString();
+    }
+
+    // ---------------------------------------- 反射 ----------------------------------------
+
+    private static String[] names(Class<?>[] types) {
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].getName();
+        }
+        return names;
+    }
+
+    private static String annotations(java.lang.annotation.Annotation[] annotations) {
+        List<String> list = new ArrayList<>(annotations.length);
+        for (java.lang.annotation.Annotation annotation : annotations) {
+            list.add(annotation(annotation));
+        }
+        return join(list, true);
+    }
+
+    /**
+     * 参数注解从最后一个参数开始对齐，编译器为内部类、枚举构造器添加的隐式参数没有注解
+     */
+    private static String parameterAnnotations(java.lang.annotation.Annotation[][] parameterAnnotations) {
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            if (parameterAnnotations[i].length > 0) {
+                list.add((parameterAnnotations.length - 1 - i) + "=" + annotations(parameterAnnotations[i]));
+            }
+        }
+        return join(list, true);
+    }
+
+    private static String annotation(java.lang.annotation.Annotation annotation) {
+        Class<? extends java.lang.annotation.Annotation> type = annotation.annotationType();
+        List<String> members = new ArrayList<>();
+        for (Method method : annotationMembers(type)) {
+            Object value;
+            try {
+                if (!Modifier.isPublic(type.getModifiers())) {
+                    method.setAccessible(true);
+                }
+                value = method.invoke(annotation);
+            } catch (Exception e) {
+                value = "?";
+            }
+            members.add(method.getName() + "=" + value(value));
+        }
+        return type.getName() + join(members, false);
+    }
+
+    private static String value(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof Class) {
+            return "class:" + ((Class<?>) value).getTypeName();
+        }
+        if (value instanceof Enum) {
+            return "enum:" + ((Enum<?>) value).getDeclaringClass().getName() + "." + ((Enum<?>) value).name();
+        }
+        if (value instanceof java.lang.annotation.Annotation) {
+            return "@" + annotation((java.lang.annotation.Annotation) value);
+        }
+        if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<String> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                list.add(value(Array.get(value, i)));
+            }
+            return join(list, false);
+        }
+        return value.getClass().getName() + ":" + value;
+    }
+
+    private static List<Method> annotationMembers(Class<?> annotationType) {
+        List<Method> members = new ArrayList<>();
+        for (Method method : annotationType.getDeclaredMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && !method.isSynthetic() && method.getParameterCount() == 0) {
+                members.add(method);
+            }
+        }
+        members.sort(Comparator.comparing(Method::getName));
+        return members;
+    }
+
+    private static String descriptor(Class<?> type) {
+        if (type.isArray()) {
+            return type.getName().replace('.', '/');
+        }
+        if (type.isPrimitive()) {
+            if (type == int.class) return "I";
+            if (type == long.class) return "J";
+            if (type == boolean.class) return "Z";
+            if (type == byte.class) return "B";
+            if (type == char.class) return "C";
+            if (type == short.class) return "S";
+            if (type == float.class) return "F";
+            if (type == double.class) return "D";
+            return "V";
+        }
+        return "L" + type.getName().replace('.', '/') + ";";
+    }
+
+    private static String methodDescriptor(Class<?>[] parameterTypes, Class<?> returnType) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            builder.append(descriptor(parameterType));
+        }
+        return builder.append(')').append(descriptor(returnType)).toString();
+    }
+
+    // ---------------------------------------- class文件 ----------------------------------------
+
+    private static String annotations(AnnotationsAttribute attribute, ClassLoader classLoader) {
+        if (attribute == null) {
+            return join(new ArrayList<>(), true);
+        }
+        return annotations(attribute.getAnnotations(), classLoader);
+    }
+
+    private static String annotations(Annotation[] annotations, ClassLoader classLoader) {
+        List<String> list = new ArrayList<>(annotations.length);
+        for (Annotation annotation : annotations) {
+            String value = annotation(annotation, classLoader);
+            // 注解类无法加载时反射也获取不到该注解
+            if (value != null) {
+                list.add(value);
+            }
+        }
+        return join(list, true);
+    }
+
+    private static String parameterAnnotations(ParameterAnnotationsAttribute attribute, ClassLoader classLoader) {
+        List<String> list = new ArrayList<>();
+        if (attribute != null) {
+            Annotation[][] parameterAnnotations = attribute.getAnnotations();
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                String annotations = annotations(parameterAnnotations[i], classLoader);
+                if (!"[]".equals(annotations)) {
+                    list.add((parameterAnnotations.length - 1 - i) + "=" + annotations);
+                }
+            }
+        }
+        return join(list, true);
+    }
+
+    private static String annotation(Annotation annotation, ClassLoader classLoader) {
+        Class<?> type;
+        try {
+            type = Class.forName(annotation.getTypeName(), false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        if (!type.isAnnotation()) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> explicit = annotation.getMemberNames();
+        List<String> members = new ArrayList<>();
+        for (Method method : annotationMembers(type)) {
+            String value;
+            if (explicit != null && explicit.contains(method.getName())) {
+                value = value(annotation.getMemberValue(method.getName()), classLoader);
+            } else {
+                value = value(method.getDefaultValue());
+            }
+            members.add(method.getName() + "=" + value);
+        }
+        return type.getName() + join(members, false);
+    }
+
+    private static String value(MemberValue value, ClassLoader classLoader) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof BooleanMemberValue) {
+            return Boolean.class.getName() + ":" + ((BooleanMemberValue) value).getValue();
+        }
+        if (value instanceof ByteMemberValue) {
+            return Byte.class.getName() + ":" + ((ByteMemberValue) value).getValue();
+        }
+        if (value instanceof CharMemberValue) {
+            return Character.class.getName() + ":" + ((CharMemberValue) value).getValue();
+        }
+        if (value instanceof ShortMemberValue) {
+            return Short.class.getName() + ":" + ((ShortMemberValue) value).getValue();
+        }
+        if (value instanceof IntegerMemberValue) {
+            return Integer.class.getName() + ":" + ((IntegerMemberValue) value).getValue();
+        }
+        if (value instanceof LongMemberValue) {
+            return Long.class.getName() + ":" + ((LongMemberValue) value).getValue();
+        }
+        if (value instanceof FloatMemberValue) {
+            return Float.class.getName() + ":" + ((FloatMemberValue) value).getValue();
+        }
+        if (value instanceof DoubleMemberValue) {
+            return Double.class.getName() + ":" + ((DoubleMemberValue) value).getValue();
+        }
+        if (value instanceof StringMemberValue) {
+            return String.class.getName() + ":" + ((StringMemberValue) value).getValue();
+        }
+        if (value instanceof ClassMemberValue) {
+            return "class:" + ((ClassMemberValue) value).getValue();
+        }
+        if (value instanceof EnumMemberValue) {
+            return "enum:" + ((EnumMemberValue) value).getType() + "." + ((EnumMemberValue) value).getValue();
+        }
+        if (value instanceof AnnotationMemberValue) {
+            return "@" + annotation(((AnnotationMemberValue) value).getValue(), classLoader);
+        }
+        if (value instanceof ArrayMemberValue) {
+            MemberValue[] values = ((ArrayMemberValue) value).getValue();
+            List<String> list = new ArrayList<>();
+            if (values != null) {
+                for (MemberValue memberValue : values) {
+                    list.add(value(memberValue, classLoader));
+                }
+            }
+            return join(list, false);
+        }
+        return value.toString();
+    }
+
+    private static String join(List<String> list, boolean sort) {
+        if (sort) {
+            list.sort(null);
+        }
+        return list.toString();
+    }
+}
@@ -19,6 +19,8 @@ package io.github.future0923.debug.tools.hotswap.core.util.signature;
 
 import javassist.ClassPool;
 
+import java.io.IOException;
+
 /**
  * 插件类签名是否发生变化，变化了Spring需要重新加载类
  */
@@ -49,4 +51,16 @@ public class ClassSignatureComparer {
     public static boolean isPoolClassDifferent(Class<?> classBeingRedefined, ClassPool classPool) {
         return ClassSignatureComparerHelper.isPoolClassDifferent(classBeingRedefined, classPool, SIGNATURE_ELEMENTS);
     }
+
+    /**
+     * 新的字节码是否变化
+     *
+     * @param classBeingRedefined 老Class definition
+     * @param classfileBuffer     新的字节码
+     * @return 是否变化
+     * @throws IOException 字节码解析失败
+     */
+    public static boolean isDifferent(Class<?> classBeingRedefined, byte[] classfileBuffer) throws IOException {
+        return ClassSignatureComparerHelper.isBytecodeDifferent(classfileBuffer, classBeingRedefined, SIGNATURE_ELEMENTS);
+    }
 }
\ No newline at end of file
@@ -21,8 +21,14 @@ import javassist.CtClass;
 import javassist.NotFoundException;
 import io.github.future0923.debug.tools.base.logging.Logger;
 
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * 检查类签名是否发生变化
+ * <p>
+ * 比较时使用{@link ClassFingerprint}，已加载Class的指纹计算一次后缓存在ClassValue中
  */
 public class ClassSignatureComparerHelper {
 
@@ -46,6 +52,37 @@ public class ClassSignatureComparerHelper {
         return signature.getValue();
     }
 
+    /**
+     * 已加载Class的结构指纹缓存，key为签名元素的位掩码。类重定义后通过{@link #invalidate(Class)}移除
+     */
+    private static final ClassValue<Map<Integer, ClassFingerprint>> javaClassFingerprints = new ClassValue<Map<Integer, ClassFingerprint>>() {
+        @Override
+        protected Map<Integer, ClassFingerprint> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * 获取已加载Class的结构指纹（缓存）
+     */
+    public static ClassFingerprint getJavaClassFingerprint(Class<?> clazz, ClassSignatureElement[] signatureElements) {
+        int mask = ClassFingerprint.mask(signatureElements);
+        Map<Integer, ClassFingerprint> fingerprints = javaClassFingerprints.get(clazz);
+        ClassFingerprint fingerprint = fingerprints.get(mask);
+        if (fingerprint == null) {
+            fingerprint = ClassFingerprintCalculator.ofClass(clazz, mask);
+            fingerprints.put(mask, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 类重定义后移除缓存的结构指纹，需要在{@code redefineClasses}返回后调用，转换时调用只能覆盖没有提交回调的外部重定义
+     */
+    public static void invalidate(Class<?> clazz) {
+        javaClassFingerprints.remove(clazz);
+    }
+
     /**
      * 是否有变化
      *
@@ -55,21 +92,42 @@ public class ClassSignatureComparerHelper {
      */
     public static boolean isDifferent(CtClass ctClass, Class<?> clazz, ClassSignatureElement[] signatureElements) {
         try {
-            String sig1 = getCtClassSignature(ctClass, signatureElements);
-            String sig2 = getJavaClassSignature(clazz, signatureElements);
-            return !sig1.equals(sig2);
-        } catch (Exception e) {
+            ClassFingerprint fingerprint = ClassFingerprintCalculator.ofClassFile(ctClass.getClassFile2(), clazz.getClassLoader(), ClassFingerprint.mask(signatureElements));
+            return !fingerprint.equals(getJavaClassFingerprint(clazz, signatureElements));
+        } catch (Exception | LinkageError e) {
             LOGGER.error("Error reading signature", e);
             return false;
         }
     }
 
+    /**
+     * 是否有变化，直接解析字节码，不需要ClassPool
+     *
+     * @param classfileBuffer 新的字节码
+     * @param clazz           老的Class definition
+     * @return 是否不同
+     */
+    public static boolean isDifferent(byte[] classfileBuffer, Class<?> clazz, ClassSignatureElement[] signatureElements) {
+        try {
+            return isBytecodeDifferent(classfileBuffer, clazz, signatureElements);
+        } catch (Exception | LinkageError e) {
+            LOGGER.error("Error reading signature", e);
+            return false;
+        }
+    }
+
+    /**
+     * 新的字节码是否变化，解析失败时抛出异常由调用方决定如何处理
+     */
+    static boolean isBytecodeDifferent(byte[] classfileBuffer, Class<?> clazz, ClassSignatureElement[] signatureElements) throws IOException {
+        ClassFingerprint fingerprint = ClassFingerprintCalculator.ofBytecode(classfileBuffer, clazz.getClassLoader(), ClassFingerprint.mask(signatureElements));
+        return !fingerprint.equals(getJavaClassFingerprint(clazz, signatureElements));
+    }
+
     public static boolean isDifferent(Class<?> clazz1, Class<?> clazz2, ClassSignatureElement[] signatureElements) {
         try {
-            String sig1 = getJavaClassSignature(clazz1, signatureElements);
-            String sig2 = getJavaClassSignature(clazz2, signatureElements);
-            return !sig1.equals(sig2);
-        } catch (Exception e) {
+            return !getJavaClassFingerprint(clazz1, signatureElements).equals(getJavaClassFingerprint(clazz2, signatureElements));
+        } catch (Exception | LinkageError e) {
             LOGGER.error("Error reading signature", e);
             return false;
         }
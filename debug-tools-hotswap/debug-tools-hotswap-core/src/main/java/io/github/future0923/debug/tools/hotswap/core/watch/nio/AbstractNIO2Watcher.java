@@ -31,6 +31,7 @@ import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -44,7 +45,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
@@ -65,7 +65,7 @@ public abstract class AbstractNIO2Watcher implements Watcher {
     /**
      * 文件观察服务
      */
-    protected WatchService watcher;
+    protected volatile WatchService watcher;
 
     /**
      * WatchKey对应的Path
@@ -198,13 +198,15 @@ public abstract class AbstractNIO2Watcher implements Watcher {
         // cleanup...
         if (classLoaderListeners.isEmpty()) {
             listeners.clear();
-            for (WatchKey wk : keys.keySet()) {
+            for (Entry<WatchKey, Path> entry : keys.entrySet()) {
                 try {
-                    wk.cancel();
+                    entry.getKey().cancel();
                 } catch (Exception e) {
                     LOGGER.error("Ooops", e);
                 }
+                dispatcher.forget(entry.getValue());
             }
+            keys.clear();
             try {
                 this.watcher.close();
             } catch (IOException e) {
@@ -228,6 +230,19 @@ public abstract class AbstractNIO2Watcher implements Watcher {
        registerAll(path, false);
     }
 
+    /**
+     * 目录下（包括自身）已经注册的目录
+     */
+    private List<Path> registeredUnder(Path dir) {
+        List<Path> registered = new ArrayList<>();
+        for (Path path : keys.values()) {
+            if (path.startsWith(dir)) {
+                registered.add(path);
+            }
+        }
+        return registered;
+    }
+
     /**
      * 使用 WatchService 注册给定目录。子目录将自动受到监视（支持文件系统）
      *
@@ -242,8 +257,18 @@ public abstract class AbstractNIO2Watcher implements Watcher {
      * @return 是否处理成功
      */
     private boolean processEvents() throws InterruptedException {
-        WatchKey key = watcher.poll(10, TimeUnit.MILLISECONDS);
-        if (key == null) {
+        WatchService current = watcher;
+        WatchKey key;
+        try {
+            key = current.take();
+        } catch (ClosedWatchServiceException e) {
+            if (stopped) {
+                return false;
+            }
+            // closeClassLoader释放后会重新创建watcher，未创建时稍后重试
+            if (current == watcher) {
+                Thread.sleep(100);
+            }
             return true;
         }
         Path dir = keys.get(key);
@@ -254,7 +279,14 @@ public abstract class AbstractNIO2Watcher implements Watcher {
         for (WatchEvent<?> event : key.pollEvents()) {
             WatchEvent.Kind<?> kind = event.kind();
             if (kind == OVERFLOW) {
-                LOGGER.warning("WatchKey '{}' overflowed", key);
+                LOGGER.warning("WatchKey '{}' overflowed, rescan {}", key, dir);
+                // 溢出期间新建的目录没有注册，重新注册整个目录树并补发事件
+                try {
+                    registerAll(dir, false);
+                } catch (IOException x) {
+                    LOGGER.warning("Unable to register events for directory {}", x, dir);
+                }
+                dispatcher.overflow(dir, registeredUnder(dir));
                 continue;
             }
             WatchEvent<Path> ev = cast(event);
@@ -281,7 +313,10 @@ public abstract class AbstractNIO2Watcher implements Watcher {
         boolean valid = key.reset();
         if (!valid) {
             LOGGER.debug("Watcher on {} not valid, removing path=", keys.get(key));
-            keys.remove(key);
+            Path removed = keys.remove(key);
+            if (removed != null) {
+                dispatcher.forget(removed);
+            }
             // 所有目录都无法访问
             if (keys.isEmpty()) {
                 return false;
@@ -308,7 +343,10 @@ public abstract class AbstractNIO2Watcher implements Watcher {
                 }
             } catch (InterruptedException ignored) {
 
+            } catch (ClosedWatchServiceException ignored) {
+                // stop时关闭
             }
+            LOGGER.debug("HotSwap Watcher stopped");
         });
         runner.setDaemon(true);
         runner.setName("HotSwap Watcher");
@@ -320,6 +358,20 @@ public abstract class AbstractNIO2Watcher implements Watcher {
     @Override
     public void stop() {
         stopped = true;
+        // 关闭后阻塞在take上的线程会立即返回
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close watch service", e);
+        }
+        if (runner != null) {
+            runner.interrupt();
+        }
+        try {
+            dispatcher.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -17,37 +17,98 @@
 package io.github.future0923.debug.tools.hotswap.core.watch.nio;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.hotswap.core.watch.HotswapAgentWatchEvent;
 import io.github.future0923.debug.tools.hotswap.core.watch.WatchEventListener;
 import io.github.future0923.debug.tools.hotswap.core.watch.WatchFileEvent;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 
 /**
  * Event分发器
+ * <p>
+ * 待分发的事件按路径合并（CREATE/MODIFY/DELETE合并为最终状态），超过{@link #MAX_PENDING_EVENTS}个路径后不再缓存，
+ * 记录丢弃数量并在分发线程中重新扫描事件所在目录。
+ * <p>
+ * 目录第一次溢出时还没有之前的状态，只补发溢出前后修改过的文件和已注册但不存在的目录的删除事件，同时记录目录下文件的修改时间作为快照；
+ * 之后分发事件时更新快照，再次溢出时与快照对比，只补发新建、修改、删除过的文件。没有溢出过的目录不保存任何状态
  */
 public class EventDispatcher implements Runnable {
 
     private static final Logger LOGGER = Logger.getLogger(EventDispatcher.class);
 
+    /**
+     * 最多缓存的待分发路径数
+     */
+    static final int MAX_PENDING_EVENTS = 10000;
+
+    /**
+     * 没有快照时重新扫描文件修改时间的容差，部分文件系统修改时间精度为秒
+     */
+    private static final long RESCAN_TOLERANCE_MILLIS = 2000L;
+
+    /**
+     * 停止时等待分发线程结束的最长时间
+     */
+    private static final long STOP_TIMEOUT_MILLIS = 5000L;
+
     /**
      * PATH变动的监听者
      */
     private final Map<Path, List<WatchEventListener>> listeners;
 
     /**
-     * 工作队列。事件队列{@link #eventQueue}调用drainTo后，所有待处理的事件都添加到此列表中
+     * 待分发的事件，按路径合并，保持首次出现的顺序。使用自身作为锁
+     */
+    private final LinkedHashMap<Path, Event> pendingEvents = new LinkedHashMap<>();
+
+    /**
+     * 溢出后需要重新扫描的目录，由{@link #pendingEvents}锁保护
+     */
+    private LinkedHashMap<Path, Rescan> pendingRescans = new LinkedHashMap<>();
+
+    /**
+     * 溢出过的目录下文件最后已知的修改时间，重新扫描时用来判断哪些文件发生了变化
      */
-    private final ArrayList<Event> working = new ArrayList<>();
+    private final Map<Path, Long> knownFiles = new ConcurrentHashMap<>();
 
     /**
-     * 待分发的事件
+     * 已经做过快照（溢出过）的目录
      */
-    private final ArrayBlockingQueue<Event> eventQueue = new ArrayBlockingQueue<>(500);
+    private final Set<Path> snapshotRoots = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 缓存已满丢弃的事件数
+     */
+    private final AtomicLong droppedEvents = new AtomicLong();
+
+    /**
+     * 被合并的事件数
+     */
+    private final AtomicLong coalescedEvents = new AtomicLong();
+
+    /**
+     * 重新扫描目录的次数
+     */
+    private final AtomicLong rescans = new AtomicLong();
 
     /**
      * 分发线程
@@ -62,60 +123,267 @@ public class EventDispatcher implements Runnable {
     @Override
     public void run() {
         while (true) {
-            // 如果工作队列中有未处理的先处理
-            for (Event e : working) {
+            Map<Path, Event> events;
+            Map<Path, Rescan> rescanDirs;
+            synchronized (pendingEvents) {
+                try {
+                    while (pendingEvents.isEmpty() && pendingRescans.isEmpty()) {
+                        pendingEvents.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                events = swapEvents();
+                rescanDirs = pendingRescans;
+                pendingRescans = new LinkedHashMap<>();
+            }
+            for (Event e : events.values()) {
                 callListeners(e.event, e.path);
+                updateKnownFile(e.event.kind(), e.path);
                 if (Thread.interrupted()) {
                     return;
                 }
-                Thread.yield();
             }
-            // 取出事件方法working
-            eventQueue.drainTo(working);
-
-            // 处理新drainTo到工作队列中的事件
-            for (Event e : working) {
-                callListeners(e.event, e.path);
+            for (Map.Entry<Path, Rescan> entry : rescanDirs.entrySet()) {
+                rescan(entry.getKey(), entry.getValue());
+                rescans.incrementAndGet();
                 if (Thread.interrupted()) {
                     return;
                 }
-                Thread.yield();
             }
+        }
+    }
 
-            // 处理完清空工作队列
-            working.clear();
+    /**
+     * 取出当前待分发的事件，需要持有{@link #pendingEvents}锁
+     */
+    private Map<Path, Event> swapEvents() {
+        // 锁对象不能替换，复制一份后清空
+        Map<Path, Event> result = new LinkedHashMap<>(pendingEvents);
+        pendingEvents.clear();
+        return result;
+    }
 
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e1) {
+    /**
+     * 添加待分发的事件，同一路径未分发的事件会合并
+     */
+    public void add(WatchEvent<Path> event, Path path) {
+        synchronized (pendingEvents) {
+            Event previous = pendingEvents.get(path);
+            if (previous != null) {
+                coalescedEvents.incrementAndGet();
+                WatchEvent.Kind<Path> kind = merge(previous.event.kind(), event.kind());
+                if (kind == null) {
+                    pendingEvents.remove(path);
+                } else if (kind != previous.event.kind()) {
+                    pendingEvents.put(path, new Event(kind == event.kind() ? event : new HotswapAgentWatchEvent<>(kind, event.context()), path));
+                }
                 return;
             }
+            if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                long dropped = droppedEvents.incrementAndGet();
+                Path dir = path.getParent();
+                if (dir != null && !isRescanPending(dir)) {
+                    pendingRescans.put(dir, new Rescan(System.currentTimeMillis(), Collections.emptySet()));
+                    LOGGER.warning("Watch event buffer full ({} dropped), directory {} will be rescanned", dropped, dir);
+                }
+                pendingEvents.notifyAll();
+                return;
+            }
+            pendingEvents.put(path, new Event(event, path));
+            pendingEvents.notifyAll();
         }
     }
 
     /**
-     * 添加待分发的事件到事件队列
+     * 文件系统事件溢出（{@link java.nio.file.StandardWatchEventKinds#OVERFLOW}），重新扫描目录
+     *
+     * @param registeredDirs 目录下已经注册监听的目录，没有快照时对其中已经不存在的目录补发删除事件
      */
-    public void add(WatchEvent<Path> event, Path path) {
-        eventQueue.offer(new Event(event, path));
+    public void overflow(Path dir, Collection<Path> registeredDirs) {
+        synchronized (pendingEvents) {
+            if (!isRescanPending(dir)) {
+                pendingRescans.put(dir, new Rescan(System.currentTimeMillis(), new ArrayList<>(registeredDirs)));
+            }
+            pendingEvents.notifyAll();
+        }
     }
 
     /**
-     * 调用监听者
+     * 目录或其上级目录是否已经在等待重新扫描，需要持有{@link #pendingEvents}锁
      */
-    private void callListeners(final WatchEvent<?> event, final Path path) {
-        boolean matchedOne = false;
-        for (Map.Entry<Path, List<WatchEventListener>> list : listeners.entrySet()) {
-            if (path.startsWith(list.getKey())) {
-                matchedOne = true;
-                for (WatchEventListener listener : new ArrayList<>(list.getValue())) {
-                    WatchFileEvent agentEvent = new HotswapWatchFileEvent(event, path);
+    private boolean isRescanPending(Path dir) {
+        for (Path p = dir; p != null; p = p.getParent()) {
+            if (pendingRescans.containsKey(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 合并同一路径的两个事件，返回null表示两个事件相互抵消
+     */
+    @SuppressWarnings("unchecked")
+    static WatchEvent.Kind<Path> merge(WatchEvent.Kind<?> previous, WatchEvent.Kind<?> next) {
+        if (previous == ENTRY_CREATE) {
+            // 新建后修改仍是新建，新建后删除相互抵消
+            if (next == ENTRY_DELETE) {
+                return null;
+            }
+            return ENTRY_CREATE;
+        }
+        if (previous == ENTRY_DELETE && next == ENTRY_CREATE) {
+            // 删除后重新生成（如全量编译）相当于修改
+            return ENTRY_MODIFY;
+        }
+        return (WatchEvent.Kind<Path>) next;
+    }
+
+    /**
+     * 目录不再监听，丢弃其下的快照
+     */
+    public void forget(Path dir) {
+        if (snapshotRoots.isEmpty()) {
+            return;
+        }
+        snapshotRoots.removeIf(root -> root.startsWith(dir));
+        knownFiles.keySet().removeIf(file -> file.startsWith(dir));
+    }
+
+    /**
+     * 路径是否在做过快照的目录下
+     */
+    private boolean isSnapshotted(Path path) {
+        if (snapshotRoots.isEmpty()) {
+            return false;
+        }
+        for (Path p = path; p != null; p = p.getParent()) {
+            if (snapshotRoots.contains(p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 事件分发后更新快照中文件的修改时间，没有快照的目录不记录
+     */
+    private void updateKnownFile(WatchEvent.Kind<?> kind, Path path) {
+        if (!isSnapshotted(path)) {
+            return;
+        }
+        if (kind == ENTRY_DELETE) {
+            knownFiles.remove(path);
+            return;
+        }
+        try {
+            if (Files.isRegularFile(path)) {
+                knownFiles.put(path, Files.getLastModifiedTime(path).toMillis());
+            }
+        } catch (IOException e) {
+            // 分发后文件已被删除，等待后续的删除事件
+            knownFiles.remove(path);
+        }
+    }
+
+    /**
+     * 重新扫描目录。有快照时与快照对比补发新建、修改、删除事件；
+     * 没有快照时补发溢出前后修改过的文件和已注册但不存在的目录，并记录快照供下次对比
+     */
+    private void rescan(Path dir, Rescan rescan) {
+        boolean snapshotted = isSnapshotted(dir);
+        long threshold = rescan.since - RESCAN_TOLERANCE_MILLIS;
+        int created = 0;
+        int modified = 0;
+        int deleted = 0;
+        Set<Path> existing = new HashSet<>();
+        boolean exists = Files.isDirectory(dir);
+        if (exists) {
+            try (Stream<Path> stream = Files.walk(dir)) {
+                for (Iterator<Path> it = stream.iterator(); it.hasNext(); ) {
+                    Path file = it.next();
                     try {
-                        listener.onEvent(agentEvent);
-                    } catch (Throwable e) {
-                         LOGGER.error("Error in watch event '{}' listener'{}'", e, agentEvent, listener);
+                        if (!Files.isRegularFile(file)) {
+                            continue;
+                        }
+                        existing.add(file);
+                        long lastModified = Files.getLastModifiedTime(file).toMillis();
+                        Long known = knownFiles.put(file, lastModified);
+                        if (!snapshotted) {
+                            if (lastModified >= threshold) {
+                                callListeners(new HotswapAgentWatchEvent<>(ENTRY_MODIFY, file.getFileName()), file);
+                                modified++;
+                            }
+                        } else if (known == null) {
+                            callListeners(new HotswapAgentWatchEvent<>(ENTRY_CREATE, file.getFileName()), file);
+                            created++;
+                        } else if (known != lastModified) {
+                            callListeners(new HotswapAgentWatchEvent<>(ENTRY_MODIFY, file.getFileName()), file);
+                            modified++;
+                        }
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to read modified time of {}", e, file);
                     }
                 }
+            } catch (IOException | RuntimeException e) {
+                // 遍历不完整时无法判断哪些文件被删除，也不能作为快照
+                LOGGER.warning("Unable to rescan directory {}", e, dir);
+                if (!snapshotted) {
+                    knownFiles.keySet().removeIf(file -> file.startsWith(dir));
+                }
+                return;
+            }
+        }
+        if (snapshotted) {
+            // 溢出期间丢失的删除事件：已知但已经不存在的文件，目录整个被删除时其下所有已知文件都补发删除
+            for (Iterator<Path> it = knownFiles.keySet().iterator(); it.hasNext(); ) {
+                Path file = it.next();
+                if (file.startsWith(dir) && !existing.contains(file)) {
+                    it.remove();
+                    callListeners(new HotswapAgentWatchEvent<>(ENTRY_DELETE, file.getFileName()), file);
+                    deleted++;
+                }
+            }
+        } else {
+            // 没有之前的状态，只能确定已注册的目录是否被删除
+            for (Path registered : rescan.registeredDirs) {
+                if (!Files.exists(registered)) {
+                    callListeners(new HotswapAgentWatchEvent<>(ENTRY_DELETE, registered.getFileName()), registered);
+                    deleted++;
+                }
+            }
+            if (exists) {
+                snapshotRoots.add(dir);
+            }
+        }
+        LOGGER.info("Rescanned directory {} after watch event overflow, {} created, {} modified, {} deleted dispatched", dir, created, modified, deleted);
+    }
+
+    /**
+     * 调用监听者，沿路径逐级查找监听的根目录
+     */
+    private void callListeners(final WatchEvent<?> event, final Path path) {
+        boolean matchedOne = false;
+        Path root = path.getRoot();
+        int nameCount = path.getNameCount();
+        for (int i = 0; i <= nameCount; i++) {
+            Path prefix = i == 0 ? root : (root == null ? path.subpath(0, i) : root.resolve(path.subpath(0, i)));
+            if (prefix == null) {
+                continue;
+            }
+            List<WatchEventListener> list = listeners.get(prefix);
+            if (list == null) {
+                continue;
+            }
+            matchedOne = true;
+            for (WatchEventListener listener : new ArrayList<>(list)) {
+                WatchFileEvent agentEvent = new HotswapWatchFileEvent(event, path);
+                try {
+                    listener.onEvent(agentEvent);
+                } catch (Throwable e) {
+                     LOGGER.error("Error in watch event '{}' listener'{}'", e, agentEvent, listener);
+                }
             }
         }
         if (!matchedOne) {
@@ -123,6 +391,27 @@ public class EventDispatcher implements Runnable {
         }
     }
 
+    /**
+     * 缓存已满丢弃的事件数
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * 被合并的事件数
+     */
+    public long getCoalescedEvents() {
+        return coalescedEvents.get();
+    }
+
+    /**
+     * 已完成重新扫描目录的次数
+     */
+    public long getRescans() {
+        return rescans.get();
+    }
+
     /**
      * 启动分发线程
      */
@@ -139,11 +428,36 @@ public class EventDispatcher implements Runnable {
     public void stop() throws InterruptedException {
         if (runnable != null) {
             runnable.interrupt();
-            runnable.join();
+            // 监听者可能阻塞，不无限等待
+            runnable.join(STOP_TIMEOUT_MILLIS);
+            if (runnable.isAlive()) {
+                LOGGER.warning("Dispatcher thread did not stop within {} ms", STOP_TIMEOUT_MILLIS);
+            }
         }
         runnable = null;
     }
 
+    /**
+     * 等待中的重新扫描
+     */
+    private static class Rescan {
+
+        /**
+         * 发现溢出的时间
+         */
+        final long since;
+
+        /**
+         * 溢出时目录下已注册的目录
+         */
+        final Collection<Path> registeredDirs;
+
+        Rescan(long since, Collection<Path> registeredDirs) {
+            this.since = since;
+            this.registeredDirs = registeredDirs;
+        }
+    }
+
     /**
      * 要分发的事件对象
      */
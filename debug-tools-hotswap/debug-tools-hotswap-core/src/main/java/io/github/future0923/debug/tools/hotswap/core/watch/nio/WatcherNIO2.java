@@ -16,9 +16,11 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.watch.nio;
 
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapThreadPool;
 import io.github.future0923.debug.tools.hotswap.core.watch.HotswapAgentWatchEvent;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitOption;
 import java.nio.file.FileVisitResult;
@@ -28,7 +30,12 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 
@@ -40,6 +47,11 @@ public class WatcherNIO2 extends AbstractNIO2Watcher {
 
     private final static WatchEvent.Modifier HIGH;
 
+    /**
+     * 启动、溢出重新扫描时并行注册目录的线程池，空闲时线程会回收
+     */
+    private static final ExecutorService registerExecutor = HotswapThreadPool.create("DebugTools-WatchRegister-");
+
     static {
         HIGH = getWatchEventModifier("com.sun.nio.file.SensitivityWatchEventModifier", "HIGH");
     }
@@ -48,19 +60,53 @@ public class WatcherNIO2 extends AbstractNIO2Watcher {
         super();
     }
 
+    /**
+     * 遍历时就提交注册，不等遍历结束。新建目录的注册较少，在当前线程注册，注册后再补发目录下文件的创建事件，注册前创建的文件不会丢失
+     */
     @Override
     protected void registerAll(final Path dir, boolean fromCreateEvent) throws IOException {
         LOGGER.debug("Registering directory  {}", dir);
+        List<Future<?>> futures = new ArrayList<>();
         Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
                 if (fromCreateEvent) {
+                    register(dir);
                     sendFakeCreateEvents(dir);
+                } else {
+                    futures.add(registerExecutor.submit(() -> {
+                        register(dir);
+                        return null;
+                    }));
                 }
-                register(dir);
                 return FileVisitResult.CONTINUE;
             }
         });
+        awaitRegistered(futures);
+        LOGGER.debug("Registered {} directories under {}", futures.size(), dir);
+    }
+
+    /**
+     * 等待所有目录注册完成，有失败时抛出第一个异常
+     */
+    private void awaitRegistered(List<Future<?>> futures) throws IOException {
+        IOException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while registering directories");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (failure == null) {
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
     }
 
     private void sendFakeCreateEvents(Path dir) {
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.command.impl;
+
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
+import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
+import io.github.future0923.debug.tools.hotswap.core.command.Scheduler.DuplicateSheduleBehaviour;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link SchedulerImpl}的合并、重复命令处理和停止后的行为
+ *
+ * @author future0923
+ */
+class SchedulerImplTest {
+
+    private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+
+    private SchedulerImpl scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new SchedulerImpl();
+        scheduler.run();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void equalMergeableCommandsAreMerged() {
+        scheduler.scheduleCommand(new Batch("a"), 100);
+        scheduler.scheduleCommand(new Batch("b"), 100);
+        await(() -> !log.isEmpty() && isIdle());
+        assertEquals(Collections.singletonList("batch [a, b]"), log);
+    }
+
+    @Test
+    void skipDropsCommandWhileSameCommandIsRunning() throws InterruptedException {
+        Blocking first = new Blocking("first");
+        scheduler.scheduleCommand(first, 0);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+
+        scheduler.scheduleCommand(new Blocking("second"), 0, DuplicateSheduleBehaviour.SKIP);
+        await(() -> isScheduledEmpty());
+        first.release.countDown();
+        await(this::isIdle);
+        assertEquals(List.of("start first", "end first"), log);
+    }
+
+    @Test
+    void waitAndRunAfterRunsWhenSameCommandFinishes() throws InterruptedException {
+        Blocking first = new Blocking("first");
+        scheduler.scheduleCommand(first, 0);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+
+        Blocking second = new Blocking("second");
+        second.release.countDown();
+        scheduler.scheduleCommand(second, 0, DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+        // 到期后等待第一个结束，不会并发执行
+        Thread.sleep(100);
+        assertEquals(List.of("start first"), log);
+
+        first.release.countDown();
+        await(() -> log.size() == 4 && isIdle());
+        assertEquals(List.of("start first", "end first", "start second", "end second"), log);
+    }
+
+    @Test
+    void commandsScheduledAfterStopAreIgnored() {
+        scheduler.stop();
+        scheduler.scheduleCommand(new Batch("a"), 0);
+        assertTrue(isScheduledEmpty());
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    void rejectedCommandKeepsCountOfRunningDuplicates() throws InterruptedException {
+        Blocking first = new Blocking("first");
+        scheduler.scheduleCommand(first, 0);
+        assertTrue(first.started.await(5, TimeUnit.SECONDS));
+
+        ExecutorService executor = scheduler.executor;
+        synchronized (scheduler) {
+            scheduler.executor = new RejectingExecutor();
+        }
+        try {
+            scheduler.scheduleCommand(new Blocking("second"), 0, DuplicateSheduleBehaviour.RUN_DUPLICATE);
+            await(this::isScheduledEmpty);
+            synchronized (scheduler) {
+                // 被拒绝的命令只撤销自己的计数，第一个仍在运行
+                assertEquals(1, scheduler.runningCommands.get(first));
+            }
+        } finally {
+            first.release.countDown();
+        }
+        await(this::isIdle);
+        executor.shutdownNow();
+        assertEquals(List.of("start first", "end first"), log);
+    }
+
+    private boolean isScheduledEmpty() {
+        synchronized (scheduler) {
+            return scheduler.scheduledCommands.isEmpty();
+        }
+    }
+
+    private boolean isIdle() {
+        synchronized (scheduler) {
+            return scheduler.scheduledCommands.isEmpty() && scheduler.runningCommands.isEmpty();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * 相等的可合并命令，合并后一次执行所有名称
+     */
+    private class Batch extends MergeableCommand {
+
+        private final Set<String> names = new LinkedHashSet<>();
+
+        private Batch(String name) {
+            names.add(name);
+        }
+
+        @Override
+        public Command merge(Command other) {
+            names.addAll(((Batch) other).names);
+            return this;
+        }
+
+        @Override
+        public void executeCommand() {
+            log.add("batch " + names);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Batch;
+        }
+
+        @Override
+        public int hashCode() {
+            return Batch.class.hashCode();
+        }
+    }
+
+    /**
+     * 相等的命令，执行时阻塞到释放
+     */
+    private class Blocking implements Command {
+
+        private final String name;
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private Blocking(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void executeCommand() {
+            log.add("start " + name);
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.add("end " + name);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Blocking;
+        }
+
+        @Override
+        public int hashCode() {
+            return Blocking.class.hashCode();
+        }
+    }
+
+    private static class RejectingExecutor extends AbstractExecutorService {
+
+        @Override
+        public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return true;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return true;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link TransformerIndex}的匹配结果要与逐个正则匹配一致
+ *
+ * @author future0923
+ */
+class TransformerIndexTest {
+
+    private static final String[] PATTERNS = {
+            "org.springframework.context.support.AbstractApplicationContext",
+            "org.springframework.*",
+            "org.springframework.beans.*",
+            ".*",
+            "com.foo.Bar",
+            "com.foo.Bar$Inner",
+            "com.foo.*",
+            "(jdk.proxy\\d+.\\$Proxy.*)|(com.sun.proxy.\\$Proxy.*)",
+            "^com.baz.Qux$",
+            ".*Mapper",
+    };
+
+    private static final String[] CLASS_NAMES = {
+            "org.springframework.context.support.AbstractApplicationContext",
+            "org/springframework/context/support/AbstractApplicationContext",
+            "org.springframework.context.support.AbstractApplicationContextX",
+            "org/springframework/beans/factory/BeanFactory",
+            "org.springframework",
+            "org.springframeworkx.Foo",
+            "com/foo/Bar",
+            "com.foo.Bar$Inner",
+            "com/foo/Bar$Inner",
+            "com.foo.BarInner",
+            "com.foo",
+            "com.sun.proxy.$Proxy12",
+            "jdk/proxy2/$Proxy5",
+            "com.baz.Qux",
+            "com.baz.Qux$1",
+            "com/example/UserMapper",
+            "java.lang.String",
+            "",
+    };
+
+    @Test
+    void matchesSameRecordsAsRegex() {
+        List<HotswapTransformer.RegisteredTransformersRecord> records = records(PATTERNS);
+        TransformerIndex index = new TransformerIndex(records);
+        for (String className : CLASS_NAMES) {
+            assertEquals(bruteForce(records, className, null), patterns(index.match(className, null)), className);
+        }
+    }
+
+    @Test
+    void matchesSecondClassNameWithoutDuplicates() {
+        List<HotswapTransformer.RegisteredTransformersRecord> records = records(PATTERNS);
+        TransformerIndex index = new TransformerIndex(records);
+        for (String className : CLASS_NAMES) {
+            for (String secondClassName : CLASS_NAMES) {
+                assertEquals(bruteForce(records, className, secondClassName), patterns(index.match(className, secondClassName)),
+                        className + " / " + secondClassName);
+            }
+        }
+    }
+
+    @Test
+    void returnsRecordsInRegistrationOrder() {
+        List<HotswapTransformer.RegisteredTransformersRecord> records = records("com.foo.Bar", ".*Bar", "com.*", ".*");
+        List<TransformerIndex.Entry> matched = new TransformerIndex(records).match("com.foo.Bar", null);
+        assertNotNull(matched);
+        List<String> patterns = new ArrayList<>();
+        for (TransformerIndex.Entry entry : matched) {
+            patterns.add(entry.pattern.pattern());
+        }
+        assertEquals(patterns(records), patterns);
+    }
+
+    @Test
+    void skipsRecordsWithoutTransformers() {
+        List<HotswapTransformer.RegisteredTransformersRecord> records = records("com.foo.Bar", ".*");
+        records.get(1).transformerList.clear();
+        assertNull(new TransformerIndex(records).match("org.Other", null));
+        assertNull(new TransformerIndex(new ArrayList<>()).match("com.foo.Bar", "com.foo.Bar"));
+    }
+
+    private static List<HotswapTransformer.RegisteredTransformersRecord> records(String... regexps) {
+        List<HotswapTransformer.RegisteredTransformersRecord> records = new ArrayList<>();
+        for (String regexp : regexps) {
+            HotswapTransformer.RegisteredTransformersRecord record = new HotswapTransformer.RegisteredTransformersRecord();
+            // 与HotswapTransformer#normalizeTypeRegexp一致
+            record.pattern = Pattern.compile((regexp.startsWith("^") ? "" : "^") + regexp + (regexp.endsWith("$") ? "" : "$"));
+            record.transformerList.add(new NoopTransformer());
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static List<String> bruteForce(List<HotswapTransformer.RegisteredTransformersRecord> records, String className, String secondClassName) {
+        List<String> result = new ArrayList<>();
+        for (HotswapTransformer.RegisteredTransformersRecord record : records) {
+            if (record.pattern.matcher(className).matches()
+                    || (secondClassName != null && record.pattern.matcher(secondClassName).matches())) {
+                result.add(record.pattern.pattern());
+            }
+        }
+        return result;
+    }
+
+    private static List<String> patterns(List<?> entriesOrRecords) {
+        if (entriesOrRecords == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (Object object : entriesOrRecords) {
+            if (object instanceof TransformerIndex.Entry) {
+                result.add(((TransformerIndex.Entry) object).pattern.pattern());
+            } else {
+                result.add(((HotswapTransformer.RegisteredTransformersRecord) object).pattern.pattern());
+            }
+        }
+        return result;
+    }
+
+    private static class NoopTransformer implements HaClassFileTransformer {
+
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            return null;
+        }
+
+        @Override
+        public boolean isForRedefinitionOnly() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.util.signature;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同一个类通过反射和字节码计算的指纹必须一致
+ *
+ * @author future0923
+ */
+class ClassFingerprintCalculatorTest {
+
+    private static final ClassSignatureElement[] ALL = ClassSignatureElement.values();
+
+    @Test
+    void sameFingerprintFromReflectionAndBytecode() throws IOException {
+        for (Class<?> clazz : new Class<?>[]{Fixture.class, FixtureBase.class, Marker.class, Mode.class}) {
+            assertParity(clazz, ALL);
+        }
+    }
+
+    @Test
+    void sameFingerprintForEachElement() throws IOException {
+        for (ClassSignatureElement element : ALL) {
+            assertParity(Fixture.class, new ClassSignatureElement[]{element});
+        }
+        assertParity(Fixture.class, new ClassSignatureElement[]{ClassSignatureElement.METHOD, ClassSignatureElement.METHOD_ANNOTATION});
+        assertParity(Fixture.class, new ClassSignatureElement[]{ClassSignatureElement.FIELD, ClassSignatureElement.FIELD_STATIC, ClassSignatureElement.FIELD_ANNOTATION});
+        assertParity(Fixture.class, new ClassSignatureElement[]{ClassSignatureElement.CONSTRUCTOR, ClassSignatureElement.CONSTRUCTOR_PRIVATE, ClassSignatureElement.METHOD_PARAM_ANNOTATION});
+    }
+
+    @Test
+    void differentClassesHaveDifferentFingerprints() throws IOException {
+        int mask = ClassFingerprint.mask(ALL);
+        assertNotEquals(ClassFingerprintCalculator.ofClass(Fixture.class, mask), ClassFingerprintCalculator.ofClass(FixtureBase.class, mask));
+        assertNotEquals(ClassFingerprintCalculator.ofBytecode(bytecode(Fixture.class), Fixture.class.getClassLoader(), mask),
+                ClassFingerprintCalculator.ofBytecode(bytecode(FixtureBase.class), FixtureBase.class.getClassLoader(), mask));
+    }
+
+    private static void assertParity(Class<?> clazz, ClassSignatureElement[] elements) throws IOException {
+        int mask = ClassFingerprint.mask(elements);
+        ClassFingerprint reflection = ClassFingerprintCalculator.ofClass(clazz, mask);
+        ClassFingerprint bytecode = ClassFingerprintCalculator.ofBytecode(bytecode(clazz), clazz.getClassLoader(), mask);
+        assertEquals(reflection, bytecode, clazz.getName() + " " + Arrays.toString(elements));
+    }
+
+    private static byte[] bytecode(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            assertNotNull(in, clazz.getName());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    enum Mode {
+        FAST, SLOW
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.TYPE, ElementType.METHOD, ElementType.CONSTRUCTOR, ElementType.FIELD, ElementType.PARAMETER})
+    @interface Marker {
+
+        String value() default "default";
+
+        int order() default 1;
+
+        Mode mode() default Mode.FAST;
+
+        Class<?> type() default Object.class;
+
+        String[] tags() default {};
+
+        Nested nested() default @Nested;
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Nested {
+
+        long id() default 7L;
+
+        char c() default 'c';
+    }
+
+    static class FixtureBase {
+
+        protected int baseField;
+
+        protected void baseMethod() {
+        }
+    }
+
+    @Marker(value = "class", tags = {"a", "b"})
+    static class Fixture extends FixtureBase implements Serializable, Callable<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        static int counter;
+
+        @Marker(order = 2, mode = Mode.SLOW)
+        private Map<String, List<Integer>> values;
+
+        protected transient volatile int[] numbers;
+
+        @Marker
+        public Fixture() {
+        }
+
+        private Fixture(@Marker("param") String name, long[] ids) throws IOException {
+        }
+
+        @Override
+        @Marker(type = String.class, nested = @Nested(id = 3L, c = 'x'))
+        public String call() throws Exception {
+            return "";
+        }
+
+        public synchronized <T extends Comparable<T>> T max(T a, @Marker(tags = "b") T b) {
+            return a.compareTo(b) > 0 ? a : b;
+        }
+
+        protected final Object[][] matrix(byte b, short s, char c, float f, double d, boolean z) {
+            return new Object[0][];
+        }
+
+        private static void helper(Runnable runnable) throws IllegalStateException, InterruptedException {
+            runnable.run();
+        }
+
+        static native int nativeMethod();
+
+        void withLambda() throws InterruptedException {
+            helper(() -> counter++);
+        }
+
+        int select(Mode mode) {
+            switch (mode) {
+                case FAST:
+                    return 1;
+                default:
+                    return 0;
+            }
+        }
+    }
+}
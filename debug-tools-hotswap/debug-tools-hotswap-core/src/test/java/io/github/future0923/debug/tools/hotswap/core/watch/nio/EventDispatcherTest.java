@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.watch.nio;
+
+import io.github.future0923.debug.tools.hotswap.core.watch.HotswapAgentWatchEvent;
+import io.github.future0923.debug.tools.hotswap.core.watch.WatchEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link EventDispatcher}的事件合并、缓存上限和溢出后的重新扫描
+ *
+ * @author future0923
+ */
+class EventDispatcherTest {
+
+    /**
+     * 早于重新扫描容差的修改时间，没有快照时不会被当作溢出期间修改的文件
+     */
+    private static final long OLD = System.currentTimeMillis() - 3600_000L;
+
+    @TempDir
+    Path dir;
+
+    private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    private EventDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        Map<Path, List<WatchEventListener>> listeners = new ConcurrentHashMap<>();
+        List<WatchEventListener> list = new ArrayList<>();
+        list.add(event -> events.add(event.getEventType() + " " + dir.toUri().relativize(event.getURI())));
+        listeners.put(dir, list);
+        dispatcher = new EventDispatcher(listeners);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        dispatcher.stop();
+    }
+
+    @Test
+    void mergeKeepsFinalState() {
+        assertEquals(ENTRY_CREATE, EventDispatcher.merge(ENTRY_CREATE, ENTRY_MODIFY));
+        assertNull(EventDispatcher.merge(ENTRY_CREATE, ENTRY_DELETE));
+        assertEquals(ENTRY_MODIFY, EventDispatcher.merge(ENTRY_DELETE, ENTRY_CREATE));
+        assertEquals(ENTRY_DELETE, EventDispatcher.merge(ENTRY_MODIFY, ENTRY_DELETE));
+        assertEquals(ENTRY_MODIFY, EventDispatcher.merge(ENTRY_MODIFY, ENTRY_MODIFY));
+    }
+
+    @Test
+    void eventsOfSamePathAreCoalesced() {
+        add(ENTRY_MODIFY, "a");
+        add(ENTRY_MODIFY, "a");
+        add(ENTRY_CREATE, "b");
+        add(ENTRY_DELETE, "b");
+        add(ENTRY_CREATE, "c");
+        add(ENTRY_MODIFY, "c");
+        assertEquals(3, dispatcher.getCoalescedEvents());
+
+        dispatcher.start();
+        await(() -> events.size() >= 2);
+        add(ENTRY_MODIFY, "end");
+        await(() -> events.contains("MODIFY end"));
+        assertEquals(List.of("MODIFY a", "CREATE c", "MODIFY end"), events);
+    }
+
+    @Test
+    void fullBufferDropsEventsAndRescansDirectory() throws IOException {
+        Path late = Files.write(dir.resolve("late"), new byte[1]);
+        for (int i = 0; i < EventDispatcher.MAX_PENDING_EVENTS; i++) {
+            add(ENTRY_MODIFY, "f" + i);
+        }
+        add(ENTRY_MODIFY, "dropped1");
+        add(ENTRY_MODIFY, "dropped2");
+        assertEquals(2, dispatcher.getDroppedEvents());
+
+        dispatcher.start();
+        await(() -> dispatcher.getRescans() == 1 && events.contains("MODIFY late"));
+        assertFalse(events.contains("MODIFY dropped1"));
+        assertEquals(EventDispatcher.MAX_PENDING_EVENTS + 1, events.size());
+        assertTrue(Files.exists(late));
+    }
+
+    @Test
+    void rescanDiffsAgainstSnapshotOfFirstOverflow() throws IOException {
+        Path a = oldFile("a");
+        Path b = oldFile("sub/b");
+        Path gone = dir.resolve("gone");
+        dispatcher.start();
+
+        // 第一次溢出没有快照，只补发已注册但不存在的目录
+        dispatcher.overflow(dir, List.of(dir, b.getParent(), gone));
+        await(() -> dispatcher.getRescans() == 1);
+        assertEquals(List.of("DELETE gone"), events);
+        events.clear();
+
+        Files.delete(a);
+        Files.setLastModifiedTime(b, FileTime.fromMillis(OLD + 1000L));
+        oldFile("sub/c");
+        oldFile("sub/d");
+        // 已经分发过的事件更新快照，不会重复补发
+        add(ENTRY_CREATE, "sub/d");
+        await(() -> events.contains("CREATE sub/d"));
+        events.clear();
+
+        dispatcher.overflow(dir, List.of(dir, b.getParent()));
+        await(() -> dispatcher.getRescans() == 2);
+        assertEquals(3, events.size(), events.toString());
+        assertTrue(events.contains("DELETE a"));
+        assertTrue(events.contains("MODIFY sub/b"));
+        assertTrue(events.contains("CREATE sub/c"));
+    }
+
+    @Test
+    void forgetDropsSnapshot() throws IOException {
+        oldFile("a");
+        dispatcher.start();
+        dispatcher.overflow(dir, List.of(dir));
+        await(() -> dispatcher.getRescans() == 1);
+
+        dispatcher.forget(dir);
+        Files.delete(dir.resolve("a"));
+        dispatcher.overflow(dir, List.of(dir));
+        await(() -> dispatcher.getRescans() == 2);
+        // 没有快照时不知道之前有哪些文件
+        assertTrue(events.isEmpty(), events.toString());
+    }
+
+    private void add(WatchEvent.Kind<Path> kind, String name) {
+        Path path = dir.resolve(name);
+        dispatcher.add(new HotswapAgentWatchEvent<>(kind, path.getFileName()), path);
+    }
+
+    private Path oldFile(String name) throws IOException {
+        Path file = dir.resolve(name);
+        Files.createDirectories(file.getParent());
+        Files.write(file, new byte[1]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(OLD));
+        return file;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+}
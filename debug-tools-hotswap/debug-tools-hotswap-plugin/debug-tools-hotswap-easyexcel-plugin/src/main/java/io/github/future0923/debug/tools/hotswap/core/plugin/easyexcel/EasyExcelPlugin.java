@@ -19,6 +19,8 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.easyexcel;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -27,6 +29,12 @@ import javassist.CtField;
 import javassist.CtMethod;
 import javassist.NotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author future0923
  */
@@ -39,42 +47,27 @@ public class EasyExcelPlugin {
 
     private static final Logger logger = Logger.getLogger(EasyExcelPlugin.class);
 
+    /**
+     * ClassUtils缓存key对象中获取类的方法
+     */
+    private static final String[] KEY_CLASS_GETTERS = {"getClazz", "getHeadClass"};
+
+    /**
+     * 访问缓存前比较重定义代数，只清除期间重定义过的类（及其子类）的缓存
+     */
     @OnClassLoadEvent(classNameRegexp = "com.alibaba.excel.util.ClassUtils")
     public static void patchClassUtils(CtClass ctClass, ClassPool classPool) throws CannotCompileException, NotFoundException {
-        CtClass classCtClass = classPool.get("java.lang.Class");
-        CtClass stringCtClass = classPool.get("java.lang.String");
-        try {
-            // 4+
-            CtClass holderCtClass = classPool.get("com.alibaba.excel.metadata.ConfigurationHolder");
-            CtMethod declaredFields = ctClass.getDeclaredMethod("declaredFields", new CtClass[]{classCtClass, holderCtClass});
-            declaredFields.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.FIELD_CACHE.clear();" +
-                    "   com.alibaba.excel.util.ClassUtils.FIELD_THREAD_LOCAL.remove();" +
-                    "}");
-            CtMethod declaredFieldContentMap = ctClass.getDeclaredMethod("declaredFieldContentMap", new CtClass[]{classCtClass, holderCtClass});
-            declaredFieldContentMap.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.CLASS_CONTENT_CACHE.clear();" +
-                    "   com.alibaba.excel.util.ClassUtils.CLASS_CONTENT_THREAD_LOCAL.remove();" +
-                    "}");
-            CtMethod getExcelContentProperty = ctClass.getDeclaredMethod("getExcelContentProperty", new CtClass[]{classCtClass, classCtClass, stringCtClass, holderCtClass});
-            getExcelContentProperty.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.CONTENT_CACHE.clear();" +
-                    "   com.alibaba.excel.util.ClassUtils.CONTENT_THREAD_LOCAL.remove();" +
-                    "}");
-        } catch (NotFoundException e) {
-            // 3+
-            CtMethod declaredFields = ctClass.getDeclaredMethod("declaredFields", new CtClass[]{classCtClass});
-            declaredFields.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.FIELD_CACHE.clear();" +
-                    "}");
-            CtMethod declaredFieldContentMap = ctClass.getDeclaredMethod("declaredFieldContentMap", new CtClass[]{classCtClass});
-            declaredFieldContentMap.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.CLASS_CONTENT_CACHE.clear();" +
-                    "}");
-            CtMethod getExcelContentProperty = ctClass.getDeclaredMethod("getExcelContentProperty", new CtClass[]{classCtClass, classCtClass, stringCtClass});
-            getExcelContentProperty.insertBefore("{" +
-                    "   com.alibaba.excel.util.ClassUtils.CONTENT_CACHE.clear();" +
-                    "}");
+        ClassRedefinitionSyncHelper.addSyncMethod(ctClass, true, EasyExcelPlugin.class.getName() + ".evict",
+                new String[]{"FIELD_CACHE", "CLASS_CONTENT_CACHE", "CONTENT_CACHE"});
+        // 3+和4+参数不同，所有重载都同步
+        for (String methodName : new String[]{"declaredFields", "declaredFieldContentMap", "getExcelContentProperty"}) {
+            CtMethod[] methods = ctClass.getDeclaredMethods(methodName);
+            if (methods.length == 0) {
+                throw new NotFoundException(methodName);
+            }
+            for (CtMethod method : methods) {
+                method.insertBefore(ClassRedefinitionSyncHelper.SYNC_METHOD + "();");
+            }
         }
         logger.info("patch easy excel ClassUtils success");
     }
@@ -99,15 +92,61 @@ public class EasyExcelPlugin {
                     "   this.holder = $1;" +
                     "}");
         }
+        String tracker = ClassRedefinitionTracker.class.getName();
+        ClassRedefinitionSyncHelper.addGenerationField(ctClass, false);
+        // 只有表头类重定义后才重新解析表头
         CtMethod getHeadMap = ctClass.getDeclaredMethod("getHeadMap");
         getHeadMap.insertBefore("{" +
-                "   if (this.headClazz != null) {" +
-                "       this.headMap.clear();" +
-                "       this.initColumnProperties(this.holder);" +
-                "       this.initHeadRowNumber();" +
+                "   int current = " + tracker + ".getGeneration();" +
+                "   if (this." + ClassRedefinitionSyncHelper.GENERATION_FIELD + " != current) {" +
+                "       if (this.headClazz != null && " + EasyExcelPlugin.class.getName() + ".isRedefined(this.headClazz, this." + ClassRedefinitionSyncHelper.GENERATION_FIELD + ")) {" +
+                "           this.headMap.clear();" +
+                "           this.initColumnProperties(this.holder);" +
+                "           this.initHeadRowNumber();" +
+                "       }" +
+                "       this." + ClassRedefinitionSyncHelper.GENERATION_FIELD + " = current;" +
                 "   }" +
                 "}");
         logger.info("patch easy excel ExcelHeadProperty success");
     }
 
+    /**
+     * 清除代数{@code since}之后重定义的类及其子类的缓存，不同版本缓存的key为Class或包含clazz、headClass的对象
+     *
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evict(int since, Map<?, ?>[] caches) {
+        return ClassRedefinitionTracker.evictSubclasses(since, caches, EasyExcelPlugin::keyClasses);
+    }
+
+    /**
+     * 类在代数{@code since}之后是否重定义过（包含父类）
+     */
+    public static boolean isRedefined(Class<?> clazz, int since) {
+        List<Class<?>> redefined = ClassRedefinitionTracker.redefinedSince(since);
+        return redefined == null || ClassRedefinitionTracker.isSubclass(clazz, redefined);
+    }
+
+    /**
+     * 缓存key关联的类，无法获取时返回null
+     */
+    private static Collection<Class<?>> keyClasses(Object key) {
+        if (key instanceof Class) {
+            return Collections.singletonList((Class<?>) key);
+        }
+        List<Class<?>> classes = new ArrayList<>(KEY_CLASS_GETTERS.length);
+        for (String getter : KEY_CLASS_GETTERS) {
+            try {
+                Object clazz = key.getClass().getMethod(getter).invoke(key);
+                if (clazz instanceof Class) {
+                    classes.add((Class<?>) clazz);
+                }
+            } catch (NoSuchMethodException ignored) {
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return classes;
+    }
+
 }
@@ -20,14 +20,22 @@ import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.LoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtConstructor;
 import javassist.CtMethod;
+import javassist.CtNewMethod;
 import javassist.NotFoundException;
 
+import java.util.Collections;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper.SYNC_METHOD;
 
 /**
  * 支持fastjson 1+、fastjson 2+、fastjson2版本
@@ -43,56 +51,118 @@ public class FastJsonPlugin {
 
     private static final Logger logger = Logger.getLogger(FastJsonPlugin.class);
 
-    public static Set<String> redefine;
+    /**
+     * 注入到fastjson 1+版本SerializeConfig、ParserConfig中清除指定类缓存的方法
+     */
+    private static final String EVICT_METHOD = "$$ha$evict";
+
+    /**
+     * fastjson 1+版本创建的SerializeConfig、ParserConfig实例
+     */
+    private static final Set<Object> configs = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * 是否已注册重定义完成的监听者
+     */
+    private static final AtomicBoolean listenerRegistered = new AtomicBoolean();
+
+    /**
+     * fastjson 1+版本，SerializeConfig按类缓存ObjectSerializer
+     */
+    @OnClassLoadEvent(classNameRegexp = "com.alibaba.fastjson.serializer.SerializeConfig")
+    public static void patchSerializeConfig(CtClass ctClass) throws CannotCompileException {
+        if (patchConfig(ctClass, "serializers")) {
+            logger.info("patch fastjson SerializeConfig success");
+        }
+    }
 
     /**
-     * fastjson 1+版本
+     * fastjson 1+版本，ParserConfig按类缓存ObjectDeserializer
      */
-    @OnClassLoadEvent(classNameRegexp = "com.alibaba.fastjson.util.IdentityHashMap")
-    public static void patchIdentityHashMap(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
-        CtMethod method = ctClass.getDeclaredMethod("get", new CtClass[]{classPool.get("java.lang.Object")});
-        method.insertBefore("{" +
-                "   if ($1 instanceof java.lang.Class && " + FastJsonPlugin.class.getName() + ".redefine != null) {" +
-                "       java.lang.Class redefineClass = (java.lang.Class) $1;" +
-                "       java.lang.String redefineClassName = redefineClass.getName();" +
-                "       if (" + FastJsonPlugin.class.getName() + ".redefine.contains(redefineClassName)) {" +
-                "           " + FastJsonPlugin.class.getName() + ".redefine.remove(redefineClassName);" +
-                "           put($1, null);" +
-                "       }" +
-                "   }" +
-                "}");
-        redefine = new ConcurrentSkipListSet<>();
-        logger.info("patch fastjson IdentityHashMap success");
+    @OnClassLoadEvent(classNameRegexp = "com.alibaba.fastjson.parser.ParserConfig")
+    public static void patchParserConfig(CtClass ctClass) throws CannotCompileException {
+        if (patchConfig(ctClass, "deserializers")) {
+            logger.info("patch fastjson ParserConfig success");
+        }
     }
 
     /**
-     * fastjson 1+版本
+     * 构造时记录实例，并注入按类清除缓存的方法。fastjson 2+兼容包中缓存不是IdentityHashMap，由fastjson2的补丁处理
+     */
+    private static boolean patchConfig(CtClass ctClass, String cacheField) throws CannotCompileException {
+        try {
+            if (!"com.alibaba.fastjson.util.IdentityHashMap".equals(ctClass.getDeclaredField(cacheField).getType().getName())) {
+                return false;
+            }
+        } catch (NotFoundException e) {
+            return false;
+        }
+        // IdentityHashMap没有remove方法，值为null时fastjson会重新创建
+        ctClass.addMethod(CtNewMethod.make("public void " + EVICT_METHOD + "(java.lang.Class clazz) {" +
+                "   this." + cacheField + ".put(clazz, null);" +
+                "}", ctClass));
+        for (CtConstructor constructor : ctClass.getDeclaredConstructors()) {
+            if (constructor.callsSuper()) {
+                constructor.insertAfter(FastJsonPlugin.class.getName() + ".registerConfig(this);");
+            }
+        }
+        return true;
+    }
+
+    public static void registerConfig(Object config) {
+        configs.add(config);
+        // 转换时类还没有真正重定义，这期间缓存可能又被旧的类结构填充，重定义完成后再清除一次
+        if (listenerRegistered.compareAndSet(false, true)) {
+            ClassRedefinitionTracker.addListener(FastJsonPlugin::evictConfigs);
+        }
+    }
+
+    /**
+     * fastjson 1+版本，直接从已知的SerializeConfig、ParserConfig中清除重定义的类，重定义完成后再清除一次
      */
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
     public static void redefineClass(final Class<?> clazz) {
-        if (redefine != null) {
-            redefine.add(clazz.getName());
+        if (configs.isEmpty()) {
+            return;
         }
+        evictConfigs(clazz);
+    }
+
+    private static void evictConfigs(Class<?> clazz) {
+        Object[] snapshot;
+        synchronized (configs) {
+            snapshot = configs.toArray();
+        }
+        for (Object config : snapshot) {
+            if (config == null) {
+                continue;
+            }
+            try {
+                config.getClass().getMethod(EVICT_METHOD, Class.class).invoke(config, clazz);
+            } catch (Exception e) {
+                logger.error("evict fastjson cache error, class:{}", e, clazz.getName());
+            }
+        }
+        logger.debug("evict fastjson cache, class:{}", clazz.getName());
     }
 
     /**
      * fastjson2、fastjson 2+版本
+     * <p>
+     * 访问缓存前比较重定义代数，只清除引用了重定义类的ObjectWriter（ObjectWriter持有字段类型的ObjectWriter，key可能是ParameterizedType）
      */
     @OnClassLoadEvent(classNameRegexp = "com.alibaba.fastjson2.writer.ObjectWriterProvider")
     public static void patchObjectWriterProvider(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
         CtClass typeCtClass = classPool.get("java.lang.reflect.Type");
         CtClass classCtClass = classPool.get("java.lang.Class");
+        ClassRedefinitionSyncHelper.addSyncMethod(ctClass, false, ClassRedefinitionSyncHelper.EVICT_REFERENCES, new String[]{"this.cache", "this.cacheFieldBased"});
+
         CtMethod getObjectWriter = ctClass.getDeclaredMethod("getObjectWriter", new CtClass[]{
                 typeCtClass,
                 classCtClass,
                 CtClass.booleanType
         });
-        getObjectWriter.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       this.cache.remove($1);" +
-                "       this.cacheFieldBased.remove($1);" +
-                "   }" +
-                "}");
+        getObjectWriter.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson2
@@ -101,9 +171,7 @@ public class FastJsonPlugin {
                     classCtClass,
                     CtClass.booleanType
             });
-            getObjectWriterFromCache.setBody("{" +
-                    "   return null;" +
-                    "}");
+            getObjectWriterFromCache.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
@@ -113,6 +181,8 @@ public class FastJsonPlugin {
 
     /**
      * fastjson2、fastjson 2+版本
+     * <p>
+     * 反射缓存都以Class为key，访问前比较重定义代数，只清除重定义过的类及其子类（字段、方法缓存包含父类的成员）
      */
     @OnClassLoadEvent(classNameRegexp = "com.alibaba.fastjson2.util.BeanUtils")
     public static void patchBeanUtils(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
@@ -121,128 +191,72 @@ public class FastJsonPlugin {
         CtClass stringCtClass = classPool.get("java.lang.String");
         CtClass objectCtClass = classPool.get("java.lang.Object");
         CtClass methodCtClass = classPool.get("java.lang.reflect.Method");
+        ClassRedefinitionSyncHelper.addSyncMethod(ctClass, true, ClassRedefinitionSyncHelper.EVICT_SUBCLASSES,
+                new String[]{"fieldCache", "fieldMapCache", "declaredFieldCache", "methodCache", "constructorCache"});
 
         CtMethod fields = ctClass.getDeclaredMethod("fields", new CtClass[]{
                 classCtClass,
                 consumerCtClass
         });
-        fields.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       fieldCache.remove($1);" +
-                "   }" +
-                "}");
+        fields.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson 2+
             CtMethod getEnumValueField = ctClass.getDeclaredMethod("getEnumValueField", new CtClass[]{classCtClass});
-            getEnumValueField.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       fieldCache.remove($1);" +
-                    "       methodCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getEnumValueField.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson2
             CtMethod getEnumValueField = ctClass.getDeclaredMethod("getEnumValueField", new CtClass[]{
                     classCtClass,
                     classPool.get("com.alibaba.fastjson2.modules.ObjectCodecProvider")
             });
-            getEnumValueField.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       fieldCache.remove($1);" +
-                    "       methodCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getEnumValueField.insertBefore(SYNC_METHOD + "();");
         }
 
         CtMethod getDeclaredField = ctClass.getDeclaredMethod("getDeclaredField", new CtClass[]{classCtClass, stringCtClass});
-        getDeclaredField.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       fieldMapCache.remove($1);" +
-                "   }" +
-                "}");
+        getDeclaredField.insertBefore(SYNC_METHOD + "();");
 
         CtMethod declaredFields = ctClass.getDeclaredMethod("declaredFields", new CtClass[]{classCtClass, consumerCtClass});
-        declaredFields.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       declaredFieldCache.remove($1);" +
-                "   }" +
-                "}");
+        declaredFields.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson2
             CtMethod setNoneStaticMemberClassParent = ctClass.getDeclaredMethod("setNoneStaticMemberClassParent", new CtClass[]{objectCtClass, objectCtClass});
-            setNoneStaticMemberClassParent.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       declaredFieldCache.remove($1);" +
-                    "   }" +
-                    "}");
+            setNoneStaticMemberClassParent.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
 
         CtMethod staticMethod = ctClass.getDeclaredMethod("staticMethod", new CtClass[]{classCtClass, consumerCtClass});
-        staticMethod.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        staticMethod.insertBefore(SYNC_METHOD + "();");
 
         CtMethod buildMethod = ctClass.getDeclaredMethod("buildMethod", new CtClass[]{classCtClass, stringCtClass});
-        buildMethod.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        buildMethod.insertBefore(SYNC_METHOD + "();");
 
         CtMethod setters = ctClass.getDeclaredMethod("setters", new CtClass[]{classCtClass, consumerCtClass});
-        setters.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        setters.insertBefore(SYNC_METHOD + "();");
 
         CtMethod settersBoolean = ctClass.getDeclaredMethod("setters", new CtClass[]{classCtClass, CtClass.booleanType, consumerCtClass});
-        settersBoolean.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        settersBoolean.insertBefore(SYNC_METHOD + "();");
 
         CtMethod annotationMethods = ctClass.getDeclaredMethod("annotationMethods", new CtClass[]{classCtClass, consumerCtClass});
-        annotationMethods.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        annotationMethods.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson 2+
             CtMethod hasStaticCreatorOrBuilder = ctClass.getDeclaredMethod("hasStaticCreatorOrBuilder", new CtClass[]{classCtClass});
-            hasStaticCreatorOrBuilder.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       methodCache.remove($1);" +
-                    "   }" +
-                    "}");
+            hasStaticCreatorOrBuilder.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson2 没有这个方法了
         }
 
         CtMethod getters = ctClass.getDeclaredMethod("getters", new CtClass[]{classCtClass, consumerCtClass});
-        getters.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       methodCache.remove($1);" +
-                "   }" +
-                "}");
+        getters.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson2
             CtMethod getMethodString = ctClass.getDeclaredMethod("getMethod", new CtClass[]{classCtClass, stringCtClass});
-            getMethodString.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       methodCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getMethodString.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
@@ -250,59 +264,35 @@ public class FastJsonPlugin {
         try {
             // fastjson2
             CtMethod getMethodClass = ctClass.getDeclaredMethod("getMethod", new CtClass[]{classCtClass, methodCtClass});
-            getMethodClass.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       methodCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getMethodClass.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
 
         try {
             CtMethod getKotlinConstructor = ctClass.getDeclaredMethod("getKotlinConstructor", new CtClass[]{classCtClass, classPool.get("com.alibaba.fastjson2.codec.BeanInfo")});
-            getKotlinConstructor.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       constructorCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getKotlinConstructor.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // 高版本(如2.0.51)版本没有这个方法
         }
 
         CtMethod constructor = ctClass.getDeclaredMethod("constructor", new CtClass[]{classCtClass, consumerCtClass});
-        constructor.insertBefore("{" +
-                "   if ($1 != null) {" +
-                "       constructorCache.remove($1);" +
-                "   }" +
-                "}");
+        constructor.insertBefore(SYNC_METHOD + "();");
 
         try {
             // fastjson 2+
             CtMethod getDefaultConstructor = ctClass.getDeclaredMethod("getDefaultConstructor", new CtClass[]{classCtClass});
-            getDefaultConstructor.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       constructorCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getDefaultConstructor.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson2
             CtMethod getDefaultConstructor = ctClass.getDeclaredMethod("getDefaultConstructor", new CtClass[]{classCtClass, CtClass.booleanType});
-            getDefaultConstructor.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       constructorCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getDefaultConstructor.insertBefore(SYNC_METHOD + "();");
         }
 
         try {
             // fastjson2
             CtMethod getConstructor = ctClass.getDeclaredMethod("getConstructor", new CtClass[]{classCtClass});
-            getConstructor.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       constructorCache.remove($1);" +
-                    "   }" +
-                    "}");
+            getConstructor.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
@@ -310,11 +300,7 @@ public class FastJsonPlugin {
         try {
             // fastjson2
             CtMethod isNoneStaticMemberClass = ctClass.getDeclaredMethod("isNoneStaticMemberClass", new CtClass[]{classCtClass, classCtClass});
-            isNoneStaticMemberClass.insertBefore("{" +
-                    "   if ($1 != null) {" +
-                    "       constructorCache.remove($1);" +
-                    "   }" +
-                    "}");
+            isNoneStaticMemberClass.insertBefore(SYNC_METHOD + "();");
         } catch (NotFoundException e) {
             // fastjson 2+ 没有这个方法
         }
@@ -19,12 +19,17 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.gson;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.CtMethod;
 import javassist.NotFoundException;
 
+import java.lang.reflect.Type;
+import java.util.Map;
+
 /**
  * @author future0923
  */
@@ -37,12 +42,31 @@ public class GsonPlugin {
 
     private static final Logger logger = Logger.getLogger(GsonPlugin.class);
 
+    /**
+     * 获取TypeAdapter前比较重定义代数，只清除引用了重定义类的TypeAdapter（反射生成的TypeAdapter持有字段类型的TypeAdapter）
+     */
     @OnClassLoadEvent(classNameRegexp = "com.google.gson.Gson")
     public static void patchGson(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
+        ClassRedefinitionSyncHelper.addSyncMethod(ctClass, false, GsonPlugin.class.getName() + ".evict", new String[]{"typeTokenCache"});
         CtMethod getAdapter = ctClass.getDeclaredMethod("getAdapter", new CtClass[]{classPool.get("com.google.gson.reflect.TypeToken")});
-        getAdapter.insertBefore("{" +
-                "   typeTokenCache.remove($1);" +
-                "}");
+        getAdapter.insertBefore(ClassRedefinitionSyncHelper.SYNC_METHOD + "();");
         logger.info("patch gson success");
     }
+
+    /**
+     * 清除引用了代数{@code since}之后重定义的类的TypeAdapter，缓存的key为TypeToken
+     *
+     * @return 清除后缓存同步到的代数
+     */
+    public static int evict(int since, Map<?, ?>[] caches) {
+        return ClassRedefinitionTracker.evictReferences(since, caches, GsonPlugin::typeOf);
+    }
+
+    private static Type typeOf(Object typeToken) {
+        try {
+            return (Type) typeToken.getClass().getMethod("getType").invoke(typeToken);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -19,6 +19,7 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.hibernate.validator
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -53,12 +54,14 @@ public class HibernateValidatorPlugin {
         extracted(ctClass, classPool, "BeanMetaDataManagerImpl");
     }
 
+    /**
+     * 访问缓存前比较重定义代数，只清除期间重定义过的类（及其子类）的元数据。子类的元数据包含父类和接口的约束，所以子类也要清除
+     */
     private static void extracted(CtClass ctClass, ClassPool classPool, String className) {
         try {
             CtMethod getBeanMetaData = ctClass.getDeclaredMethod("getBeanMetaData", new CtClass[]{classPool.get("java.lang.Class")});
-            getBeanMetaData.insertBefore("{" +
-                    "   beanMetaDataCache.clear();" +
-                    "}");
+            ClassRedefinitionSyncHelper.addSyncMethod(ctClass, false, ClassRedefinitionSyncHelper.EVICT_SUBCLASSES, new String[]{"beanMetaDataCache"});
+            getBeanMetaData.insertBefore(ClassRedefinitionSyncHelper.SYNC_METHOD + "();");
             logger.info("patch HibernateValidator {} success", className);
         } catch (Exception ignore) {
 
@@ -19,13 +19,22 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.hutool;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtField;
 import javassist.CtMethod;
 import javassist.NotFoundException;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionSyncHelper.SYNC_METHOD;
+
 /**
+ * 保留HuTool的反射缓存，访问缓存前比较重定义代数，只清除期间重定义过的类（及其子类）的缓存
+ *
  * @author future0923
  */
 @Plugin(
@@ -38,64 +47,68 @@ public class HuToolPlugin {
 
     private static final Logger logger = Logger.getLogger(HuToolPlugin.class);
 
+    /**
+     * ReflectUtil中的缓存，字段和方法缓存包含父类的结构
+     */
+    private static final String[] REFLECT_UTIL_CACHES = {"CONSTRUCTORS_CACHE", "FIELDS_CACHE", "METHODS_CACHE"};
+
     @OnClassLoadEvent(classNameRegexp = "cn.hutool.core.util.ReflectUtil")
     public static void patchReflectUtil(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
-        CtMethod getFields = ctClass.getDeclaredMethod("getFields", new CtClass[]{classPool.get("java.lang.Class")});
-        getFields.setBody("{" +
-                "   cn.hutool.core.lang.Assert.notNull($1);" +
-                "   return cn.hutool.core.util.ReflectUtil.getFieldsDirectly($1, true);" +
-                "}");
-
-        CtMethod getMethods = ctClass.getDeclaredMethod("getMethods", new CtClass[]{classPool.get("java.lang.Class")});
-        getMethods.setBody("{" +
-                "   cn.hutool.core.lang.Assert.notNull($1);" +
-                "   return cn.hutool.core.util.ReflectUtil.getMethodsDirectly($1, true, true);" +
-                "}");
-
-        CtMethod getConstructors = ctClass.getDeclaredMethod("getConstructors", new CtClass[]{classPool.get("java.lang.Class")});
-        getConstructors.setBody("{" +
-                "   cn.hutool.core.lang.Assert.notNull($1);" +
-                "   return cn.hutool.core.util.ReflectUtil.getConstructorsDirectly($1);" +
-                "}");
+        patchReflectUtilCaches(ctClass, classPool);
         logger.info("patch hutool ReflectUtil success");
     }
 
     @OnClassLoadEvent(classNameRegexp = "cn.hutool.core.bean.BeanDescCache")
     public static void patchBeanDescCache(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
-        CtMethod getFields = ctClass.getDeclaredMethod("getBeanDesc", new CtClass[]{classPool.get("java.lang.Class"), classPool.get("cn.hutool.core.lang.func.Func0")});
-        getFields.setBody("{" +
-                "return (cn.hutool.core.bean.BeanDesc) $2.callWithRuntimeException();" +
-                "}");
+        patchBeanDescCaches(ctClass, classPool, "cn.hutool.core.lang.func.Func0");
         logger.info("patch hutool BeanDescCache success");
     }
 
     @OnClassLoadEvent(classNameRegexp = "io.github.future0923.debug.tools.base.hutool.core.util.ReflectUtil")
     public static void patchDebugToolsReflectUtil(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
-        CtMethod getFields = ctClass.getDeclaredMethod("getFields", new CtClass[]{classPool.get("java.lang.Class")});
-        getFields.setBody("{" +
-                "   io.github.future0923.debug.tools.base.hutool.core.lang.Assert.notNull($1);" +
-                "   return io.github.future0923.debug.tools.base.hutool.core.util.ReflectUtil.getFieldsDirectly($1, true);" +
-                "}");
-
-        CtMethod getMethods = ctClass.getDeclaredMethod("getMethods", new CtClass[]{classPool.get("java.lang.Class")});
-        getMethods.setBody("{" +
-                "   io.github.future0923.debug.tools.base.hutool.core.lang.Assert.notNull($1);" +
-                "   return io.github.future0923.debug.tools.base.hutool.core.util.ReflectUtil.getMethodsDirectly($1, true, true);" +
-                "}");
-
-        CtMethod getConstructors = ctClass.getDeclaredMethod("getConstructors", new CtClass[]{classPool.get("java.lang.Class")});
-        getConstructors.setBody("{" +
-                "   io.github.future0923.debug.tools.base.hutool.core.lang.Assert.notNull($1);" +
-                "   return io.github.future0923.debug.tools.base.hutool.core.util.ReflectUtil.getConstructorsDirectly($1);" +
-                "}");
+        patchReflectUtilCaches(ctClass, classPool);
     }
 
     @OnClassLoadEvent(classNameRegexp = "io.github.future0923.debug.tools.base.hutool.core.bean.BeanDescCache")
     public static void patchDebugToolsBeanDescCache(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
-        CtMethod getFields = ctClass.getDeclaredMethod("getBeanDesc", new CtClass[]{classPool.get("java.lang.Class"), classPool.get("io.github.future0923.debug.tools.base.hutool.core.lang.func.Func0")});
-        getFields.setBody("{" +
-                "return (io.github.future0923.debug.tools.base.hutool.core.bean.BeanDesc) $2.callWithRuntimeException();" +
-                "}");
+        patchBeanDescCaches(ctClass, classPool, "io.github.future0923.debug.tools.base.hutool.core.lang.func.Func0");
+    }
+
+    private static void patchReflectUtilCaches(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
+        addSyncMethod(ctClass, classPool, true, REFLECT_UTIL_CACHES);
+        CtClass classCtClass = classPool.get("java.lang.Class");
+        for (String methodName : new String[]{"getFields", "getMethods", "getConstructors"}) {
+            ctClass.getDeclaredMethod(methodName, new CtClass[]{classCtClass}).insertBefore(SYNC_METHOD + "();");
+        }
+    }
+
+    private static void patchBeanDescCaches(CtClass ctClass, ClassPool classPool, String func0ClassName) throws NotFoundException, CannotCompileException {
+        addSyncMethod(ctClass, classPool, false, "bdCache");
+        CtMethod getBeanDesc = ctClass.getDeclaredMethod("getBeanDesc", new CtClass[]{classPool.get("java.lang.Class"), classPool.get(func0ClassName)});
+        getBeanDesc.insertBefore(SYNC_METHOD + "();");
+    }
+
+    /**
+     * 注入记录代数的字段和同步方法。5.7之前的版本缓存是SimpleCache不是Map，代数变化时直接清空
+     */
+    private static void addSyncMethod(CtClass ctClass, ClassPool classPool, boolean isStatic, String... cacheFields) throws NotFoundException, CannotCompileException {
+        CtClass mapCtClass = classPool.get("java.util.Map");
+        List<String> maps = new ArrayList<>();
+        List<String> clears = new ArrayList<>();
+        for (String cacheField : cacheFields) {
+            CtField field;
+            try {
+                field = ctClass.getDeclaredField(cacheField);
+            } catch (NotFoundException e) {
+                continue;
+            }
+            if (field.getType().subtypeOf(mapCtClass)) {
+                maps.add(cacheField);
+            } else {
+                clears.add(cacheField + ".clear();");
+            }
+        }
+        ClassRedefinitionSyncHelper.addSyncMethod(ctClass, isStatic, ClassRedefinitionSyncHelper.EVICT_SUBCLASSES, maps.toArray(new String[0]), clears.toArray(new String[0]));
     }
 
 }
@@ -16,14 +16,20 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.plugin.jackson;
 
+import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Init;
 import io.github.future0923.debug.tools.hotswap.core.annotation.LoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
 import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
-import javassist.CannotCompileException;
-import javassist.NotFoundException;
 import io.github.future0923.debug.tools.hotswap.core.plugin.jackson.command.JacksonReloadCommand;
+import javassist.CannotCompileException;
+import javassist.CtClass;
+import javassist.CtConstructor;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * @author future0923
@@ -35,20 +41,98 @@ import io.github.future0923.debug.tools.hotswap.core.plugin.jackson.command.Jack
 )
 public class JacksonPlugin {
 
+    private static final Logger logger = Logger.getLogger(JacksonPlugin.class);
+
     @Init
     static Scheduler scheduler;
 
-    private static boolean isJacksonEnv = false;
+    /**
+     * 构造时记录的ObjectMapper实例，弱引用不影响回收
+     */
+    private static final Set<Object> objectMappers = weakSet();
+
+    /**
+     * 构造时记录的DeserializerCache实例
+     */
+    private static final Set<Object> deserializerCaches = weakSet();
+
+    /**
+     * 构造时记录的SerializerCache实例
+     */
+    private static final Set<Object> serializerCaches = weakSet();
 
     @OnClassLoadEvent(classNameRegexp = "com.fasterxml.jackson.databind.ObjectMapper")
-    public static void register(ClassLoader classLoader) throws NotFoundException, CannotCompileException {
-        isJacksonEnv = true;
+    public static void patchObjectMapper(CtClass ctClass) throws CannotCompileException {
+        registerOnConstruct(ctClass, "registerObjectMapper");
+        logger.info("patch jackson ObjectMapper success");
+    }
+
+    @OnClassLoadEvent(classNameRegexp = "com.fasterxml.jackson.databind.deser.DeserializerCache")
+    public static void patchDeserializerCache(CtClass ctClass) throws CannotCompileException {
+        registerOnConstruct(ctClass, "registerDeserializerCache");
+        logger.info("patch jackson DeserializerCache success");
+    }
+
+    @OnClassLoadEvent(classNameRegexp = "com.fasterxml.jackson.databind.ser.SerializerCache")
+    public static void patchSerializerCache(CtClass ctClass) throws CannotCompileException {
+        registerOnConstruct(ctClass, "registerSerializerCache");
+        logger.info("patch jackson SerializerCache success");
+    }
+
+    /**
+     * 构造完成后记录实例，调用this(...)的构造器由被调用的构造器记录
+     */
+    private static void registerOnConstruct(CtClass ctClass, String registerMethod) throws CannotCompileException {
+        for (CtConstructor constructor : ctClass.getDeclaredConstructors()) {
+            if (constructor.callsSuper()) {
+                constructor.insertAfter(JacksonPlugin.class.getName() + "." + registerMethod + "(this);");
+            }
+        }
+    }
+
+    public static void registerObjectMapper(Object objectMapper) {
+        objectMappers.add(objectMapper);
     }
 
+    public static void registerDeserializerCache(Object deserializerCache) {
+        deserializerCaches.add(deserializerCache);
+    }
+
+    public static void registerSerializerCache(Object serializerCache) {
+        serializerCaches.add(serializerCache);
+    }
+
+    public static Object[] getObjectMappers() {
+        return snapshot(objectMappers);
+    }
+
+    public static Object[] getDeserializerCaches() {
+        return snapshot(deserializerCaches);
+    }
+
+    public static Object[] getSerializerCaches() {
+        return snapshot(serializerCaches);
+    }
+
+    /**
+     * 同一时间窗口内重定义的类合并为一个命令执行
+     */
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE)
-    public static void redefineClass(final Class<?> clazz, final ClassLoader appClassLoader) {
-        if (isJacksonEnv) {
-            scheduler.scheduleCommand(new JacksonReloadCommand(clazz, appClassLoader), 1000);
+    public static void redefineClass(final Class<?> clazz) {
+        if (objectMappers.isEmpty() && deserializerCaches.isEmpty() && serializerCaches.isEmpty()) {
+            return;
+        }
+        // 命令之间都相等，正在执行时等待结束后再执行，避免本批次被跳过
+        scheduler.scheduleCommand(new JacksonReloadCommand(clazz), 1000, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+    }
+
+    private static Set<Object> weakSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    }
+
+    private static Object[] snapshot(Set<Object> instances) {
+        synchronized (instances) {
+            return instances.toArray();
         }
     }
 }
@@ -18,13 +18,24 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.jackson.command;
 
 import io.github.future0923.debug.tools.base.hutool.core.util.ReflectUtil;
 import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
 import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
+import io.github.future0923.debug.tools.hotswap.core.plugin.jackson.JacksonPlugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 import io.github.future0923.debug.tools.hotswap.core.util.ReflectionHelper;
-import io.github.future0923.debug.tools.vm.JvmToolsUtils;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * 清除Jackson中重定义类的序列化器、反序列化器缓存
+ * <p>
+ * 同一时间窗口内重定义的类合并为一个命令，只清除引用了这些类（类本身、泛型参数或字段类型）的缓存
+ *
  * @author future0923
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
@@ -32,70 +43,156 @@ public class JacksonReloadCommand extends MergeableCommand {
 
     private static final Logger logger = Logger.getLogger(JacksonReloadCommand.class);
 
-    private final Class<?> clazz;
+    private final Set<Class<?>> classes = new LinkedHashSet<>();
 
-    private final ClassLoader appClassLoader;
+    public JacksonReloadCommand(Class<?> clazz) {
+        this.classes.add(clazz);
+    }
 
-    public JacksonReloadCommand(Class<?> clazz, ClassLoader appClassLoader) {
-        this.clazz = clazz;
-        this.appClassLoader = appClassLoader;
+    @Override
+    public Command merge(Command other) {
+        if (other instanceof JacksonReloadCommand) {
+            classes.addAll(((JacksonReloadCommand) other).classes);
+        }
+        return this;
     }
 
     @Override
     public void executeCommand() {
-        Class<?> objectMapperClass;
-        try {
-            objectMapperClass = appClassLoader.loadClass("com.fasterxml.jackson.databind.ObjectMapper");
-        } catch (ClassNotFoundException e) {
-            return;
+        List<Class<?>> redefined = new ArrayList<>(classes);
+        int evicted = 0;
+        for (Object objectMapper : JacksonPlugin.getObjectMappers()) {
+            evicted += evict(getField(objectMapper, "_rootDeserializers"), redefined);
         }
-        Class deserializerCacheClass;
-        try {
-            deserializerCacheClass = appClassLoader.loadClass("com.fasterxml.jackson.databind.deser.DeserializerCache");
-        } catch (ClassNotFoundException e) {
-            return;
+        for (Object deserializerCache : JacksonPlugin.getDeserializerCaches()) {
+            Object cachedDeserializers = getField(deserializerCache, "_cachedDeserializers");
+            if (asMap(cachedDeserializers) == null) {
+                // 自定义的LookupCache无法遍历，全部清除
+                ReflectUtil.invoke(deserializerCache, "flushCachedDeserializers");
+            } else {
+                evicted += evict(cachedDeserializers, redefined);
+            }
         }
-        Class serializerCacheClass;
-        try {
-            serializerCacheClass = appClassLoader.loadClass("com.fasterxml.jackson.databind.ser.SerializerCache");
-        } catch (ClassNotFoundException e) {
-            return;
+        for (Object serializerCache : JacksonPlugin.getSerializerCaches()) {
+            Object sharedMap = getField(serializerCache, "_sharedMap");
+            if (asMap(sharedMap) == null) {
+                ReflectUtil.invoke(serializerCache, "flush");
+                continue;
+            }
+            // 低版本_sharedMap是HashMap，由SerializerCache加锁
+            synchronized (serializerCache) {
+                evicted += evict(sharedMap, redefined);
+            }
+            // 只读快照在下次获取时重新生成
+            Object readOnlyMap = getField(serializerCache, "_readOnlyMap");
+            if (readOnlyMap instanceof AtomicReference) {
+                ((AtomicReference) readOnlyMap).set(null);
+            }
         }
-        Object[] objectMappers = JvmToolsUtils.getInstances(objectMapperClass);
-        if (objectMappers == null || objectMappers.length == 0) {
-            return;
+        if (evicted > 0) {
+            for (Class<?> clazz : classes) {
+                logger.reload("Class '{}' has been reloaded.", clazz.getName());
+            }
         }
-        Object javaType;
-        try {
-            Object ob = objectMapperClass.getConstructor().newInstance();
-            javaType = ReflectUtil.invoke(ob, "constructType", clazz);
-        } catch (Exception e) {
-            javaType = ReflectUtil.invoke(objectMappers[0], "constructType", clazz);
+        logger.debug("evict {} jackson cache entries for {}", evicted, classes);
+    }
+
+    /**
+     * 清除缓存中引用了重定义类的条目
+     *
+     * @return 清除的条目数
+     */
+    private static int evict(Object cache, List<Class<?>> redefined) {
+        Map map = asMap(cache);
+        if (map == null) {
+            return 0;
         }
-        boolean changed = false;
-        for (Object objectMapper : objectMappers) {
-            Map _rootDeserializers = (Map) ReflectionHelper.getNoException(objectMapper, objectMapperClass, "_rootDeserializers");
-            if (_rootDeserializers != null) {
-                boolean remove = _rootDeserializers.remove(javaType) != null;
-                if (!changed && remove) {
-                    changed = true;
-                }
+        int evicted = 0;
+        for (Object key : new ArrayList<>(map.keySet())) {
+            if (isStale(key, redefined)) {
+                map.remove(key);
+                evicted++;
             }
         }
-        Object[] deserializerCaches = JvmToolsUtils.getInstances(deserializerCacheClass);
-        for (Object deserializerCache : deserializerCaches) {
-            ReflectUtil.invoke(deserializerCache, "flushCachedDeserializers");
-            Map _incompleteDeserializers = (Map) ReflectionHelper.getNoException(deserializerCache, deserializerCacheClass, "_incompleteDeserializers");
-            if (_incompleteDeserializers != null) {
-                _incompleteDeserializers.remove(javaType);
+        return evicted;
+    }
+
+    /**
+     * 获取字段的值，沿父类查找。JsonMapper、XmlMapper或自定义的子类中没有声明这些字段
+     *
+     * @return 字段不存在时返回null
+     */
+    private static Object getField(Object target, String fieldName) {
+        try {
+            return ReflectionHelper.get(target, fieldName);
+        } catch (RuntimeException e) {
+            logger.trace("Field {} not found on {}", e, fieldName, target.getClass());
+            return null;
+        }
+    }
+
+    /**
+     * 缓存是Map或内部使用Map的LRUMap
+     */
+    private static Map asMap(Object cache) {
+        if (cache instanceof Map) {
+            return (Map) cache;
+        }
+        if (cache != null) {
+            Object map = getField(cache, "_map");
+            if (map instanceof Map) {
+                return (Map) map;
             }
         }
-        Object[] serializerCaches = JvmToolsUtils.getInstances(serializerCacheClass);
-        for (Object serializerCache : serializerCaches) {
-            ReflectUtil.invoke(serializerCache, "flush");
+        return null;
+    }
+
+    /**
+     * 缓存的key为JavaType或TypeKey（包含Class或JavaType）
+     */
+    private static boolean isStale(Object key, List<Class<?>> redefined) {
+        if (key == null) {
+            return false;
+        }
+        if (key instanceof Class) {
+            return ClassRedefinitionTracker.references((Class<?>) key, redefined);
         }
-        if (changed) {
-            logger.reload("Class '{}' has been reloaded.", clazz.getName());
+        if ("com.fasterxml.jackson.databind.util.TypeKey".equals(key.getClass().getName())) {
+            return isStale(getField(key, "_class"), redefined)
+                    || isStale(getField(key, "_type"), redefined);
         }
+        try {
+            // JavaType
+            if (isStale(ReflectUtil.invoke(key, "getRawClass"), redefined)) {
+                return true;
+            }
+            int count = ReflectUtil.invoke(key, "containedTypeCount");
+            for (int i = 0; i < count; i++) {
+                if (isStale(ReflectUtil.invoke(key, "containedType", i), redefined)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return JacksonReloadCommand.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "JacksonReloadCommand{" +
+                "classes=" + classes +
+                '}';
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.plugin.jackson.command;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.github.future0923.debug.tools.hotswap.core.plugin.jackson.JacksonPlugin;
+import io.github.future0923.debug.tools.hotswap.core.util.ReflectionHelper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link JacksonReloadCommand}要能清除ObjectMapper子类（如{@link JsonMapper}）的缓存
+ *
+ * @author future0923
+ */
+class JacksonReloadCommandTest {
+
+    @Test
+    void evictRootDeserializersOfJsonMapper() throws Exception {
+        JsonMapper mapper = JsonMapper.builder().build();
+        JacksonPlugin.registerObjectMapper(mapper);
+        mapper.readValue("{\"name\":\"a\"}", Redefined.class);
+        mapper.readValue("{\"name\":\"b\"}", Unchanged.class);
+        Map<?, ?> rootDeserializers = (Map<?, ?>) ReflectionHelper.get(mapper, ObjectMapper.class, "_rootDeserializers");
+        JavaType redefinedType = mapper.constructType(Redefined.class);
+        JavaType unchangedType = mapper.constructType(Unchanged.class);
+        assertTrue(rootDeserializers.containsKey(redefinedType));
+
+        new JacksonReloadCommand(Redefined.class).executeCommand();
+
+        assertFalse(rootDeserializers.containsKey(redefinedType));
+        assertTrue(rootDeserializers.containsKey(unchangedType));
+    }
+
+    public static class Redefined {
+
+        public String name;
+    }
+
+    public static class Unchanged {
+
+        public String name;
+    }
+}
@@ -21,6 +21,7 @@ import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.LoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.OnClassLoadEvent;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Plugin;
+import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -31,13 +32,10 @@ import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib.CglibP
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib.GeneratorParametersTransformer;
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib.GeneratorParams;
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.utils.ProxyClassSignatureHelper;
-import io.github.future0923.debug.tools.hotswap.core.util.ReflectionHelper;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.ClassLoaderHelper;
 import io.github.future0923.debug.tools.hotswap.core.watch.WatcherFactory;
 
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * @author future0923
@@ -60,41 +58,27 @@ public class ProxyPlugin {
      */
     public static boolean reloadFlag = false;
 
-    private static final Set<String> proxyRedefiningMap = new HashSet<>();
-
     @OnClassLoadEvent(classNameRegexp = "(jdk.proxy\\d+.\\$Proxy.*)|(com.sun.proxy.\\$Proxy.*)", events = LoadEvent.REDEFINE, skipSynthetic = false)
     public static void transformJavaProxy(final Class<?> classBeingRedefined, final ClassLoader classLoader) {
         if (ProjectConstants.DEBUG) {
             LOGGER.info("redefine class {}", classBeingRedefined.getName());
         }
-        // 在这个方法中无法直接重新定义代理（并返回新的代理类字节码），因为类加载器中包含了代理接口的旧定义。因此，在DCEVM中重新定义代理接口后，代理是在延迟命令中定义的（经过一些延迟）。
-        Object proxyCache = ReflectionHelper.getNoException(null, java.lang.reflect.Proxy.class, "proxyCache");
-        if (proxyCache != null) {
-            try {
-                ReflectionHelper.invoke(proxyCache, proxyCache.getClass().getSuperclass(), "removeAll", new Class[] { ClassLoader.class }, classLoader);
-            } catch (IllegalArgumentException e) {
-                LOGGER.error("Reflection proxy cache flush failed. {}", e.getMessage());
-            }
-        }
-
-        if (!ClassLoaderHelper.isClassLoaderStarted(classLoader)) {
-            return;
-        }
-
         final String className = classBeingRedefined.getName();
 
-        if (proxyRedefiningMap.contains(className)) {
-            proxyRedefiningMap.remove(className);
+        // ReloadJavaProxyCommand重定义代理类时触发的事件
+        if (ReloadJavaProxyCommand.isRedefiningProxy(className)) {
             return;
         }
 
-        proxyRedefiningMap.add(className);
-
-        final Map<String, String> signatureMapOrig = ProxyClassSignatureHelper.getNonSyntheticSignatureMap(classBeingRedefined);
-
-        reloadFlag = true;
+        // 在这个方法中无法直接重新定义代理（并返回新的代理类字节码），因为类加载器中包含了代理接口的旧定义。因此，在DCEVM中重新定义代理接口后，代理是在延迟命令中定义的（经过一些延迟）。
+        // 同一窗口内的代理类合并为一个命令，proxyCache每个类加载器只清除一次，正在执行时等待结束后再执行
+        Map<String, String> signatureMapOrig = null;
+        if (ClassLoaderHelper.isClassLoaderStarted(classLoader)) {
+            signatureMapOrig = ProxyClassSignatureHelper.getNonSyntheticSignatureMap(classBeingRedefined);
+            reloadFlag = true;
+        }
 
-        PluginManager.getInstance().getScheduler().scheduleCommand(new ReloadJavaProxyCommand(classLoader, className, signatureMapOrig), 50);
+        PluginManager.getInstance().getScheduler().scheduleCommand(new ReloadJavaProxyCommand(classLoader, className, signatureMapOrig), 50, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
     }
 
     @OnClassLoadEvent(classNameRegexp = ".*", events = LoadEvent.REDEFINE, skipSynthetic = false)
@@ -105,7 +89,7 @@ public class ProxyPlugin {
         if (ProjectConstants.DEBUG) {
             LOGGER.info("redefine class {}", classBeingRedefined.getName());
         }
-        GeneratorParams generatorParams = GeneratorParametersTransformer.getGeneratorParams(loader, classBeingRedefined.getName());
+        GeneratorParams generatorParams = GeneratorParametersTransformer.getGeneratorParams(loader, classBeingRedefined);
 
         if (generatorParams == null) {
             return classfileBuffer;
@@ -115,7 +99,7 @@ public class ProxyPlugin {
             return classfileBuffer;
         }
 
-        loader.loadClass("java.beans.Introspector").getMethod("flushCaches").invoke(null);
+        // Introspector缓存由JdkPlugin在重定义完成后按类批量清除
         if (generatorParams.getParam().getClass().getName().endsWith(".Enhancer")) {
             try {
                 return CglibEnhancerProxyTransformer.transform(classBeingRedefined, cp, classfileBuffer, loader, generatorParams);
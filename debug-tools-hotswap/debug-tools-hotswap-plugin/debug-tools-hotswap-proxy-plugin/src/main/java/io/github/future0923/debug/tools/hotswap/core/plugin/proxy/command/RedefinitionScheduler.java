@@ -16,18 +16,40 @@
  */
 package io.github.future0923.debug.tools.hotswap.core.plugin.proxy.command;
 
+import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.Init;
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
+import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
+import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
+import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.api.MultistepProxyTransformer;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
+import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureComparerHelper;
 
 import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 为 MultistepProxyTransformer 安排一个新的重定义事件。
+ * <p>
+ * 窗口内的重定义合并为一个命令，由调度器执行一次redefineClasses，耗时记录在{@link HotswapProfiler#REDEFINE}
  *
  * @author future0923
  */
-public class RedefinitionScheduler implements Runnable{
+public class RedefinitionScheduler extends MergeableCommand {
+
+    private static final Logger LOGGER = Logger.getLogger(RedefinitionScheduler.class);
+
+    /**
+     * 合并窗口（毫秒）
+     */
+    private static final int REDEFINITION_WINDOW = 20;
 
     private final MultistepProxyTransformer transformer;
 
@@ -39,16 +61,56 @@ public class RedefinitionScheduler implements Runnable{
     }
 
     @Override
-    public void run() {
+    public void executeCommand() {
+        // 同一个类保留最后一次投递的字节码
+        Map<Class<?>, MultistepProxyTransformer> transformers = new LinkedHashMap<>();
+        transformers.put(transformer.getClassBeingRedefined(), transformer);
+        for (Command command : getMergedCommands()) {
+            MultistepProxyTransformer merged = ((RedefinitionScheduler) command).transformer;
+            transformers.put(merged.getClassBeingRedefined(), merged);
+        }
+        List<ClassDefinition> definitions = new ArrayList<>(transformers.size());
+        for (MultistepProxyTransformer multistepProxyTransformer : transformers.values()) {
+            definitions.add(new ClassDefinition(multistepProxyTransformer.getClassBeingRedefined(), multistepProxyTransformer.getClassfileBuffer()));
+        }
+        long start = System.nanoTime();
         try {
-            instrumentation.redefineClasses(new ClassDefinition(transformer.getClassBeingRedefined(), transformer.getClassfileBuffer()));
+            instrumentation.redefineClasses(definitions.toArray(new ClassDefinition[0]));
+            for (Class<?> clazz : transformers.keySet()) {
+                ClassSignatureComparerHelper.invalidate(clazz);
+                ClassRedefinitionTracker.redefinitionCompleted(clazz);
+            }
         } catch (Throwable t) {
-            transformer.removeClassState();
-            throw new RuntimeException(t);
+            for (MultistepProxyTransformer multistepProxyTransformer : transformers.values()) {
+                multistepProxyTransformer.removeClassState();
+            }
+            LOGGER.error("Error redefining {} proxy classes", t, transformers.size());
+            return;
+        } finally {
+            HotswapProfiler.recordNanos(HotswapProfiler.REDEFINE, RedefinitionScheduler.class.getName(), System.nanoTime() - start);
         }
+        LOGGER.debug("Redefined {} proxy classes in {}ms", transformers.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
     }
 
     public static void schedule(MultistepProxyTransformer multistepProxyTransformer) {
-        new Thread(new RedefinitionScheduler(multistepProxyTransformer)).start();
+        // 正在执行时投递的（如第三步）等本次结束后再执行
+        PluginManager.getInstance().getScheduler().scheduleCommand(new RedefinitionScheduler(multistepProxyTransformer),
+                REDEFINITION_WINDOW, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return RedefinitionScheduler.class.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RedefinitionScheduler{" + "class=" + transformer.getClassBeingRedefined().getName() + '}';
     }
 }
@@ -22,104 +22,204 @@ import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.ProxyPlugin;
 import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.utils.ProxyClassSignatureHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapThreadPool;
+import io.github.future0923.debug.tools.hotswap.core.util.ReflectionHelper;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
- * 将后续的代理重新定义命令连接在一起，并保证执行顺序。
+ * 重新生成Java代理类
+ * <p>
+ * 同一时间窗口内的代理类合并为一个命令，在有界的专用线程池中并行生成字节码后在一次{@link PluginManager#hotswap(Map)}中重定义
+ *
  * @author future0923
  */
 public class ReloadJavaProxyCommand extends MergeableCommand {
 
     private static final Logger LOGGER = Logger.getLogger(ReloadJavaProxyCommand.class);
 
+    /**
+     * 超过该数量时并行生成代理类字节码
+     */
+    private static final int PARALLEL_GENERATE_THRESHOLD = 4;
+
+    /**
+     * 生成代理类字节码的线程池，空闲时线程会回收
+     */
+    private static final ExecutorService generateExecutor = HotswapThreadPool.create("DebugTools-ProxyGenerator-");
+
+    /**
+     * {@link java.lang.reflect.Proxy}中按ClassLoader缓存代理类的proxyCache（JDK9+）
+     */
+    private static final Object proxyCache = ReflectionHelper.getNoException(null, java.lang.reflect.Proxy.class, "proxyCache");
+
+    /**
+     * 正在由本命令重定义的代理类，重定义触发的REDEFINE事件需要跳过
+     */
+    private static final Set<String> redefiningProxies = ConcurrentHashMap.newKeySet();
+
     private final ClassLoader classLoader;
     private final String className;
     private final Map<String, String> signatureMapOrig;
 
+    /**
+     * @param signatureMapOrig 重定义前的签名，为null时只清除proxyCache
+     */
     public ReloadJavaProxyCommand(ClassLoader classLoader, String className, Map<String, String> signatureMapOrig) {
         this.classLoader = classLoader;
         this.className = className;
         this.signatureMapOrig = signatureMapOrig;
     }
 
+    /**
+     * 是否为本命令重定义代理类触发的事件，是则消费掉该标记
+     */
+    public static boolean isRedefiningProxy(String className) {
+        return redefiningProxies.remove(className);
+    }
+
     @Override
     public void executeCommand() {
         try {
-            executeSingleCommand();
-            List<Command> commands = new ArrayList<>(getMergedCommands());
-            for (Command command: commands) {
-                ((ReloadJavaProxyCommand) command).executeSingleCommand();
+            List<ReloadJavaProxyCommand> commands = new ArrayList<>();
+            commands.add(this);
+            for (Command command : getMergedCommands()) {
+                commands.add((ReloadJavaProxyCommand) command);
             }
+            reload(commands);
         } finally {
             ProxyPlugin.reloadFlag = false;
         }
     }
 
-    public void executeSingleCommand() {
+    private static void reload(List<ReloadJavaProxyCommand> commands) {
+        Set<ClassLoader> flushed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<ClassLoader, Set<String>> seen = new IdentityHashMap<>();
+        List<ReloadJavaProxyCommand> proxies = new ArrayList<>();
+        for (ReloadJavaProxyCommand command : commands) {
+            if (flushed.add(command.classLoader)) {
+                flushProxyCache(command.classLoader);
+            }
+            // 同一个代理类保留最早的签名
+            if (command.signatureMapOrig != null && seen.computeIfAbsent(command.classLoader, k -> new HashSet<>()).add(command.className)) {
+                proxies.add(command);
+            }
+        }
+        if (proxies.isEmpty()) {
+            return;
+        }
+        Map<Class<?>, byte[]> reloadMap = generate(proxies);
+        if (reloadMap.isEmpty()) {
+            return;
+        }
+        List<String> classNames = new ArrayList<>();
+        for (Class<?> clazz : reloadMap.keySet()) {
+            classNames.add(clazz.getName());
+        }
+        redefiningProxies.addAll(classNames);
+        try {
+            PluginManager.getInstance().hotswap(reloadMap);
+            LOGGER.reload("Classes '{}' have been reloaded.", classNames);
+        } catch (Exception e) {
+            LOGGER.error("Error redefining java proxies {}", e, classNames);
+        } finally {
+            redefiningProxies.removeAll(classNames);
+        }
+    }
+
+    /**
+     * 生成有变化的代理类字节码，数量较多时并行生成
+     */
+    private static Map<Class<?>, byte[]> generate(List<ReloadJavaProxyCommand> proxies) {
+        Map<Class<?>, byte[]> reloadMap = new HashMap<>();
+        if (proxies.size() <= PARALLEL_GENERATE_THRESHOLD) {
+            for (ReloadJavaProxyCommand proxy : proxies) {
+                putGenerated(reloadMap, proxy.generateIfChanged());
+            }
+            return reloadMap;
+        }
+        List<Future<Map.Entry<Class<?>, byte[]>>> futures = new ArrayList<>(proxies.size());
+        for (ReloadJavaProxyCommand proxy : proxies) {
+            futures.add(generateExecutor.submit(proxy::generateIfChanged));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                putGenerated(reloadMap, futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted while generating java proxies");
+                for (Future<?> future : futures) {
+                    future.cancel(true);
+                }
+                return reloadMap;
+            } catch (ExecutionException e) {
+                LOGGER.error("Error generating java proxy {}", e.getCause(), proxies.get(i).className);
+            }
+        }
+        return reloadMap;
+    }
+
+    private static void putGenerated(Map<Class<?>, byte[]> reloadMap, Map.Entry<Class<?>, byte[]> generated) {
+        if (generated != null) {
+            reloadMap.put(generated.getKey(), generated.getValue());
+        }
+    }
+
+    /**
+     * 签名有变化或有接口方法未实现时生成新的代理类字节码
+     */
+    private Map.Entry<Class<?>, byte[]> generateIfChanged() {
         try {
             Class<?> clazz = classLoader.loadClass(className);
             Map<String, String> signatureMap = ProxyClassSignatureHelper.getNonSyntheticSignatureMap(clazz);
-            LOGGER.debug("executeSingleCommand class:{}, signature equals:{}", className, signatureMap.equals(signatureMapOrig));
-            if (!signatureMap.equals(signatureMapOrig) || !isImplementInterface(signatureMap, clazz)) {
-                byte[] generateProxyClass = ProxyGenerator.generateProxyClass(className, clazz.getInterfaces());
-                Map<Class<?>, byte[]> reloadMap = new HashMap<>();
-                reloadMap.put(clazz, generateProxyClass);
-                PluginManager.getInstance().hotswap(reloadMap);
-                LOGGER.reload("Class '{}' has been reloaded.", className);
+            boolean signatureEquals = signatureMap.equals(signatureMapOrig);
+            LOGGER.debug("generateIfChanged class:{}, signature equals:{}", className, signatureEquals);
+            if (!signatureEquals || !ProxyClassSignatureHelper.isImplementInterfaces(clazz)) {
+                return new AbstractMap.SimpleEntry<>(clazz, ProxyGenerator.generateProxyClass(className, clazz.getInterfaces()));
             }
         } catch (ClassNotFoundException e) {
             LOGGER.error("Error redefining java proxy {}", e, className);
         }
+        return null;
     }
 
-    /**
-     * 接口的所有方法是否都已实现
-     */
-    private boolean isImplementInterface(Map<String, String> signatureMap, Class<?> clazz) {
-        String clazzSignature;
-        try {
-            clazzSignature = ProxyClassSignatureHelper.getJavaClassSignature(clazz).replaceAll("final ", "");
-            LOGGER.debug("clazzSignature: {}", clazzSignature);
-        } catch (Exception e) {
-            LOGGER.error("Error getJavaClassSignature {}", clazz, e);
-            return true;
+    private static void flushProxyCache(ClassLoader classLoader) {
+        if (proxyCache == null) {
+            return;
         }
-        for (Map.Entry<String, String> entry : signatureMap.entrySet()) {
-            if(clazzSignature.contains(entry.getKey()) && entry.getValue().contains("public abstract")) {
-                LOGGER.debug("{} Signature: {}", entry.getKey(), entry.getValue());
-                String[] methodSignatures = entry.getValue().replaceAll("abstract ", "").split(";");
-                for (String methodSignature : methodSignatures) {
-                    if(!clazzSignature.contains(methodSignature)) {
-                        return false;
-                    }
-                }
-            }
+        try {
+            ReflectionHelper.invoke(proxyCache, proxyCache.getClass().getSuperclass(), "removeAll", new Class[] { ClassLoader.class }, classLoader);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("Reflection proxy cache flush failed. {}", e.getMessage());
         }
-        return true;
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        ReloadJavaProxyCommand that = (ReloadJavaProxyCommand) o;
-
-        return classLoader.equals(that.classLoader);
+        return o != null && getClass() == o.getClass();
     }
 
     @Override
     public int hashCode() {
-        return classLoader.hashCode();
+        return ReloadJavaProxyCommand.class.hashCode();
     }
 
     @Override
     public String toString() {
-        return "ReloadJavaProxyCommand{" + "classLoader=" + classLoader + '}';
+        return "ReloadJavaProxyCommand{" + "classLoader=" + classLoader + ", className=" + className + '}';
     }
 
 }
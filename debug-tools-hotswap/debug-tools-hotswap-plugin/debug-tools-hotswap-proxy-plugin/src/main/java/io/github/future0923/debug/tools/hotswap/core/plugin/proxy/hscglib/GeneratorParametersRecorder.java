@@ -17,22 +17,48 @@
 package io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
+import io.github.future0923.debug.tools.hotswap.core.plugin.proxy.ProxyPlugin;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * 记录Cglib生成代理类时的参数，参数挂在生成的Class上，随生成类一起回收
+ *
  * @author future0923
  */
 public class GeneratorParametersRecorder {
 
     private static final Logger LOGGER = Logger.getLogger(GeneratorParametersRecorder.class);
 
+    /**
+     * 单个线程最多暂存的未定义类参数数量，超过时丢弃（生成后未define的情况）
+     */
+    private static final int MAX_PENDING = 16;
+
     // 在 App ClassLoader 中使用
-    public static ConcurrentHashMap<String, GeneratorParams> generatorParams = new ConcurrentHashMap<>();
+    public static final ClassValue<AtomicReference<GeneratorParams>> generatorParams = new ClassValue<AtomicReference<GeneratorParams>>() {
+        @Override
+        protected AtomicReference<GeneratorParams> computeValue(Class<?> type) {
+            return new AtomicReference<>();
+        }
+    };
 
+    /**
+     * generate返回字节码到defineClass之间暂存的参数，key为类名
+     */
+    private static final ThreadLocal<Map<String, GeneratorParams>> pendingParams = ThreadLocal.withInitial(HashMap::new);
 
+    /**
+     * ClassLoader是否启用了代理重载
+     */
+    private static final Map<ClassLoader, Boolean> recordingEnabled = new WeakHashMap<>();
 
     /**
      *
@@ -45,9 +71,15 @@ public class GeneratorParametersRecorder {
      */
     public static void register(Object generatorStrategy, Object classGenerator,
                                 byte[] bytes) {
+        if (bytes == null || classGenerator == null || !isRecordingEnabled(classGenerator.getClass().getClassLoader())) {
+            return;
+        }
         try {
-            generatorParams.putIfAbsent(getClassName(bytes),
-                    new GeneratorParams(generatorStrategy, classGenerator));
+            Map<String, GeneratorParams> pending = pendingParams.get();
+            if (pending.size() >= MAX_PENDING) {
+                pending.clear();
+            }
+            pending.put(getClassName(bytes), new GeneratorParams(generatorStrategy, classGenerator));
         } catch (Exception e) {
             LOGGER.error(
                     "Error saving parameters of a creation of a Cglib proxy",
@@ -56,30 +88,84 @@ public class GeneratorParametersRecorder {
     }
 
     /**
-     * http://stackoverflow.com/questions/1649674/resolve-class-name-from-bytecode
+     * Cglib ReflectUtils.defineClass 之后调用，将暂存的参数挂到生成的Class上
      */
-    public static String getClassName(byte[] bytes) throws Exception {
-        DataInputStream dis = new DataInputStream(
-                new ByteArrayInputStream(bytes));
-        dis.readLong(); // skip header and class version
-        int cpcnt = (dis.readShort() & 0xffff) - 1;
-        int[] classes = new int[cpcnt];
-        String[] strings = new String[cpcnt];
-        for (int i = 0; i < cpcnt; i++) {
-            int t = dis.read();
-            if (t == 7)
-                classes[i] = dis.readShort() & 0xffff;
-            else if (t == 1)
-                strings[i] = dis.readUTF();
-            else if (t == 5 || t == 6) {
-                dis.readLong();
-                i++;
-            } else if (t == 8)
-                dis.readShort();
-            else
-                dis.readInt();
+    public static void defined(Class<?> generatedClass) {
+        if (generatedClass == null) {
+            return;
         }
-        dis.readShort(); // skip access flags
-        return strings[classes[(dis.readShort() & 0xffff) - 1] - 1].replace('/', '.');
+        Map<String, GeneratorParams> pending = pendingParams.get();
+        if (pending.isEmpty()) {
+            return;
+        }
+        GeneratorParams params = pending.remove(generatedClass.getName());
+        if (params != null) {
+            generatorParams.get(generatedClass).set(params);
+        }
+    }
+
+    /**
+     * 只在Proxy插件未被禁用的ClassLoader中记录
+     */
+    private static boolean isRecordingEnabled(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return false;
+        }
+        synchronized (recordingEnabled) {
+            Boolean enabled = recordingEnabled.get(classLoader);
+            if (enabled == null) {
+                try {
+                    enabled = !PluginManager.getInstance().getPluginConfiguration(classLoader).isDisabledPlugin(ProxyPlugin.class);
+                } catch (Exception e) {
+                    LOGGER.debug("Unable to resolve proxy plugin configuration for {}", classLoader);
+                    enabled = Boolean.TRUE;
+                }
+                recordingEnabled.put(classLoader, enabled);
+            }
+            return enabled;
+        }
+    }
+
+    /**
+     * 跳过常量池只解码this_class指向的名称
+     */
+    public static String getClassName(byte[] bytes) throws IOException {
+        int count = readUnsignedShort(bytes, 8);
+        int[] offsets = new int[count];
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            switch (bytes[offset]) {
+                case 1: // Utf8
+                    offset += 3 + readUnsignedShort(bytes, offset + 1);
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    offset += 9;
+                    i++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    offset += 3;
+                    break;
+                case 15: // MethodHandle
+                    offset += 4;
+                    break;
+                default:
+                    offset += 5;
+            }
+        }
+        // access_flags之后为this_class
+        int classOffset = offsets[readUnsignedShort(bytes, offset + 2)];
+        int nameOffset = offsets[readUnsignedShort(bytes, classOffset + 1)];
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, nameOffset + 1, bytes.length - nameOffset - 1));
+        return dis.readUTF().replace('/', '.');
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff);
     }
 }
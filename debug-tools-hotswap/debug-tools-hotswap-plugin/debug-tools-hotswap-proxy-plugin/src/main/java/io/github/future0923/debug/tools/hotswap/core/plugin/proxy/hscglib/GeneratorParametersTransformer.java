@@ -24,10 +24,10 @@ import javassist.bytecode.MethodInfo;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.ClassLoaderHelper;
 
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author future0923
@@ -36,7 +36,9 @@ public class GeneratorParametersTransformer {
 
     private static final Logger LOGGER = Logger.getLogger(GeneratorParametersTransformer.class);
 
-    private static final Map<ClassLoader, WeakReference<Map<String, Object>>> classLoaderMaps = new WeakHashMap<ClassLoader, WeakReference<Map<String, Object>>>();
+    private static final String RECORDER = "io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib.GeneratorParametersRecorder";
+
+    private static final Map<ClassLoader, WeakReference<ClassValue<?>>> classLoaderParams = new WeakHashMap<ClassLoader, WeakReference<ClassValue<?>>>();
 
     /**
      * 添加字节码生成调用参数记录功能
@@ -47,7 +49,17 @@ public class GeneratorParametersTransformer {
                 if (!Modifier.isAbstract(method.getModifiers()) && method.getName().equals("generate")
                         && method.getMethodInfo().getDescriptor().endsWith(";)[B")) {
                     cc.defrost();
-                    method.insertAfter("io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib.GeneratorParametersRecorder.register($0, $1, $_);");
+                    method.insertAfter(RECORDER + ".register($0, $1, $_);");
+                }
+            }
+        } else if (cc.getName().endsWith(".core.ReflectUtils")) {
+            // 生成的类定义后才能拿到Class，将generate时暂存的参数挂到Class上
+            for (CtMethod method : cc.getDeclaredMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) && method.getName().equals("defineClass")
+                        && method.getMethodInfo().getDescriptor().startsWith("(Ljava/lang/String;[B")
+                        && method.getMethodInfo().getDescriptor().endsWith(")Ljava/lang/Class;")) {
+                    cc.defrost();
+                    method.insertAfter(RECORDER + ".defined($_);");
                 }
             }
         }
@@ -74,29 +86,22 @@ public class GeneratorParametersTransformer {
     }
 
     /**
-     * 从类加载器中检索 GeneratorParams 映射。
+     * 从类加载器中检索 GeneratorParams 存储。
      */
-    @SuppressWarnings("unchecked")
-    private static Map<String, Object> getGeneratorParamsMap(ClassLoader loader) {
+    private static ClassValue<?> getGeneratorParamsValue(ClassLoader loader) {
         try {
-            WeakReference<Map<String, Object>> mapRef;
-            synchronized (classLoaderMaps) {
-                mapRef = classLoaderMaps.get(loader);
-                if (mapRef == null) {
+            WeakReference<ClassValue<?>> valueRef;
+            synchronized (classLoaderParams) {
+                valueRef = classLoaderParams.get(loader);
+                if (valueRef == null) {
                     if (ClassLoaderHelper.isClassLoaderStarted(loader)) {
-                        Map<String, Object> map = (Map<String, Object>) loader
-                                .loadClass(GeneratorParametersRecorder.class.getName()).getField("generatorParams")
-                                .get(null);
-                        mapRef = new WeakReference<Map<String, Object>>(map);
-                        classLoaderMaps.put(loader, mapRef);
+                        ClassValue<?> value = (ClassValue<?>) loader.loadClass(RECORDER).getField("generatorParams").get(null);
+                        valueRef = new WeakReference<ClassValue<?>>(value);
+                        classLoaderParams.put(loader, valueRef);
                     }
                 }
             }
-            Map<String, Object> map = mapRef != null ? mapRef.get() : null;
-            if (map == null) {
-                return new HashMap<>();
-            }
-            return map;
+            return valueRef != null ? valueRef.get() : null;
         } catch (IllegalArgumentException | IllegalAccessException | NoSuchFieldException | SecurityException
                  | ClassNotFoundException e) {
             LOGGER.error("Unable to access field with proxy generation parameters. Proxy redefinition failed.");
@@ -105,10 +110,14 @@ public class GeneratorParametersTransformer {
     }
 
     /**
-     * 从类加载器中检索 GeneratorParams。
+     * 从类加载器中检索生成类的 GeneratorParams。
      */
-    public static GeneratorParams getGeneratorParams(ClassLoader loader, String name) {
-        Object generatorParams = getGeneratorParamsMap(loader).get(name);
+    public static GeneratorParams getGeneratorParams(ClassLoader loader, Class<?> generatedClass) {
+        ClassValue<?> value = getGeneratorParamsValue(loader);
+        if (value == null) {
+            return null;
+        }
+        Object generatorParams = ((AtomicReference<?>) value.get(generatedClass)).get();
         if (generatorParams != null) {
             try {
                 return GeneratorParams.valueOf(generatorParams);
@@ -22,8 +22,12 @@ import javassist.CtClass;
 import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureComparerHelper;
 import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureElement;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author future0923
@@ -80,6 +84,49 @@ public class ProxyClassSignatureHelper {
         return signatureMap;
     }
 
+    /**
+     * 代理类是否实现了所有接口（包括父接口）的抽象方法，按方法名、参数、返回值比较
+     */
+    public static boolean isImplementInterfaces(Class<?> proxyClass) {
+        Set<String> implemented = new HashSet<>();
+        for (Method method : proxyClass.getDeclaredMethods()) {
+            implemented.add(getMethodKey(method));
+        }
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> interfaceClazz : proxyClass.getInterfaces()) {
+            if (!isImplementInterface(interfaceClazz, implemented, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isImplementInterface(Class<?> interfaceClazz, Set<String> implemented, Set<Class<?>> visited) {
+        if (!visited.add(interfaceClazz)) {
+            return true;
+        }
+        for (Method method : interfaceClazz.getDeclaredMethods()) {
+            if (Modifier.isAbstract(method.getModifiers()) && !implemented.contains(getMethodKey(method))) {
+                LOGGER.debug("{} method not implemented: {}", interfaceClazz.getName(), method);
+                return false;
+            }
+        }
+        for (Class<?> superInterface : interfaceClazz.getInterfaces()) {
+            if (!isImplementInterface(superInterface, implemented, visited)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getMethodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            key.append(parameterType.getName()).append(',');
+        }
+        return key.append(')').append(method.getReturnType().getName()).toString();
+    }
+
     public static boolean isPoolClassDifferent(Class<?> clazz, ClassPool cp) {
         return ClassSignatureComparerHelper.isPoolClassDifferent(clazz, cp, SIGNATURE_ELEMENTS);
     }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.plugin.proxy.hscglib;
+
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link GeneratorParametersRecorder#getClassName(byte[])}只解析常量池，结果要与类名一致
+ *
+ * @author future0923
+ */
+class GeneratorParametersRecorderTest {
+
+    @Test
+    void getClassNameOfCompiledClasses() throws IOException {
+        for (Class<?> clazz : new Class<?>[]{GeneratorParametersRecorderTest.class, Constants.class, Constants.Inner.class,
+                String.class, Long.class, java.util.concurrent.ConcurrentHashMap.class}) {
+            assertEquals(clazz.getName(), GeneratorParametersRecorder.getClassName(bytecode(clazz)));
+        }
+    }
+
+    @Test
+    void getClassNameOfGeneratedClass() throws Exception {
+        ClassPool classPool = new ClassPool(true);
+        CtClass ctClass = classPool.makeClass("com.example.Generated$$EnhancerByCGLIB$$1a2b3c");
+        // long、double常量占两个常量池位置
+        ctClass.addField(CtField.make("public static final long L = 1234567890123L;", ctClass), CtField.Initializer.constant(1234567890123L));
+        ctClass.addField(CtField.make("public static final double D = 1.5D;", ctClass), CtField.Initializer.constant(1.5D));
+        ctClass.addField(CtField.make("public static final String S = \"s\";", ctClass), CtField.Initializer.constant("s"));
+        byte[] bytes = ctClass.toBytecode();
+        ctClass.detach();
+        assertEquals("com.example.Generated$$EnhancerByCGLIB$$1a2b3c", GeneratorParametersRecorder.getClassName(bytes));
+    }
+
+    @Test
+    void getClassNameWithNonAsciiName() throws Exception {
+        CtClass ctClass = new ClassPool(true).makeClass("com.example.Ünicode中文");
+        byte[] bytes = ctClass.toBytecode();
+        ctClass.detach();
+        assertEquals("com.example.Ünicode中文", GeneratorParametersRecorder.getClassName(bytes));
+    }
+
+    private static byte[] bytecode(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            assertNotNull(in, clazz.getName());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 包含long、double、字符串常量以及lambda（MethodHandle、MethodType、InvokeDynamic）
+     */
+    static class Constants {
+
+        static final long LONG = 9_000_000_000L;
+
+        static final double DOUBLE = Math.PI;
+
+        static final float FLOAT = 1.5F;
+
+        static final String STRING = "constant";
+
+        Supplier<String> supplier() {
+            return () -> STRING + LONG + DOUBLE + FLOAT;
+        }
+
+        static class Inner {
+        }
+    }
+}
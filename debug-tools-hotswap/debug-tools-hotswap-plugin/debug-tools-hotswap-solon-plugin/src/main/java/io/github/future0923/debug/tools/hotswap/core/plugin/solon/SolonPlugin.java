@@ -134,7 +134,7 @@ public class SolonPlugin {
      * 创建对应包下变动的{@link SolonBeanClassFileTransformer}，可以处理class的redefine事件
      */
     private void registerBasePackage(final String basePackage) {
-        hotswapTransformer.registerTransformer(appClassLoader, DebugToolsStringUtils.getClassNameRegExp(basePackage), new SolonBeanClassFileTransformer(appClassLoader, scheduler, basePackage));
+        hotswapTransformer.registerTransformer(appClassLoader, DebugToolsStringUtils.getClassNameRegExp(basePackage), new SolonBeanClassFileTransformer(scheduler, basePackage));
     }
 
     /**
@@ -32,12 +32,10 @@ public class SolonBeanClassFileTransformer implements HaClassFileTransformer {
 
     private static final Logger logger = Logger.getLogger(SolonBeanClassFileTransformer.class);
 
-    private final ClassLoader appClassLoader;
     private final Scheduler scheduler;
     private final String basePackage;
 
-    public SolonBeanClassFileTransformer(ClassLoader appClassLoader, Scheduler scheduler, String basePackage) {
-        this.appClassLoader = appClassLoader;
+    public SolonBeanClassFileTransformer(Scheduler scheduler, String basePackage) {
         this.scheduler = scheduler;
         this.basePackage = basePackage;
     }
@@ -45,7 +43,7 @@ public class SolonBeanClassFileTransformer implements HaClassFileTransformer {
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
         if (classBeingRedefined != null) {
-            final ClassChangesAnalyzer analyzer = new ClassChangesAnalyzer(appClassLoader);
+            final ClassChangesAnalyzer analyzer = new ClassChangesAnalyzer();
             className = className.replace("/", ".");
             if (analyzer.isReloadNeeded(classBeingRedefined, classfileBuffer)) {
                 logger.info("watch change class event, start reloading solon bean, class name:{}", className);
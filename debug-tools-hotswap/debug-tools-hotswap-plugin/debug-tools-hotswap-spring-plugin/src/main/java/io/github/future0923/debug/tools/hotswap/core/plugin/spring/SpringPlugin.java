@@ -35,6 +35,7 @@ import io.github.future0923.debug.tools.hotswap.core.plugin.spring.patch.ClassPa
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.transformer.SpringBeanClassFileTransformer;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.transformer.SpringBeanWatchEventListener;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.patch.SpringBootClassLoaderPatcher;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
 import io.github.future0923.debug.tools.hotswap.core.util.HotswapTransformer;
 import io.github.future0923.debug.tools.hotswap.core.util.IOUtils;
 import io.github.future0923.debug.tools.hotswap.core.util.PluginManagerInvoker;
@@ -144,7 +145,7 @@ public class SpringPlugin {
      * 创建对应包下变动的{@link SpringBeanClassFileTransformer}，可以处理class的redefine事件
      */
     private void registerBasePackage(final String basePackage) {
-        hotswapTransformer.registerTransformer(appClassLoader, DebugToolsStringUtils.getClassNameRegExp(basePackage), new SpringBeanClassFileTransformer(appClassLoader, scheduler, basePackage));
+        hotswapTransformer.registerTransformer(appClassLoader, DebugToolsStringUtils.getClassNameRegExp(basePackage), new SpringBeanClassFileTransformer(scheduler, basePackage));
     }
 
     /**
@@ -189,13 +190,14 @@ public class SpringPlugin {
     }
 
     /**
-     * 当 AbstractApplicationContext refresh方法执行完成后（Spring应用上下文已经初始化完成）初始化
+     * 当 AbstractApplicationContext refresh方法执行完成后（Spring应用上下文已经初始化完成）初始化，并输出启动耗时统计
      */
     @OnClassLoadEvent(classNameRegexp = "org.springframework.context.support.AbstractApplicationContext")
     public static void patchAbstractApplicationContext(CtClass ctClass, ClassPool classPool) throws NotFoundException, CannotCompileException {
         CtMethod buildSqlSessionFactory = ctClass.getDeclaredMethod("refresh");
         buildSqlSessionFactory.insertAfter("{" +
                         ClassPathBeanDefinitionScannerAgent.class.getName() + ".initPathBeanNameMapping();" +
+                        HotswapProfiler.class.getName() + ".startupComplete();" +
                 "}");
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
+import io.github.future0923.debug.tools.hotswap.core.command.MergeableCommand;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量刷新SpringBean命令，同一类加载器的{@link ClassPathBeanRefreshCommand}合并为一个，
+ * 通过{@link ClassPathBeanDefinitionScannerAgent#refreshClasses(String[], byte[][], String[])}一次刷新
+ */
+public class ClassPathBeanBatchRefreshCommand extends MergeableCommand {
+
+    private static final Logger logger = Logger.getLogger(ClassPathBeanBatchRefreshCommand.class);
+
+    private final ClassLoader appClassLoader;
+
+    /**
+     * 要刷新的类，同一个类的命令合并
+     */
+    private final Map<String, ClassPathBeanRefreshCommand> commands = new LinkedHashMap<>();
+
+    public ClassPathBeanBatchRefreshCommand(ClassPathBeanRefreshCommand command) {
+        this.appClassLoader = command.getAppClassLoader();
+        add(command);
+    }
+
+    @Override
+    public Command merge(Command other) {
+        if (other instanceof ClassPathBeanBatchRefreshCommand) {
+            for (ClassPathBeanRefreshCommand command : ((ClassPathBeanBatchRefreshCommand) other).commands.values()) {
+                add(command);
+            }
+        }
+        return this;
+    }
+
+    private void add(ClassPathBeanRefreshCommand command) {
+        ClassPathBeanRefreshCommand existing = commands.get(command.getClassName());
+        if (existing == null) {
+            commands.put(command.getClassName(), command);
+        } else {
+            existing.merge(command);
+        }
+    }
+
+    @Override
+    public void executeCommand() {
+        List<String> basePackages = new ArrayList<>();
+        List<byte[]> classDefinitions = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        for (ClassPathBeanRefreshCommand command : commands.values()) {
+            byte[] classDefinition = command.resolveClassDefinition();
+            if (classDefinition == null) {
+                continue;
+            }
+            basePackages.add(command.getBasePackage());
+            classDefinitions.add(classDefinition);
+            paths.add(command.getPath());
+        }
+        if (classDefinitions.isEmpty()) {
+            return;
+        }
+        try {
+            logger.debug("Executing ClassPathBeanDefinitionScannerAgent.refreshClasses({})", commands.keySet());
+            Class<?> clazz = Class.forName("io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanDefinitionScannerAgent", true, appClassLoader);
+            Method method = clazz.getDeclaredMethod("refreshClasses", String[].class, byte[][].class, String[].class);
+            method.invoke(null, basePackages.toArray(new String[0]), classDefinitions.toArray(new byte[0][]), paths.toArray(new String[0]));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Plugin error, method not found", e);
+        } catch (InvocationTargetException e) {
+            logger.error("Error refreshing classes {} in classLoader {}", e, commands.keySet(), appClassLoader);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Plugin error, illegal access", e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Plugin error, Spring class not found in application classloader", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return appClassLoader.equals(((ClassPathBeanBatchRefreshCommand) o).appClassLoader);
+    }
+
+    @Override
+    public int hashCode() {
+        return appClassLoader.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassPathBeanBatchRefreshCommand{" +
+                "appClassLoader=" + appClassLoader +
+                ", classNames=" + commands.keySet() +
+                '}';
+    }
+}
@@ -307,6 +307,31 @@ public class ClassPathBeanDefinitionScannerAgent {
      */
     public static void refreshClass(String basePackage, byte[] classDefinition, String path) throws IOException, ClassNotFoundException {
         ResetSpringStaticCaches.reset();
+        doRefreshClass(basePackage, classDefinition, path);
+        reloadFlag = false;
+    }
+
+    /**
+     * {@link ClassPathBeanBatchRefreshCommand}执行时会调用这里批量刷新class文件，Spring缓存只重置一次
+     *
+     * @param basePackages     每个class对应的base package
+     * @param classDefinitions 每个class新的字节码
+     * @param paths            每个class的路径，可以为null
+     */
+    public static void refreshClasses(String[] basePackages, byte[][] classDefinitions, String[] paths) {
+        ResetSpringStaticCaches.reset();
+        for (int i = 0; i < classDefinitions.length; i++) {
+            // 单个class刷新失败不影响其它class
+            try {
+                doRefreshClass(basePackages[i], classDefinitions[i], paths[i]);
+            } catch (Exception e) {
+                logger.error("Error refreshing class {} in basePackage '{}'", e, paths[i], basePackages[i]);
+            }
+        }
+        reloadFlag = false;
+    }
+
+    private static void doRefreshClass(String basePackage, byte[] classDefinition, String path) throws IOException, ClassNotFoundException {
         List<ClassPathBeanDefinitionScannerAgent> scannerAgents = getInstances(basePackage);
         if (scannerAgents.isEmpty()) {
             logger.error("basePackage '{}' not associated with any scannerAgent", basePackage);
@@ -323,7 +348,6 @@ public class ClassPathBeanDefinitionScannerAgent {
             scannerAgent.defineBean(beanDefinition, path);
             break;
         }
-        reloadFlag = false;
     }
 
     private static void assemblingSpringBean(String beanName, Class<?> beanClass) {
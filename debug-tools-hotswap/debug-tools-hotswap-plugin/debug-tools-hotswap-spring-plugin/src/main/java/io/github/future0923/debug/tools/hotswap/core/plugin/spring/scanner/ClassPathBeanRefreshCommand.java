@@ -19,6 +19,7 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.FileEvent;
+import io.github.future0923.debug.tools.hotswap.core.command.Command;
 import io.github.future0923.debug.tools.hotswap.core.command.EventMergeableCommand;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.transformer.SpringBeanClassFileTransformer;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.transformer.SpringBeanWatchEventListener;
@@ -78,27 +79,15 @@ public class ClassPathBeanRefreshCommand extends EventMergeableCommand<ClassPath
      */
     @Override
     public void executeCommand() {
-        if (isDeleteEvent()) {
-            logger.trace("Skip Spring reload for delete event on class '{}'", className);
+        byte[] classDefinition = resolveClassDefinition();
+        if (classDefinition == null) {
             return;
         }
         try {
-            if (classDefinition == null) {
-                try {
-                    this.classDefinition = IOUtils.toByteArray(event.getURI());
-                } catch (IllegalArgumentException e) {
-                    logger.debug("File {} not found on filesystem (deleted?). Unable to refresh associated Spring bean.", event.getURI());
-                    return;
-                }
-            }
             logger.debug("Executing ClassPathBeanDefinitionScannerAgent.refreshClass('{}')", className);
             Class<?> clazz = Class.forName("io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanDefinitionScannerAgent", true, appClassLoader);
             Method method = clazz.getDeclaredMethod("refreshClass", String.class, byte[].class, String.class);
-            String path = null;
-            if (event != null) {
-                path = event.getURI().getPath();
-            }
-            method.invoke(null, basePackage, classDefinition, path);
+            method.invoke(null, basePackage, classDefinition, getPath());
         } catch (NoSuchMethodException e) {
             throw new IllegalStateException("Plugin error, method not found", e);
         } catch (InvocationTargetException e) {
@@ -111,6 +100,52 @@ public class ClassPathBeanRefreshCommand extends EventMergeableCommand<ClassPath
 
     }
 
+    /**
+     * 合并时使用最新的字节码
+     */
+    @Override
+    public Command merge(Command other) {
+        if (other instanceof ClassPathBeanRefreshCommand && ((ClassPathBeanRefreshCommand) other).classDefinition != null) {
+            this.classDefinition = ((ClassPathBeanRefreshCommand) other).classDefinition;
+        }
+        return super.merge(other);
+    }
+
+    /**
+     * 获取要刷新的字节码，删除事件或文件已不存在时返回null
+     */
+    byte[] resolveClassDefinition() {
+        if (isDeleteEvent()) {
+            logger.trace("Skip Spring reload for delete event on class '{}'", className);
+            return null;
+        }
+        if (classDefinition == null) {
+            try {
+                this.classDefinition = IOUtils.toByteArray(event.getURI());
+            } catch (IllegalArgumentException e) {
+                logger.debug("File {} not found on filesystem (deleted?). Unable to refresh associated Spring bean.", event.getURI());
+                return null;
+            }
+        }
+        return classDefinition;
+    }
+
+    ClassLoader getAppClassLoader() {
+        return appClassLoader;
+    }
+
+    String getBasePackage() {
+        return basePackage;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getPath() {
+        return event == null ? null : event.getURI().getPath();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
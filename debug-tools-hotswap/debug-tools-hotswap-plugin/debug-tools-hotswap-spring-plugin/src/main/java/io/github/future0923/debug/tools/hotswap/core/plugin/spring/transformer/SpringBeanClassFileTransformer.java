@@ -19,6 +19,7 @@ package io.github.future0923.debug.tools.hotswap.core.plugin.spring.transformer;
 
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
+import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanBatchRefreshCommand;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanRefreshCommand;
 import io.github.future0923.debug.tools.hotswap.core.util.HaClassFileTransformer;
 import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassChangesAnalyzer;
@@ -35,12 +36,15 @@ public class SpringBeanClassFileTransformer implements HaClassFileTransformer {
 
     private static final Logger logger = Logger.getLogger(SpringBeanClassFileTransformer.class);
 
-    private final ClassLoader appClassLoader;
+    /**
+     * redefine后等待合并的时间
+     */
+    private static final int WAIT_ON_REDEFINE = 500;
+
     private final Scheduler scheduler;
     private final String basePackage;
 
-    public SpringBeanClassFileTransformer(ClassLoader appClassLoader, Scheduler scheduler, String basePackage) {
-        this.appClassLoader = appClassLoader;
+    public SpringBeanClassFileTransformer(Scheduler scheduler, String basePackage) {
         this.scheduler = scheduler;
         this.basePackage = basePackage;
     }
@@ -48,11 +52,11 @@ public class SpringBeanClassFileTransformer implements HaClassFileTransformer {
     @Override
     public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
         if (classBeingRedefined != null) {
-            final ClassChangesAnalyzer analyzer = new ClassChangesAnalyzer(appClassLoader);
+            final ClassChangesAnalyzer analyzer = new ClassChangesAnalyzer();
             className = className.replace("/", ".");
             if (analyzer.isReloadNeeded(classBeingRedefined, classfileBuffer)) {
                 logger.info("watch change class event, start reloading spring bean, class name:{}", className);
-                scheduler.scheduleCommand(new ClassPathBeanRefreshCommand(classBeingRedefined.getClassLoader(), basePackage, className, classfileBuffer));
+                scheduler.scheduleCommand(new ClassPathBeanBatchRefreshCommand(new ClassPathBeanRefreshCommand(classBeingRedefined.getClassLoader(), basePackage, className, classfileBuffer)), WAIT_ON_REDEFINE, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
             } else {
                 logger.debug("watch change class event, There is no need to reload Spring beans, className:{}", className);
             }
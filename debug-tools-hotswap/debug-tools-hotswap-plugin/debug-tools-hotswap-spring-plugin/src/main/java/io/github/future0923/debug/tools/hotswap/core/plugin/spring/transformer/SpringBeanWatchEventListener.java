@@ -21,6 +21,7 @@ import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.hotswap.core.annotation.FileEvent;
 import io.github.future0923.debug.tools.hotswap.core.command.Scheduler;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanDefinitionScannerAgent;
+import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanBatchRefreshCommand;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.ClassPathBeanRefreshCommand;
 import io.github.future0923.debug.tools.hotswap.core.plugin.spring.scanner.RemoveBeanDefinitionCommand;
 import io.github.future0923.debug.tools.hotswap.core.util.IOUtils;
@@ -80,7 +81,7 @@ public class SpringBeanWatchEventListener implements WatchEventListener {
                 if (!ClassLoaderHelper.isClassLoaded(appClassLoader, className)) {
                     logger.info("watch add class event, start reloading spring bean, class name:{}", className);
                     // 只刷新spring中新产生的classes
-                    scheduler.scheduleCommand(new ClassPathBeanRefreshCommand(appClassLoader, basePackage, className, event), WAIT_ON_CREATE);
+                    scheduler.scheduleCommand(new ClassPathBeanBatchRefreshCommand(new ClassPathBeanRefreshCommand(appClassLoader, basePackage, className, event)), WAIT_ON_CREATE, Scheduler.DuplicateSheduleBehaviour.WAIT_AND_RUN_AFTER);
                 }
             }
         }
@@ -22,7 +22,9 @@ import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.base.utils.DebugToolsIOUtils;
 import io.github.future0923.debug.tools.base.utils.DebugToolsJvmUtils;
 import io.github.future0923.debug.tools.base.utils.DebugToolsStringUtils;
+import io.github.future0923.debug.tools.server.compiler.JarIndexStore;
 import io.github.future0923.debug.tools.server.config.ServerConfig;
+import io.github.future0923.debug.tools.server.groovy.GroovyScriptCache;
 import io.github.future0923.debug.tools.server.http.DebugToolsHttpServer;
 import io.github.future0923.debug.tools.server.scoket.DebugToolsSocketServer;
 import io.github.future0923.debug.tools.server.utils.DebugToolsEnvUtils;
@@ -75,6 +77,8 @@ public class DebugToolsBootstrap {
         serverConfig.setHttpPort(httpPort);
         startTcpServer(tcpPort);
         startHttpServer(httpPort);
+        // 后台预先建立远程编译使用的jar索引
+        JarIndexStore.preloadAsync();
         started = true;
     }
 
@@ -127,6 +131,8 @@ public class DebugToolsBootstrap {
             httpServer.close();
             httpServer = null;
         }
+        // 释放编译后的脚本及其类加载器
+        GroovyScriptCache.clear();
         started = false;
         logger.info("stop successful");
     }
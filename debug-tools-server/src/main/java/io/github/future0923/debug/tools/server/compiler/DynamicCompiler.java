@@ -65,6 +65,11 @@ public class DynamicCompiler {
      */
     private final DynamicClassLoader dynamicClassLoader;
 
+    /**
+     * 在类加载器中查找包下的类文件
+     */
+    private final PackageInternalsFinder finder;
+
     /**
      * 要进行动态编译的类
      */
@@ -81,12 +86,23 @@ public class DynamicCompiler {
     private final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
 
     public DynamicCompiler(ClassLoader classLoader) {
+        this(classLoader, null, null);
+    }
+
+    /**
+     * 使用外部传入的文件管理器和包名查找缓存创建编译器，用于多次编译时复用
+     *
+     * @param classLoader         编译时依赖类所在的类加载器
+     * @param standardFileManager 复用的文件管理器，为null时新建
+     * @param packageCache        复用的包名查找缓存，为null时不缓存
+     */
+    public DynamicCompiler(ClassLoader classLoader, StandardJavaFileManager standardFileManager, Map<String, PackageInternalsFinder.PackageEntry> packageCache) {
         if (javaCompiler == null) {
             throw new IllegalStateException(
                     "Can not load JavaCompiler from javax.tools.ToolProvider#getSystemJavaCompiler(),"
                             + " please confirm the application running in JDK not JRE.");
         }
-        standardFileManager = javaCompiler.getStandardFileManager(null, null, null);
+        this.standardFileManager = standardFileManager == null ? javaCompiler.getStandardFileManager(null, null, null) : standardFileManager;
         // 生成调试信息。
         // 告诉编译器为生成的 .class 文件包含调试信息（如变量名、行号等）。
         // 让你在调试或热重载时可以看到源码级别调试（断点、变量）
@@ -111,6 +127,7 @@ public class DynamicCompiler {
             options.add(System.getProperty("java.class.path") + File.pathSeparator + pluginConfiguration.getLombokJarPath());
         }
         dynamicClassLoader = new DynamicClassLoader(classLoader);
+        finder = new PackageInternalsFinder(dynamicClassLoader, packageCache);
     }
 
     /**
@@ -154,7 +171,7 @@ public class DynamicCompiler {
     public void build() {
         errors.clear();
         warnings.clear();
-        JavaFileManager fileManager = new DynamicJavaFileManager(standardFileManager, dynamicClassLoader);
+        JavaFileManager fileManager = new DynamicJavaFileManager(standardFileManager, dynamicClassLoader, finder);
         DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
         JavaCompiler.CompilationTask task = javaCompiler.getTask(null, fileManager, collector, options, null, compilationUnits);
         try {
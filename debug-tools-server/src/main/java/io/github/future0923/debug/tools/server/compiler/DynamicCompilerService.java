@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.server.compiler;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 长期存活的动态编译服务
+ * <p>
+ * 复用同一个{@link StandardJavaFileManager}(javac对jdk和agent类路径的jar缓存)，
+ * 并为每个类加载器缓存包名查找结果，jar或class目录修改后对应缓存自动失效。
+ *
+ * @author future0923
+ */
+public class DynamicCompilerService {
+
+    private static final Logger logger = Logger.getLogger(DynamicCompilerService.class);
+
+    public static final DynamicCompilerService INSTANCE = new DynamicCompilerService();
+
+    private final JavaCompiler javaCompiler = ToolProvider.getSystemJavaCompiler();
+
+    /**
+     * 复用的文件管理器
+     */
+    private StandardJavaFileManager standardFileManager;
+
+    /**
+     * 文件管理器创建时java.class.path中文件的修改标记
+     */
+    private List<FileStamp> classPathStamps;
+
+    /**
+     * 每个类加载器的包名查找缓存
+     */
+    private final Map<ClassLoader, Map<String, PackageInternalsFinder.PackageEntry>> packageCaches = new WeakHashMap<>();
+
+    private DynamicCompilerService() {
+
+    }
+
+    /**
+     * 编译并返回字节码，StandardJavaFileManager不是线程安全的，所以编译串行执行
+     *
+     * @param classLoader 编译时依赖类所在的类加载器
+     * @param sources     类名和源代码
+     * @return 类名和字节码
+     */
+    public synchronized Map<String, byte[]> compile(ClassLoader classLoader, Map<String, String> sources) {
+        long start = System.currentTimeMillis();
+        Map<String, PackageInternalsFinder.PackageEntry> packageCache = packageCaches.computeIfAbsent(classLoader, k -> new ConcurrentHashMap<>());
+        DynamicCompiler compiler = new DynamicCompiler(classLoader, getStandardFileManager(), packageCache);
+        sources.forEach(compiler::addSource);
+        Map<String, byte[]> byteCodes = compiler.buildByteCodes();
+        logger.debug("Compile {} cost {} ms", sources.keySet(), System.currentTimeMillis() - start);
+        return byteCodes;
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public synchronized void clear() {
+        packageCaches.clear();
+        closeStandardFileManager();
+    }
+
+    /**
+     * 获取复用的文件管理器，类路径中的jar修改后重新创建
+     */
+    private StandardJavaFileManager getStandardFileManager() {
+        if (javaCompiler == null) {
+            // 交给DynamicCompiler抛出异常
+            return null;
+        }
+        if (standardFileManager != null && !FileStamp.isChanged(classPathStamps)) {
+            return standardFileManager;
+        }
+        closeStandardFileManager();
+        standardFileManager = javaCompiler.getStandardFileManager(null, null, null);
+        classPathStamps = new ArrayList<>();
+        for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            File file = new File(path);
+            if (!path.isEmpty() && file.exists()) {
+                classPathStamps.add(new FileStamp(file));
+            }
+        }
+        return standardFileManager;
+    }
+
+    private void closeStandardFileManager() {
+        if (standardFileManager != null) {
+            try {
+                standardFileManager.close();
+            } catch (IOException e) {
+                logger.debug("close standard file manager error", e);
+            }
+            standardFileManager = null;
+        }
+    }
+}
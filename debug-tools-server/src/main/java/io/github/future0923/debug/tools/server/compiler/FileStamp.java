@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.server.compiler;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.Collection;
+
+/**
+ * jar文件或class目录的修改标记，用于判断编译时缓存的类路径索引是否失效
+ *
+ * @author future0923
+ */
+public class FileStamp {
+
+    private final File file;
+
+    private final long lastModified;
+
+    private final long length;
+
+    public FileStamp(File file) {
+        this.file = file;
+        this.lastModified = file.lastModified();
+        this.length = file.isDirectory() ? 0 : file.length();
+    }
+
+    /**
+     * 文件是否在创建标记后被修改(目录中新增或删除文件也会改变目录的修改时间)
+     */
+    public boolean isChanged() {
+        return lastModified != file.lastModified() || length != (file.isDirectory() ? 0 : file.length());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 集合中是否有标记被修改
+     */
+    public static boolean isChanged(Collection<FileStamp> stamps) {
+        for (FileStamp stamp : stamps) {
+            if (stamp.isChanged()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取资源地址对应的磁盘文件，jar中的资源(包括嵌套jar)返回最外层的jar文件
+     *
+     * @param url 资源地址，eg: jar:file:/app.jar!/BOOT-INF/lib/a.jar!/com/foo
+     * @return 磁盘文件，无法解析时返回null
+     */
+    public static File getRootFile(URL url) {
+        String path = url.toExternalForm();
+        int separator = path.indexOf("!/");
+        if (separator != -1) {
+            path = path.substring(0, separator);
+        }
+        while (path.startsWith("jar:") || path.startsWith("war:")) {
+            path = path.substring(4);
+        }
+        if (!path.startsWith("file:")) {
+            return null;
+        }
+        path = path.substring("file:".length());
+        try {
+            path = URLDecoder.decode(path, "utf-8");
+        } catch (Exception ignored) {
+        }
+        return new File(path);
+    }
+}
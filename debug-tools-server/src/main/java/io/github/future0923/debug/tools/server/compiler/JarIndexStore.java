@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.server.compiler;
+
+import io.github.future0923.debug.tools.base.logging.Logger;
+import io.github.future0923.debug.tools.base.utils.DebugToolsLibUtils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * jar文件类索引的磁盘存储，以jar的校验和为key，重启后可以直接复用
+ * <p>
+ * 普通jar的校验和是文件内容的CRC32，计算结果按文件路径、大小、修改时间缓存在{@link #CHECKSUM_FILE}中；
+ * fat jar中嵌套jar的校验和直接取外层jar中对应条目的CRC。
+ * <p>
+ * 索引目录由多个应用共用，预加载结束后只清理当前classpath没有引用、且超过{@link #RETENTION_DAYS}天没有使用的索引，以及已失效的校验和记录。
+ *
+ * @author future0923
+ */
+public class JarIndexStore {
+
+    private static final Logger logger = Logger.getLogger(JarIndexStore.class);
+
+    private static final File INDEX_DIR = new File(DebugToolsLibUtils.getDebugToolsHomeDir(), "compiler-index");
+
+    private static final String INDEX_FILE_SUFFIX = ".idx";
+
+    private static final String CHECKSUM_FILE = "checksums.properties";
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * 没有被引用的索引保留的天数，读取索引时会刷新修改时间
+     */
+    private static final int RETENTION_DAYS = 7;
+
+    private static final String[] NESTED_LIB_PREFIXES = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+
+    private static final AtomicBoolean preloaded = new AtomicBoolean(false);
+
+    /**
+     * 已计算的jar文件校验和
+     * key jar文件绝对路径
+     * value 大小,修改时间,校验和
+     */
+    private static Properties fileChecksums;
+
+    /**
+     * fat jar中嵌套jar条目的校验和
+     * key 外层jar文件绝对路径
+     */
+    private static final Map<String, NestedChecksums> nestedChecksums = new ConcurrentHashMap<>();
+
+    /**
+     * 后台预先为java.class.path中的jar(包括fat jar中嵌套的jar)建立索引，只执行一次
+     */
+    public static void preloadAsync() {
+        if (!preloaded.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(JarIndexStore::preload, "DebugTools-JarIndex");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void preload() {
+        long start = System.currentTimeMillis();
+        int count = 0;
+        Set<String> referenced = new HashSet<>();
+        for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            File file = new File(path);
+            if (!file.isFile() || !file.getName().endsWith(".jar")) {
+                continue;
+            }
+            try (ZipFile zipFile = new ZipFile(file)) {
+                String jarUri = "jar:" + file.toURI();
+                if (preload(jarUri, zipFile.entries(), referenced)) {
+                    count++;
+                }
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!isNestedJar(entry.getName())) {
+                        continue;
+                    }
+                    try (ZipInputStream nested = new ZipInputStream(zipFile.getInputStream(entry))) {
+                        if (preload(jarUri + "!/" + entry.getName(), nested, referenced)) {
+                            count++;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                logger.debug("preload jar index error {}", e, path);
+            }
+        }
+        logger.debug("Preload {} jar index cost {} ms", count, System.currentTimeMillis() - start);
+        prune(referenced);
+    }
+
+    private static boolean preload(String jarUri, Enumeration<? extends ZipEntry> entries, Set<String> referenced) throws IOException {
+        return preload(jarUri, () -> entries.hasMoreElements() ? entries.nextElement() : null, referenced);
+    }
+
+    private static boolean preload(String jarUri, ZipInputStream zipInputStream, Set<String> referenced) throws IOException {
+        return preload(jarUri, zipInputStream::getNextEntry, referenced);
+    }
+
+    private static boolean preload(String jarUri, EntrySupplier entrySupplier, Set<String> referenced) throws IOException {
+        String checksum = getChecksum(jarUri);
+        if (checksum != null) {
+            referenced.add(checksum);
+        }
+        Map<String, String> classes = checksum == null ? null : load(checksum);
+        if (classes == null) {
+            classes = new LinkedHashMap<>();
+            ZipEntry entry;
+            while ((entry = entrySupplier.next()) != null) {
+                String className = PackageInternalsFinder.toClassName(entry.getName(), "");
+                if (className != null) {
+                    classes.put(className, entry.getName());
+                }
+            }
+            if (checksum != null) {
+                save(checksum, classes);
+            }
+        }
+        return PackageInternalsFinder.preloadIndex(jarUri, classes);
+    }
+
+    /**
+     * 删除当前classpath没有引用且过期的索引文件、残留的临时文件，以及文件已变化或索引已删除的校验和记录
+     *
+     * @param referenced 当前classpath引用的校验和
+     */
+    private static void prune(Set<String> referenced) {
+        File[] files = INDEX_DIR.listFiles();
+        if (files == null) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS);
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            boolean expired = file.lastModified() < expireBefore;
+            if (name.endsWith(INDEX_FILE_SUFFIX)) {
+                String checksum = name.substring(0, name.length() - INDEX_FILE_SUFFIX.length());
+                if (expired && !referenced.contains(checksum) && file.delete()) {
+                    deleted++;
+                }
+            } else if (name.endsWith(TMP_FILE_SUFFIX) && expired && file.delete()) {
+                deleted++;
+            }
+        }
+        pruneFileChecksums();
+        logger.debug("Pruned {} expired jar index files", deleted);
+    }
+
+    private static synchronized void pruneFileChecksums() {
+        Properties checksums = getFileChecksums();
+        boolean changed = false;
+        for (String path : checksums.stringPropertyNames()) {
+            File file = new File(path);
+            String value = checksums.getProperty(path);
+            String prefix = file.length() + "," + file.lastModified() + ",";
+            if (!file.isFile() || !value.startsWith(prefix)
+                    || !new File(INDEX_DIR, value.substring(prefix.length()) + INDEX_FILE_SUFFIX).isFile()) {
+                checksums.remove(path);
+                changed = true;
+            }
+        }
+        if (changed) {
+            storeFileChecksums(checksums);
+        }
+    }
+
+    private static boolean isNestedJar(String name) {
+        if (!name.endsWith(".jar")) {
+            return false;
+        }
+        for (String prefix : NESTED_LIB_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取jar的校验和
+     *
+     * @param jarUri eg: jar:file:/a.jar 或 jar:file:/app.jar!/BOOT-INF/lib/a.jar
+     * @return 校验和，不支持的地址返回null
+     */
+    public static String getChecksum(String jarUri) {
+        try {
+            String[] parts = jarUri.split("!/");
+            if (parts.length > 2) {
+                return null;
+            }
+            File file = FileStamp.getRootFile(URI.create(jarUri + "!/").toURL());
+            if (file == null || !file.isFile()) {
+                return null;
+            }
+            if (parts.length == 1) {
+                return getFileChecksum(file);
+            }
+            if (!parts[1].endsWith(".jar")) {
+                // 如BOOT-INF/classes，经常变化，不持久化
+                return null;
+            }
+            return getNestedChecksum(file, parts[1]);
+        } catch (Exception e) {
+            logger.debug("get jar checksum error {}", e, jarUri);
+            return null;
+        }
+    }
+
+    private static synchronized String getFileChecksum(File file) throws IOException {
+        Properties checksums = getFileChecksums();
+        String path = file.getAbsolutePath();
+        String prefix = file.length() + "," + file.lastModified() + ",";
+        String value = checksums.getProperty(path);
+        if (value != null && value.startsWith(prefix)) {
+            return value.substring(prefix.length());
+        }
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                crc32.update(buffer, 0, read);
+            }
+        }
+        String checksum = Long.toHexString(crc32.getValue()) + "-" + Long.toHexString(file.length());
+        checksums.setProperty(path, prefix + checksum);
+        storeFileChecksums(checksums);
+        return checksum;
+    }
+
+    private static String getNestedChecksum(File file, String entryName) throws IOException {
+        NestedChecksums checksums = nestedChecksums.get(file.getAbsolutePath());
+        if (checksums == null || checksums.stamp.isChanged()) {
+            checksums = new NestedChecksums(file);
+            nestedChecksums.put(file.getAbsolutePath(), checksums);
+        }
+        return checksums.checksums.get(entryName);
+    }
+
+    private static Properties getFileChecksums() {
+        if (fileChecksums == null) {
+            fileChecksums = new Properties();
+            File file = new File(INDEX_DIR, CHECKSUM_FILE);
+            if (file.isFile()) {
+                try (InputStream inputStream = new FileInputStream(file)) {
+                    fileChecksums.load(inputStream);
+                } catch (IOException e) {
+                    logger.debug("load jar checksum error", e);
+                }
+            }
+        }
+        return fileChecksums;
+    }
+
+    private static void storeFileChecksums(Properties checksums) {
+        try {
+            File file = new File(INDEX_DIR, CHECKSUM_FILE);
+            File tmp = createTempFile(file);
+            try (FileOutputStream outputStream = new FileOutputStream(tmp)) {
+                checksums.store(outputStream, null);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.debug("save jar checksum error", e);
+        }
+    }
+
+    /**
+     * 读取索引
+     *
+     * @param checksum jar的校验和
+     * @return key类名 value jar中的条目名，不存在时返回null
+     */
+    public static Map<String, String> load(String checksum) {
+        File file = new File(INDEX_DIR, checksum + INDEX_FILE_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        Map<String, String> classes = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf('\t');
+                if (index != -1) {
+                    classes.put(line.substring(0, index), line.substring(index + 1));
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("load jar index error {}", e, file);
+            return null;
+        }
+        // 刷新修改时间，仍在使用的索引不会被其它应用清理
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            logger.debug("touch jar index error {}", file);
+        }
+        return classes;
+    }
+
+    /**
+     * 保存索引
+     *
+     * @param checksum jar的校验和
+     * @param classes  key类名 value jar中的条目名
+     */
+    public static void save(String checksum, Map<String, String> classes) {
+        File file = new File(INDEX_DIR, checksum + INDEX_FILE_SUFFIX);
+        try {
+            File tmp = createTempFile(file);
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, String> entry : classes.entrySet()) {
+                    writer.write(entry.getKey());
+                    writer.write('\t');
+                    writer.write(entry.getValue());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.debug("save jar index error {}", e, file);
+        }
+    }
+
+    /**
+     * 先写临时文件再替换，避免多个进程同时写入时读到不完整的文件
+     */
+    private static File createTempFile(File file) throws IOException {
+        if (!INDEX_DIR.exists() && !INDEX_DIR.mkdirs()) {
+            throw new IOException("Can not create directory " + INDEX_DIR);
+        }
+        return File.createTempFile(file.getName(), TMP_FILE_SUFFIX, INDEX_DIR);
+    }
+
+    @FunctionalInterface
+    private interface EntrySupplier {
+
+        ZipEntry next() throws IOException;
+    }
+
+    /**
+     * fat jar中嵌套jar的校验和
+     */
+    private static class NestedChecksums {
+
+        private final FileStamp stamp;
+
+        private final Map<String, String> checksums = new ConcurrentHashMap<>();
+
+        private NestedChecksums(File file) throws IOException {
+            this.stamp = new FileStamp(file);
+            try (ZipFile zipFile = new ZipFile(file)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (isNestedJar(entry.getName()) && entry.getCrc() != -1) {
+                        checksums.put(entry.getName(), Long.toHexString(entry.getCrc()) + "-" + Long.toHexString(entry.getSize()));
+                    }
+                }
+            }
+        }
+    }
+}
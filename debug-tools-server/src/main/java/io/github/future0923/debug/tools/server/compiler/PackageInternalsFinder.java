@@ -30,6 +30,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -60,13 +61,31 @@ public class PackageInternalsFinder {
      */
     private static final Map<String, JarFileIndex> INDEX_MAPPING = new ConcurrentHashMap<>();
 
+    /**
+     * 包名查找结果缓存，为null时不缓存
+     * key 包名
+     * value 包下的类文件和所在jar/目录的修改标记
+     */
+    private final Map<String, PackageEntry> packageCache;
+
     /**
      * 初始化
      *
      * @param classLoader 指定对应ClassLoader
      */
     public PackageInternalsFinder(ClassLoader classLoader) {
+        this(classLoader, null);
+    }
+
+    /**
+     * 初始化
+     *
+     * @param classLoader  指定对应ClassLoader
+     * @param packageCache 跨编译复用的包名查找结果缓存
+     */
+    public PackageInternalsFinder(ClassLoader classLoader, Map<String, PackageEntry> packageCache) {
         this.classLoader = classLoader;
+        this.packageCache = packageCache;
     }
 
     /**
@@ -79,12 +98,32 @@ public class PackageInternalsFinder {
      * @return class文件对应的CustomJavaFileObject集合
      */
     public List<JavaFileObject> find(String packageName) throws IOException {
+        if (packageCache != null) {
+            PackageEntry packageEntry = packageCache.get(packageName);
+            if (packageEntry != null && !FileStamp.isChanged(packageEntry.stamps)) {
+                return packageEntry.fileObjects;
+            }
+        }
         String javaPackageName = packageName.replaceAll("\\.", "/");
         List<JavaFileObject> result = new ArrayList<>();
+        List<FileStamp> stamps = new ArrayList<>();
+        boolean cacheable = packageCache != null;
         Enumeration<URL> urlEnumeration = classLoader.getResources(javaPackageName);
         while (urlEnumeration.hasMoreElements()) { // one URL for each jar on the classpath that has the given package
             URL packageFolderURL = urlEnumeration.nextElement();
             result.addAll(listUnder(packageName, packageFolderURL));
+            File rootFile = FileStamp.getRootFile(packageFolderURL);
+            if (rootFile == null) {
+                // 无法判断是否修改的资源不缓存
+                cacheable = false;
+            } else {
+                stamps.add(new FileStamp(rootFile));
+            }
+        }
+        // 不存在的包不缓存，新增的包需要能被找到
+        if (cacheable && !result.isEmpty()) {
+            result = Collections.unmodifiableList(result);
+            packageCache.put(packageName, new PackageEntry(result, stamps));
         }
         return result;
     }
@@ -105,7 +144,7 @@ public class PackageInternalsFinder {
         try {
             String jarUri = packageFolderURL.toExternalForm().substring(0, packageFolderURL.toExternalForm().lastIndexOf("!/"));
             JarFileIndex jarFileIndex = INDEX_MAPPING.get(jarUri);
-            if (jarFileIndex == null) {
+            if (jarFileIndex == null || jarFileIndex.isChanged()) {
                 jarFileIndex = new JarFileIndex(jarUri, URI.create(jarUri + "!/"));
                 INDEX_MAPPING.put(jarUri, jarFileIndex);
             }
@@ -120,6 +159,46 @@ public class PackageInternalsFinder {
         return fuse(packageFolderURL);
     }
 
+    /**
+     * 放入预先建立的jar索引，已存在时不替换
+     *
+     * @param jarUri  jar 文件的 URI
+     * @param classes key类名 value jar中的条目名
+     * @return 是否放入
+     */
+    public static boolean preloadIndex(String jarUri, Map<String, String> classes) {
+        if (INDEX_MAPPING.containsKey(jarUri)) {
+            return false;
+        }
+        return INDEX_MAPPING.putIfAbsent(jarUri, new JarFileIndex(jarUri, URI.create(jarUri + "!/"), classes)) == null;
+    }
+
+    /**
+     * jar中的条目名转为类名
+     *
+     * @param entryName     条目名
+     * @param rootEntryName 根条目名
+     * @return 类名，不是需要索引的类时返回null
+     */
+    public static String toClassName(String entryName, String rootEntryName) {
+        if (!entryName.startsWith(rootEntryName) || !entryName.endsWith(CLASS_FILE_EXTENSION)) {
+            return null;
+        }
+        String className = entryName
+                .substring(0, entryName.length() - CLASS_FILE_EXTENSION.length())
+                .replace(rootEntryName, "")
+                .replace("/", ".");
+        if (className.startsWith(".")) {
+            className = className.substring(1);
+        }
+        if (className.equals("package-info")
+                || className.equals("module-info")
+                || className.lastIndexOf(".") == -1) {
+            return null;
+        }
+        return className;
+    }
+
     /**
      * 加载所有
      */
@@ -209,40 +288,83 @@ public class PackageInternalsFinder {
          */
         private final Map<String, List<ClassUriWrapper>> packages = new HashMap<>();
 
+        /**
+         * jar 文件的修改标记
+         */
+        private final FileStamp stamp;
+
         public JarFileIndex(String jarUri, URI uri) throws IOException {
             this.jarUri = jarUri;
             this.uri = uri;
-            loadIndex();
+            this.stamp = createStamp(uri);
+            // 优先使用磁盘中相同校验和的索引
+            String checksum = JarIndexStore.getChecksum(jarUri);
+            Map<String, String> classes = checksum == null ? null : JarIndexStore.load(checksum);
+            if (classes == null) {
+                classes = loadIndex();
+                if (checksum != null) {
+                    JarIndexStore.save(checksum, classes);
+                }
+            }
+            addClasses(classes);
+        }
+
+        /**
+         * 使用预先建立的索引
+         *
+         * @param classes key类名 value jar中的条目名
+         */
+        public JarFileIndex(String jarUri, URI uri, Map<String, String> classes) {
+            this.jarUri = jarUri;
+            this.uri = uri;
+            this.stamp = createStamp(uri);
+            addClasses(classes);
+        }
+
+        private static FileStamp createStamp(URI uri) {
+            try {
+                File rootFile = FileStamp.getRootFile(uri.toURL());
+                return rootFile == null ? null : new FileStamp(rootFile);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * jar 文件是否在建立索引后被修改
+         */
+        public boolean isChanged() {
+            return stamp != null && stamp.isChanged();
         }
 
         /**
          * 载入jar索引
+         *
+         * @return key类名 value jar中的条目名
          */
-        private void loadIndex() throws IOException {
+        private Map<String, String> loadIndex() throws IOException {
+            Map<String, String> classes = new LinkedHashMap<>();
             JarURLConnection jarConn = (JarURLConnection) uri.toURL().openConnection();
             String rootEntryName = jarConn.getEntryName() == null ? "" : jarConn.getEntryName();
             Enumeration<JarEntry> entryEnum = jarConn.getJarFile().entries();
             while (entryEnum.hasMoreElements()) {
                 JarEntry jarEntry = entryEnum.nextElement();
                 String entryName = jarEntry.getName();
-                if (entryName.startsWith(rootEntryName) && entryName.endsWith(CLASS_FILE_EXTENSION)) {
-                    String className = entryName
-                            .substring(0, entryName.length() - CLASS_FILE_EXTENSION.length())
-                            .replace(rootEntryName, "")
-                            .replace("/", ".");
-                    if (className.startsWith(".")) {
-                        className = className.substring(1);
-                    }
-                    if (className.equals("package-info")
-                            || className.equals("module-info")
-                            || className.lastIndexOf(".") == -1) {
-                        continue;
-                    }
-                    String packageName = className.substring(0, className.lastIndexOf("."));
-                    List<ClassUriWrapper> classes = packages.computeIfAbsent(packageName, k -> new ArrayList<>());
-                    classes.add(new ClassUriWrapper(className, URI.create(jarUri + "!/" + entryName)));
+                String className = toClassName(entryName, rootEntryName);
+                if (className != null) {
+                    classes.put(className, entryName);
                 }
             }
+            return classes;
+        }
+
+        private void addClasses(Map<String, String> classes) {
+            for (Map.Entry<String, String> entry : classes.entrySet()) {
+                String className = entry.getKey();
+                String packageName = className.substring(0, className.lastIndexOf("."));
+                packages.computeIfAbsent(packageName, k -> new ArrayList<>())
+                        .add(new ClassUriWrapper(className, URI.create(jarUri + "!/" + entry.getValue())));
+            }
         }
 
         /**
@@ -258,4 +380,25 @@ public class PackageInternalsFinder {
             return Collections.emptyList();
         }
     }
+
+    /**
+     * 包名查找结果
+     */
+    public static class PackageEntry {
+
+        /**
+         * 包下的类文件
+         */
+        private final List<JavaFileObject> fileObjects;
+
+        /**
+         * 类文件所在jar/目录的修改标记
+         */
+        private final List<FileStamp> stamps;
+
+        public PackageEntry(List<JavaFileObject> fileObjects, List<FileStamp> stamps) {
+            this.fileObjects = fileObjects;
+            this.stamps = stamps;
+        }
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.server.groovy;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovyCodeSource;
+import groovy.lang.Script;
+import io.github.future0923.debug.tools.base.classloader.GroovyScriptClassLoader;
+import io.github.future0923.debug.tools.base.hutool.core.util.HexUtil;
+import io.github.future0923.debug.tools.base.logging.Logger;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 编译后的Groovy脚本缓存
+ * <p>
+ * 以目标类加载器标识+脚本内容hash为key缓存编译后的Script类，重复执行相同脚本时只需要实例化。
+ * 编译在锁外进行，相同脚本并发请求时只编译一次，不影响其它脚本。
+ * 每个脚本使用独立的{@link GroovyClassLoader}加载，LRU淘汰时只移除引用（脚本可能还在运行），运行结束后生成的类可以被卸载。
+ *
+ * @author future0923
+ */
+public class GroovyScriptCache {
+
+    private static final Logger logger = Logger.getLogger(GroovyScriptCache.class);
+
+    /**
+     * 最多缓存的脚本数量
+     */
+    private static final int MAX_CACHE_SIZE = 64;
+
+    private static final String CODE_BASE = "/groovy/shell";
+
+    private static final Map<String, FutureTask<CompiledScript>> cache = new LinkedHashMap<String, FutureTask<CompiledScript>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FutureTask<CompiledScript>> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * 获取脚本实例，缓存中没有时编译脚本
+     *
+     * @param identity           目标类加载器标识
+     * @param defaultClassLoader 目标类加载器
+     * @param parentClassLoader  DebugTools的类加载器
+     * @param script             脚本内容
+     * @return 脚本实例
+     */
+    public static CompiledScript get(String identity, ClassLoader defaultClassLoader, ClassLoader parentClassLoader, String script) {
+        String hash = hash(script);
+        String key = identity + ":" + hash;
+        FutureTask<CompiledScript> task;
+        boolean created = false;
+        synchronized (cache) {
+            task = cache.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> compile(defaultClassLoader, parentClassLoader, script, hash));
+                cache.put(key, task);
+                created = true;
+            }
+        }
+        if (created) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // 编译失败不缓存
+            synchronized (cache) {
+                cache.remove(key, task);
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for groovy script compilation", e);
+        }
+    }
+
+    /**
+     * 停止时清空缓存并卸载所有脚本类
+     */
+    public static void clear() {
+        List<FutureTask<CompiledScript>> tasks;
+        synchronized (cache) {
+            tasks = new ArrayList<>(cache.values());
+            cache.clear();
+        }
+        for (FutureTask<CompiledScript> task : tasks) {
+            if (task.isDone()) {
+                try {
+                    task.get().unload();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private static CompiledScript compile(ClassLoader defaultClassLoader, ClassLoader parentClassLoader, String script, String hash) {
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.setScriptBaseClass(DebugToolsGroovyScript.class.getName());
+        GroovyScriptClassLoader scriptClassLoader = GroovyScriptClassLoader.create(parentClassLoader, defaultClassLoader);
+        GroovyClassLoader groovyClassLoader = new GroovyClassLoader(scriptClassLoader, configuration);
+        GroovyCodeSource codeSource = new GroovyCodeSource(script, "DebugToolsScript" + hash.substring(0, 16), CODE_BASE);
+        codeSource.setCachable(false);
+        Class<?> scriptClass = groovyClassLoader.parseClass(codeSource, false);
+        return new CompiledScript(scriptClassLoader, groovyClassLoader, scriptClass);
+    }
+
+    private static String hash(String script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexUtil.encodeHexStr(digest.digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 编译后的脚本
+     */
+    public static class CompiledScript {
+
+        private final GroovyScriptClassLoader scriptClassLoader;
+
+        private final GroovyClassLoader groovyClassLoader;
+
+        private final Class<?> scriptClass;
+
+        private CompiledScript(GroovyScriptClassLoader scriptClassLoader, GroovyClassLoader groovyClassLoader, Class<?> scriptClass) {
+            this.scriptClassLoader = scriptClassLoader;
+            this.groovyClassLoader = groovyClassLoader;
+            this.scriptClass = scriptClass;
+        }
+
+        /**
+         * 脚本运行时应该使用的上下文类加载器
+         */
+        public GroovyScriptClassLoader getScriptClassLoader() {
+            return scriptClassLoader;
+        }
+
+        /**
+         * 创建新的脚本实例，每次运行使用独立的Binding
+         */
+        public Script newInstance() {
+            return InvokerHelper.createScript(scriptClass, new Binding());
+        }
+
+        private void unload() {
+            groovyClassLoader.clearCache();
+            try {
+                groovyClassLoader.close();
+            } catch (IOException e) {
+                logger.debug("close groovy class loader error", e);
+            }
+        }
+    }
+}
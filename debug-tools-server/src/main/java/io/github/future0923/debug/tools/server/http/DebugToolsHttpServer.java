@@ -20,6 +20,7 @@ import com.sun.net.httpserver.HttpServer;
 import io.github.future0923.debug.tools.base.logging.Logger;
 import io.github.future0923.debug.tools.server.http.handler.AllClassLoaderHttpHandler;
 import io.github.future0923.debug.tools.server.http.handler.GetApplicationNameHttpHandler;
+import io.github.future0923.debug.tools.server.http.handler.HotswapProfileHttpHandler;
 import io.github.future0923.debug.tools.server.http.handler.IndexHttpHandler;
 import io.github.future0923.debug.tools.server.http.handler.RunResultDetailHttpHandler;
 import io.github.future0923.debug.tools.server.http.handler.RunResultTraceHttpHandler;
@@ -59,6 +60,7 @@ public class DebugToolsHttpServer {
         httpServer.createContext(AllClassLoaderHttpHandler.PATH, AllClassLoaderHttpHandler.INSTANCE);
         httpServer.createContext(GetApplicationNameHttpHandler.PATH, GetApplicationNameHttpHandler.INSTANCE);
         httpServer.createContext(RunResultTraceHttpHandler.PATH, RunResultTraceHttpHandler.INSTANCE);
+        httpServer.createContext(HotswapProfileHttpHandler.PATH, HotswapProfileHttpHandler.INSTANCE);
     }
 
     public void start() {
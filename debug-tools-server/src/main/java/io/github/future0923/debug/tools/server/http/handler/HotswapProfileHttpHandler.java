@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.server.http.handler;
+
+import com.sun.net.httpserver.Headers;
+import io.github.future0923.debug.tools.hotswap.core.util.HotswapProfiler;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 获取热重载启动耗时统计（按类加载器、插件、Transformer分类），需要 {@code -Ddebug.tools.hotswap.profile=true} 开启
+ *
+ * @author future0923
+ */
+public class HotswapProfileHttpHandler extends BaseHttpHandler<Void, Map<String, List<HotswapProfiler.Item>>> {
+
+    public static final HotswapProfileHttpHandler INSTANCE = new HotswapProfileHttpHandler();
+
+    public static final String PATH = "/hotswapProfile";
+
+    private HotswapProfileHttpHandler() {
+
+    }
+
+    @Override
+    protected Map<String, List<HotswapProfiler.Item>> doHandle(Void req, Headers responseHeaders) {
+        return HotswapProfiler.snapshot();
+    }
+}
@@ -26,25 +26,48 @@ import io.github.future0923.debug.tools.common.protocal.packet.Packet;
 import io.github.future0923.debug.tools.common.protocal.packet.response.HotDeployResponsePacket;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginConfiguration;
 import io.github.future0923.debug.tools.hotswap.core.config.PluginManager;
+import io.github.future0923.debug.tools.hotswap.core.util.ClassRedefinitionTracker;
 import io.github.future0923.debug.tools.hotswap.core.util.classloader.ClassLoaderHelper;
+import io.github.future0923.debug.tools.hotswap.core.util.signature.ClassSignatureComparerHelper;
 import io.github.future0923.debug.tools.server.DebugToolsBootstrap;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.instrument.ClassDefinition;
 import java.lang.instrument.Instrumentation;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
+ * 热部署处理，分为编译(compile)、写入文件(write)、检查已加载类(check)、重定义(redefine)几个阶段，
+ * 写入文件在独立线程中与检查、重定义并行执行，全部写完后统一fsync一次。响应前等待写入完成，写入失败和各阶段耗时返回给客户端
+ *
  * @author future0923
  */
 public abstract class AbstractHotDeployRequestHandler<T extends Packet> extends BasePacketHandler<T> {
 
     private static final Logger logger = Logger.getLogger(AbstractHotDeployRequestHandler.class);
 
+    /**
+     * 写入extraClasspath的线程
+     */
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "DebugTools-HotDeployWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * instrumentation的redefineClasses锁
      */
@@ -57,6 +80,7 @@ public abstract class AbstractHotDeployRequestHandler<T extends Packet> extends
     @Override
     public void handle(OutputStream outputStream, T packet) throws Exception {
         long start = System.currentTimeMillis();
+        Map<String, Long> stageCost = new LinkedHashMap<>();
         Map<String, byte[]> byteCodesMap;
         try {
             byteCodesMap = getByteCodes(packet);
@@ -64,6 +88,8 @@ public abstract class AbstractHotDeployRequestHandler<T extends Packet> extends
             writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(false, "Hot deploy error\n" + ExceptionUtil.stacktraceToString(e, -1), DebugToolsBootstrap.serverConfig.getApplicationName()));
             return;
         }
+        long stageStart = System.currentTimeMillis();
+        stageCost.put("compile", stageStart - start);
         String reloadClass = String.join(", ", byteCodesMap.keySet());
         ClassLoader defaultClassLoader;
         try {
@@ -73,50 +99,121 @@ public abstract class AbstractHotDeployRequestHandler<T extends Packet> extends
             writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(false, "Hot deploy error, file [" + reloadClass + "]\n" + ExceptionUtil.stacktraceToString(e, -1), DebugToolsBootstrap.serverConfig.getApplicationName()));
             return;
         }
-        writeFile(defaultClassLoader, byteCodesMap);
+        Future<Long> writeFuture = writeExecutor.submit(() -> {
+            long writeStart = System.currentTimeMillis();
+            writeFile(defaultClassLoader, byteCodesMap);
+            return System.currentTimeMillis() - writeStart;
+        });
         List<ClassDefinition> definitions = new ArrayList<>();
         for (Map.Entry<String, byte[]> entry : byteCodesMap.entrySet()) {
-            if (ClassLoaderHelper.isClassLoaded(defaultClassLoader, entry.getKey())) {
-                definitions.add(new ClassDefinition(defaultClassLoader.loadClass(entry.getKey()), entry.getValue()));
+            Class<?> loadedClass = ClassLoaderHelper.findLoadedClass(defaultClassLoader, entry.getKey());
+            if (loadedClass != null) {
+                definitions.add(new ClassDefinition(loadedClass, entry.getValue()));
             }
         }
+        stageCost.put("check", System.currentTimeMillis() - stageStart);
         if (definitions.isEmpty()) {
+            // 没有已加载的类，写入的文件是唯一的产物，写入失败即热部署失败
+            String writeError = awaitWrite(writeFuture, stageCost);
+            if (writeError != null) {
+                writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(false, "Hot deploy error, file [" + reloadClass + "]\n" + writeError, DebugToolsBootstrap.serverConfig.getApplicationName(), stageCost));
+                return;
+            }
             logger.warning("There are no classes that need to be redefined. {}", reloadClass);
-            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(true, "Hot deploy success, file [" + reloadClass + "]", DebugToolsBootstrap.serverConfig.getApplicationName()));
+            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(true, "Hot deploy success, file [" + reloadClass + "]", DebugToolsBootstrap.serverConfig.getApplicationName(), stageCost));
             return;
         }
         try {
             logger.reload("Reloading classes {}", reloadClass);
+            stageStart = System.currentTimeMillis();
             synchronized (hotswapLock) {
                 Instrumentation instrumentation = DebugToolsBootstrap.INSTANCE.getInstrumentation();
                 instrumentation.redefineClasses(definitions.toArray(new ClassDefinition[0]));
             }
+            for (ClassDefinition definition : definitions) {
+                ClassSignatureComparerHelper.invalidate(definition.getDefinitionClass());
+                ClassRedefinitionTracker.redefinitionCompleted(definition.getDefinitionClass());
+            }
+            stageCost.put("redefine", System.currentTimeMillis() - stageStart);
+            // 类已经重定义成功，写入失败只影响之后重新加载，提示给客户端
+            String writeError = awaitWrite(writeFuture, stageCost);
             long end = System.currentTimeMillis();
-            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(true, "Hot deploy success. cost " + (end - start) +" ms. file [" + reloadClass + "]", DebugToolsBootstrap.serverConfig.getApplicationName()));
+            String printResult = "Hot deploy success. cost " + (end - start) + " ms " + stageCost + ". file [" + reloadClass + "]";
+            if (writeError != null) {
+                printResult += "\n" + writeError;
+            }
+            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(true, printResult, DebugToolsBootstrap.serverConfig.getApplicationName(), stageCost));
         } catch (Exception e) {
+            awaitWrite(writeFuture, stageCost);
             logger.error("Fail to reload classes {}, msg is {}", reloadClass, e);
-            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(false, "Hot deploy error, file [" + reloadClass + "]\n" + ExceptionUtil.stacktraceToString(e, -1), DebugToolsBootstrap.serverConfig.getApplicationName()));
+            writeAndFlushNotException(outputStream, HotDeployResponsePacket.of(false, "Hot deploy error, file [" + reloadClass + "]\n" + ExceptionUtil.stacktraceToString(e, -1), DebugToolsBootstrap.serverConfig.getApplicationName(), stageCost));
+        }
+    }
+
+    /**
+     * 等待文件写入完成并记录write阶段耗时
+     *
+     * @return 写入失败的原因，成功返回null
+     */
+    private String awaitWrite(Future<Long> writeFuture, Map<String, Long> stageCost) {
+        try {
+            stageCost.put("write", writeFuture.get());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while writing class files to extraClasspath";
+        } catch (ExecutionException e) {
+            logger.error("Failed to write class file to extraClasspath", e.getCause());
+            return "Failed to write class file to extraClasspath: " + e.getCause().getMessage();
         }
     }
 
-    protected void writeFile(ClassLoader defaultClassLoader, Map<String, byte[]> byteCodesMap) {
+    /**
+     * 将类文件写入extraClasspath，全部写完后再逐个fsync，避免每写一个文件就等待一次磁盘
+     *
+     * @throws IOException 未配置extraClasspath或有文件写入失败，所有文件都会尝试写入
+     */
+    protected void writeFile(ClassLoader defaultClassLoader, Map<String, byte[]> byteCodesMap) throws IOException {
         PluginConfiguration pluginConfiguration = PluginManager.getInstance().getPluginConfiguration(defaultClassLoader);
         if (pluginConfiguration == null) {
             logger.error("Failure to retrieve PluginConfiguration. Please ensure that the project is started in hot reload mode.");
-            return;
+            throw new IOException("Failure to retrieve PluginConfiguration. Please ensure that the project is started in hot reload mode.");
         }
         URL[] classpath = pluginConfiguration.getExtraClasspath();
         if (classpath == null || classpath.length == 0) {
-            logger.error("{} is null", DebugToolsOSUtils.isWindows() ? "extraClasspathWin" : "extraClasspath");
-            return;
+            String name = DebugToolsOSUtils.isWindows() ? "extraClasspathWin" : "extraClasspath";
+            logger.error("{} is null", name);
+            throw new IOException(name + " is null");
         }
         String extraClasspath = classpath[0].getPath();
         if (!extraClasspath.endsWith(File.separator)) {
             extraClasspath += File.separator;
         }
+        List<File> written = new ArrayList<>(byteCodesMap.size());
+        List<File> failed = new ArrayList<>();
         for (Map.Entry<String, byte[]> entry : byteCodesMap.entrySet()) {
             String clasFilePath = entry.getKey().replace(".", File.separator).concat(".class");
-            DebugToolsFileUtils.writeBytes(entry.getValue(), extraClasspath + clasFilePath);
+            File file = new File(extraClasspath + clasFilePath);
+            DebugToolsFileUtils.mkParentDirs(file);
+            try (FileOutputStream outputStream = new FileOutputStream(file)) {
+                outputStream.write(entry.getValue());
+                written.add(file);
+            } catch (IOException e) {
+                logger.error("Failed to write class file to {}", e, file);
+                failed.add(file);
+            }
+        }
+        // 批量fsync，写入时已经关闭文件，不会同时占用每个文件的句柄
+        for (File file : written) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException e) {
+                logger.error("Failed to sync class file {}", e, file);
+                failed.add(file);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IOException("Failed to write class files " + failed);
         }
     }
 }
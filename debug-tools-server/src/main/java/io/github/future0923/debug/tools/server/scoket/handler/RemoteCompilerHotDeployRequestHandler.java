@@ -18,7 +18,7 @@ package io.github.future0923.debug.tools.server.scoket.handler;
 
 import io.github.future0923.debug.tools.base.exception.DefaultClassLoaderException;
 import io.github.future0923.debug.tools.common.protocal.packet.request.RemoteCompilerHotDeployRequestPacket;
-import io.github.future0923.debug.tools.server.compiler.DynamicCompiler;
+import io.github.future0923.debug.tools.server.compiler.DynamicCompilerService;
 import io.github.future0923.debug.tools.server.http.handler.AllClassLoaderHttpHandler;
 
 import java.util.Map;
@@ -36,9 +36,7 @@ public class RemoteCompilerHotDeployRequestHandler extends AbstractHotDeployRequ
 
     @Override
     protected Map<String, byte[]> getByteCodes(RemoteCompilerHotDeployRequestPacket packet) throws DefaultClassLoaderException {
-        DynamicCompiler compiler = new DynamicCompiler(getClassLoader(packet));
-        packet.getFilePathByteCodeMap().forEach(compiler::addSource);
-        return compiler.buildByteCodes();
+        return DynamicCompilerService.INSTANCE.compile(getClassLoader(packet), packet.getFilePathByteCodeMap());
     }
 
     @Override
@@ -18,19 +18,15 @@ package io.github.future0923.debug.tools.server.scoket.handler;
 
 import io.github.future0923.debug.tools.base.hutool.core.convert.Convert;
 import io.github.future0923.debug.tools.base.hutool.core.util.ClassUtil;
-import groovy.lang.GroovyShell;
-import io.github.future0923.debug.tools.base.classloader.GroovyScriptClassLoader;
-import io.github.future0923.debug.tools.base.exception.DefaultClassLoaderException;
 import io.github.future0923.debug.tools.common.dto.RunResultDTO;
 import io.github.future0923.debug.tools.common.enums.ResultClassType;
 import io.github.future0923.debug.tools.common.handler.BasePacketHandler;
 import io.github.future0923.debug.tools.common.protocal.packet.request.RunGroovyScriptRequestPacket;
 import io.github.future0923.debug.tools.common.protocal.packet.response.RunGroovyScriptResponsePacket;
 import io.github.future0923.debug.tools.server.DebugToolsBootstrap;
-import io.github.future0923.debug.tools.server.groovy.DebugToolsGroovyScript;
+import io.github.future0923.debug.tools.server.groovy.GroovyScriptCache;
 import io.github.future0923.debug.tools.server.http.handler.AllClassLoaderHttpHandler;
 import io.github.future0923.debug.tools.server.utils.DebugToolsResultUtils;
-import org.codehaus.groovy.control.CompilerConfiguration;
 
 import java.io.OutputStream;
 
@@ -47,26 +43,14 @@ public class RunGroovyScriptRequestHandler extends BasePacketHandler<RunGroovySc
 
     @Override
     public void handle(OutputStream outputStream, RunGroovyScriptRequestPacket packet) throws Exception {
-        CompilerConfiguration configuration = new CompilerConfiguration();
-        configuration.setScriptBaseClass(DebugToolsGroovyScript.class.getName());
         String applicationName = DebugToolsBootstrap.serverConfig.getApplicationName();
-        GroovyScriptClassLoader groovyScriptClassLoader = GroovyScriptClassLoader.init(AllClassLoaderHttpHandler.getDebugToolsClassLoader());
         ClassLoader oldContextClassLoader = Thread.currentThread().getContextClassLoader();
-        try {
-            ClassLoader defaultClassLoader = AllClassLoaderHttpHandler.getClassLoader(packet.getIdentity());
-            groovyScriptClassLoader.setDefaultClassLoader(defaultClassLoader);
-            Thread.currentThread().setContextClassLoader(groovyScriptClassLoader);
-        } catch (DefaultClassLoaderException e) {
-            Thread.currentThread().setContextClassLoader(oldContextClassLoader);
-            String offsetPath = RunResultDTO.genOffsetPathRandom(e);
-            DebugToolsResultUtils.putCache(offsetPath, e);
-            writeAndFlushNotException(outputStream, RunGroovyScriptResponsePacket.of(e, offsetPath, applicationName));
-            return;
-        }
-        GroovyShell groovyShell = new GroovyShell(groovyScriptClassLoader, configuration);
         Object evaluateResult;
         try {
-            evaluateResult = groovyShell.evaluate(packet.getScript());
+            ClassLoader defaultClassLoader = AllClassLoaderHttpHandler.getClassLoader(packet.getIdentity());
+            GroovyScriptCache.CompiledScript compiledScript = GroovyScriptCache.get(packet.getIdentity(), defaultClassLoader, AllClassLoaderHttpHandler.getDebugToolsClassLoader(), packet.getScript());
+            Thread.currentThread().setContextClassLoader(compiledScript.getScriptClassLoader());
+            evaluateResult = compiledScript.newInstance().run();
         } catch (Exception e) {
             Thread.currentThread().setContextClassLoader(oldContextClassLoader);
             String offsetPath = RunResultDTO.genOffsetPathRandom(e);
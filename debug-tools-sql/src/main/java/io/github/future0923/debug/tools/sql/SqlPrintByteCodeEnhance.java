@@ -37,6 +37,7 @@ public class SqlPrintByteCodeEnhance {
         SqlPrintInterceptor.setPrintSqlType(agentArgs.getPrintSql());
         SqlPrintInterceptor.setAutoSaveSql(BooleanUtil.toBoolean(agentArgs.getAutoSaveSql()));
         SqlPrintInterceptor.setSqlRetentionDays(agentArgs.getSqlRetentionDays());
+        SqlPrintInterceptor.setSqlBatchSampleSize(agentArgs.getSqlBatchSampleSize());
         inst.addTransformer(new SqlDriverClassFileTransformer(), true);
     }
 }
@@ -49,7 +49,13 @@ public class SqlPrintInterceptor {
 
     private static final String CONNECTION_AGENT_METHODS = "prepareStatement";
 
-    private static final List<String> PREPARED_STATEMENT_METHODS = Arrays.asList("execute", "executeUpdate", "executeQuery", "addBatch");
+    private static final List<String> PREPARED_STATEMENT_METHODS = Arrays.asList("execute", "executeUpdate", "executeQuery");
+
+    private static final String ADD_BATCH_METHOD = "addBatch";
+
+    private static final String CLEAR_BATCH_METHOD = "clearBatch";
+
+    private static final List<String> EXECUTE_BATCH_METHODS = Arrays.asList("executeBatch", "executeLargeBatch");
 
     private static final String STATEMENT_PREFIXES = "com.mysql.jdbc.ClientPreparedStatement:";
 
@@ -58,6 +64,7 @@ public class SqlPrintInterceptor {
     private static PrintSqlType printSqlType;
     private static Boolean autoSaveSql = false;
     private static Integer sqlRetentionDays = 7;
+    private static Integer sqlBatchSampleSize = 3;
 
     public static void setPrintSqlType(String printSqlType) {
         SqlPrintInterceptor.printSqlType = PrintSqlType.of(printSqlType);
@@ -73,6 +80,12 @@ public class SqlPrintInterceptor {
         }
     }
 
+    public static void setSqlBatchSampleSize(Integer size) {
+        if (size != null && size >= 0) {
+            sqlBatchSampleSize = size;
+        }
+    }
+
     public static Connection proxyConnection(final Connection connection) {
         Object c = Proxy.newProxyInstance(
                 SqlPrintByteCodeEnhance.class.getClassLoader(),
@@ -122,6 +135,16 @@ public class SqlPrintInterceptor {
 
         private final List<Object> parameters = new ArrayList<>();
 
+        /**
+         * 当前批次中采样的SQL
+         */
+        private final List<String> batchSamples = new ArrayList<>();
+
+        /**
+         * 当前批次中addBatch的行数
+         */
+        private int batchRows;
+
         public PreparedStatementHandler(PreparedStatement statement) {
             this.statement = statement;
 
@@ -129,55 +152,118 @@ public class SqlPrintInterceptor {
 
         @Override
         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String methodName = method.getName();
             long startTime = System.currentTimeMillis();
-            Object result = method.invoke(statement, args);
+            Object result;
+            try {
+                result = method.invoke(statement, args);
+            } catch (Throwable e) {
+                if (EXECUTE_BATCH_METHODS.contains(methodName)) {
+                    // 执行批次失败时驱动也会清空批次
+                    clearBatch();
+                }
+                throw e;
+            }
             long endTime = System.currentTimeMillis();
-            if (method.getName().startsWith("setNull")) {
+            if (methodName.startsWith("setNull")) {
                 // 显式记录 NULL 值
                 int index = (Integer) args[0];
                 while (parameters.size() < index) parameters.add(null);
                 parameters.set(index - 1, "NULL"); // 标记为 SQL NULL
-            }else if (method.getName().startsWith("set") && args != null && args.length >= 2) {
+            }else if (methodName.startsWith("set") && args != null && args.length >= 2) {
                 int index = (Integer) args[0];
                 while (parameters.size() < index) parameters.add(null);
                 parameters.set(index - 1, args[1]);
             }
-            if (PREPARED_STATEMENT_METHODS.stream().anyMatch(s -> s.equals(method.getName()))) {
+            if (PREPARED_STATEMENT_METHODS.contains(methodName)) {
                 printSql(endTime - startTime, statement, parameters.toArray(new Object[0]));
                 parameters.clear();
+            } else if (ADD_BATCH_METHOD.equals(methodName)) {
+                // 只记录采样行的SQL，真正的耗时在executeBatch时统计
+                if (batchSamples.size() < sqlBatchSampleSize) {
+                    batchSamples.add(getSql(statement, getDbType(statement.getClass().getName()), parameters.toArray(new Object[0])));
+                }
+                batchRows++;
+                parameters.clear();
+            } else if (EXECUTE_BATCH_METHODS.contains(methodName)) {
+                printBatchSql(endTime - startTime, statement, batchRows, batchSamples);
+                clearBatch();
+            } else if (CLEAR_BATCH_METHOD.equals(methodName)) {
+                clearBatch();
             }
             return result;
         }
+
+        private void clearBatch() {
+            batchSamples.clear();
+            batchRows = 0;
+        }
     }
 
     private static void printSql(long consume, Statement sta, Object[] parameters) {
-        String resultSql;
-        String className = sta.getClass().getName();
-        String dbType = getDbType(className);
+        String dbType = getDbType(sta.getClass().getName());
+        String resultSql = getSql(sta, dbType, parameters);
+        if (BooleanUtil.isTrue(MethodTrace.getTraceSqlStatus())) {
+            MethodTrace.enterSql(resultSql);
+            MethodTrace.exit(consume);
+        }
+        resultSql = formatSql(resultSql);
+        logger.info("Execute consume Time: {} ms; Execute SQL: \n\u001B[31m{}\u001B[0m", consume, resultSql);
+        saveSql(resultSql, consume, dbType);
+    }
 
+    /**
+     * 打印批量执行的SQL，耗时为executeBatch的真实耗时，SQL只打印采样的行
+     */
+    private static void printBatchSql(long consume, Statement sta, int batchRows, List<String> batchSamples) {
+        String dbType = getDbType(sta.getClass().getName());
+        StringBuilder sb = new StringBuilder();
+        for (String sample : batchSamples) {
+            if (sb.length() > 0) {
+                sb.append(";\n");
+            }
+            sb.append(formatSql(sample));
+        }
+        if (batchRows > batchSamples.size()) {
+            if (sb.length() > 0) {
+                sb.append(";\n");
+            }
+            sb.append("-- ... ").append(batchRows - batchSamples.size()).append(" more rows");
+        }
+        String resultSql = sb.toString();
+        if (BooleanUtil.isTrue(MethodTrace.getTraceSqlStatus())) {
+            MethodTrace.enterSql(resultSql);
+            MethodTrace.exit(consume);
+        }
+        logger.info("Execute batch consume Time: {} ms; Batch rows: {}; Execute SQL: \n\u001B[31m{}\u001B[0m", consume, batchRows, resultSql);
+        saveSql(resultSql, consume, dbType);
+    }
+
+    private static String getSql(Statement sta, String dbType, Object[] parameters) {
         if ("SQLServer".equals(dbType)) {
-            resultSql = printSQLServer(sta);
+            return printSQLServer(sta);
         } else if ("MySQL".equals(dbType)) {
-            resultSql = printMySQL(sta);
+            return printMySQL(sta);
         } else if ("PostgreSQL".equals(dbType)) {
-            resultSql = printPostgresql(sta);
+            return printPostgresql(sta);
         } else if ("Oracle".equals(dbType)) {
-            resultSql = printOracle(sta, parameters);
+            return printOracle(sta, parameters);
         } else {
-            resultSql = sta.toString();
-        }
-        if (BooleanUtil.isTrue(MethodTrace.getTraceSqlStatus())) {
-            MethodTrace.enterSql(resultSql);
-            MethodTrace.exit(consume);
+            return sta.toString();
         }
+    }
+
+    private static String formatSql(String sql) {
         if (PrintSqlType.PRETTY.equals(printSqlType) || PrintSqlType.YES.equals(printSqlType)) {
-            resultSql = SqlFormatter.format(resultSql);
+            return SqlFormatter.format(sql);
         }
         if (PrintSqlType.COMPRESS.equals(printSqlType)) {
-            resultSql = SqlCompressor.compressSql(resultSql);
+            return SqlCompressor.compressSql(sql);
         }
-        logger.info("Execute consume Time: {} ms; Execute SQL: \n\u001B[31m{}\u001B[0m", consume, resultSql);
+        return sql;
+    }
 
+    private static void saveSql(String resultSql, long consume, String dbType) {
         // 根据配置写入SQL记录到文件
         if (BooleanUtil.isTrue(autoSaveSql)) {
             try {
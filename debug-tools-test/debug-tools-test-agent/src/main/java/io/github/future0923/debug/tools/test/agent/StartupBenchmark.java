@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.test.agent;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring Boot 应用启动耗时基准测试，分别在不挂载和挂载 agent 的情况下启动应用，对比启动耗时
+ * <p>
+ * 参数：应用jar路径 agent jar路径 [轮次，默认5] [允许的最大额外耗时百分比，默认不校验]
+ * <pre>
+ * java -cp agent.jar io.github.future0923.debug.tools.test.agent.StartupBenchmark \
+ *     debug-tools-test-spring-boot-mybatis.jar debug-tools-agent.jar 5 50
+ * </pre>
+ * 超过允许的百分比时以非0状态退出，方便在CI中发现启动耗时回退
+ *
+ * @author future0923
+ */
+public class StartupBenchmark {
+
+    /**
+     * Spring Boot 启动完成时输出的日志
+     */
+    private static final String STARTED_MARKER = "Started ";
+
+    private static final long TIMEOUT_SECONDS = 300;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: StartupBenchmark <appJar> <agentJar> [rounds] [maxOverheadPercent]");
+            System.exit(2);
+        }
+        String appJar = args[0];
+        String agentJar = args[1];
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        Double maxOverheadPercent = args.length > 3 ? Double.parseDouble(args[3]) : null;
+
+        // 预热一次，排除文件系统缓存的影响
+        startup(appJar, null);
+        long baseline = median(run(appJar, null, rounds));
+        long withAgent = median(run(appJar, agentJar, rounds));
+        double overhead = (withAgent - baseline) * 100.0 / baseline;
+        System.out.printf("baseline: %dms, with agent: %dms, overhead: %.1f%%%n", baseline, withAgent, overhead);
+        if (maxOverheadPercent != null && overhead > maxOverheadPercent) {
+            System.err.printf("startup overhead %.1f%% exceeds %.1f%%%n", overhead, maxOverheadPercent);
+            System.exit(1);
+        }
+    }
+
+    private static List<Long> run(String appJar, String agentJar, int rounds) throws Exception {
+        List<Long> costs = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            long cost = startup(appJar, agentJar);
+            System.out.printf("%s round %d: %dms%n", agentJar == null ? "baseline" : "agent", i + 1, cost);
+            costs.add(cost);
+        }
+        return costs;
+    }
+
+    /**
+     * 启动应用直到输出启动完成日志，返回耗时毫秒
+     */
+    private static long startup(String appJar, String agentJar) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        if (agentJar != null) {
+            command.add("-javaagent:" + agentJar);
+        }
+        command.add("-jar");
+        command.add(appJar);
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains(STARTED_MARKER)) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }
+                if (TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) > TIMEOUT_SECONDS) {
+                    break;
+                }
+            }
+            throw new IllegalStateException("Application did not start: " + command);
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static long median(List<Long> costs) {
+        costs.sort(Long::compare);
+        return costs.get(costs.size() / 2);
+    }
+}
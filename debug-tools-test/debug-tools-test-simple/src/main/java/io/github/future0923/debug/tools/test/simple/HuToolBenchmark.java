@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.test.simple;
+
+import cn.hutool.core.bean.BeanUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HuTool BeanUtil.copyProperties 基准测试，分别在不挂载和挂载 agent 的情况下运行，对比没有热重载时的拷贝耗时
+ * <p>
+ * 参数：[轮次，默认5] [每轮次数，默认1000000]
+ * <pre>
+ * java -cp app.jar io.github.future0923.debug.tools.test.simple.HuToolBenchmark
+ * java -javaagent:debug-tools-agent.jar -cp app.jar io.github.future0923.debug.tools.test.simple.HuToolBenchmark
+ * </pre>
+ *
+ * @author future0923
+ */
+public class HuToolBenchmark {
+
+    public static class Source {
+
+        private String name;
+
+        private Integer age;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public void setAge(Integer age) {
+            this.age = age;
+        }
+    }
+
+    public static class Target extends Source {
+
+        private String remark;
+
+        public String getRemark() {
+            return remark;
+        }
+
+        public void setRemark(String remark) {
+            this.remark = remark;
+        }
+    }
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        Source source = new Source();
+        source.setName("HuTool");
+        source.setAge(18);
+        // 预热，排除JIT编译和反射缓存创建的影响
+        run(source, iterations);
+        List<Double> costs = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            double cost = run(source, iterations);
+            System.out.printf("round %d: %.1fns/op%n", i + 1, cost);
+            costs.add(cost);
+        }
+        costs.sort(Double::compare);
+        System.out.printf("median: %.1fns/op%n", costs.get(costs.size() / 2));
+    }
+
+    private static double run(Source source, int iterations) {
+        long age = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            age += BeanUtil.copyProperties(source, Target.class).getAge();
+        }
+        long cost = System.nanoTime() - start;
+        if (age == 0) {
+            throw new IllegalStateException();
+        }
+        return (double) cost / iterations;
+    }
+}
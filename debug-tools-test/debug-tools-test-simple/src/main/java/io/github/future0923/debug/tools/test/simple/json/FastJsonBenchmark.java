@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024-2025 the original author or authors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package io.github.future0923.debug.tools.test.simple.json;
+
+import com.alibaba.fastjson.JSON;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * FastJson 序列化基准测试，分别在不挂载和挂载 agent 的情况下运行，对比没有热重载时的序列化耗时
+ * <p>
+ * 参数：[轮次，默认5] [每轮次数，默认1000000]
+ * <pre>
+ * java -cp app.jar io.github.future0923.debug.tools.test.simple.json.FastJsonBenchmark
+ * java -javaagent:debug-tools-agent.jar -cp app.jar io.github.future0923.debug.tools.test.simple.json.FastJsonBenchmark
+ * </pre>
+ *
+ * @author future0923
+ */
+public class FastJsonBenchmark {
+
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        TestNode node = new TestNode("testNode", 0, Arrays.asList(
+                new Node(new TestNode("testNode1", 1, null), "node1"),
+                new Node(new TestNode("testNode2", 2, null), "node2")));
+        // 预热，排除JIT编译和ObjectWriter创建的影响
+        run(node, iterations);
+        List<Double> costs = new ArrayList<>();
+        for (int i = 0; i < rounds; i++) {
+            double cost = run(node, iterations);
+            System.out.printf("round %d: %.1fns/op%n", i + 1, cost);
+            costs.add(cost);
+        }
+        costs.sort(Double::compare);
+        System.out.printf("median: %.1fns/op%n", costs.get(costs.size() / 2));
+    }
+
+    private static double run(TestNode node, int iterations) {
+        long length = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            length += JSON.toJSONString(node).length();
+        }
+        long cost = System.nanoTime() - start;
+        if (length == 0) {
+            throw new IllegalStateException();
+        }
+        return (double) cost / iterations;
+    }
+}